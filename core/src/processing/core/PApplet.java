@@ -50,6 +50,19 @@ import java.lang.reflect.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.*;
 import java.util.zip.*;
 
@@ -4146,6 +4159,14 @@ public class PApplet extends Applet
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+
+      // images that haven't started loading never will
+      ExecutorService pool = requestImagePool;
+      if (pool != null) {
+        for (Runnable request : pool.shutdownNow()) {
+          ((ImageRequest) request).cancel(false);
+        }
+      }
     }
   }
 
@@ -5941,11 +5962,9 @@ public class PApplet extends Applet
    * @see PApplet#loadImage(String, String)
    */
   public PImage requestImage(String filename, String extension) {
-    PImage vessel = createImage(0, 0, ARGB);
-    AsyncImageLoader ail =
-      new AsyncImageLoader(filename, extension, vessel);
-    ail.start();
-    return vessel;
+    // not counted against requestImageQueueMax, so it never has to wait
+    return submitImageRequest(filename, extension, 0,
+                              null, null, false).getImage();
   }
 
 
@@ -5961,6 +5980,82 @@ public class PApplet extends Applet
 //  }
 
 
+  /**
+   * @nowebref
+   */
+  public ImageRequest loadImageAsync(String filename) {
+    return loadImageAsync(filename, null, 0, null, null);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public ImageRequest loadImageAsync(String filename, String extension,
+                                     int priority) {
+    return loadImageAsync(filename, extension, priority, null, null);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public ImageRequest loadImageAsync(String filename, String extension,
+                                     int priority, String callback) {
+    return loadImageAsync(filename, extension, priority, callback, this);
+  }
+
+
+  /**
+   * Like requestImage(), but hands back an ImageRequest that can be used
+   * to wait for the image, cancel it, or find out how long it took.
+   * Requests with a higher priority are loaded first, those with the same
+   * priority in the order they were made. If callback isn't null, that
+   * method of callbackObject is called with the image once it has loaded
+   * (or failed to load, in which case its width and height are -1). The
+   * callback runs on the image loading thread, not the animation thread.
+   * <p/>
+   * If requestImageQueueMax images from loadImageAsync() are already
+   * waiting or loading, this waits for one of them to finish before adding
+   * another. (Images from requestImage() don't count, it never waits.)
+   *
+   * @nowebref
+   * @param filename name of the file to load
+   * @param extension the type of image to load, or null to use the filename
+   * @param priority higher numbers are loaded first
+   * @param callback name of the method to call when the image has loaded
+   * @param callbackObject object containing the callback method
+   */
+  public ImageRequest loadImageAsync(String filename, String extension,
+                                     int priority, String callback,
+                                     Object callbackObject) {
+    return submitImageRequest(filename, extension, priority,
+                              callback, callbackObject, true);
+  }
+
+
+  private ImageRequest submitImageRequest(String filename, String extension,
+                                          int priority, String callback,
+                                          Object callbackObject,
+                                          boolean bounded) {
+    ThreadPoolExecutor pool = getRequestImagePool();
+    ImageRequest request =
+      new ImageRequest(filename, extension, priority,
+                       requestImageSequence.getAndIncrement(),
+                       callback, callbackObject, bounded);
+    if (bounded) {
+      requestImageSlots.acquireUninterruptibly();
+    }
+    try {
+      pool.execute(request);
+    } catch (RejectedExecutionException e) {
+      // the sketch has been disposed, nothing is going to load it
+      request.cancel(false);
+    }
+    return request;
+  }
+
+
   /**
    * By trial and error, four image loading threads seem to work best when
    * loading images from online. This is consistent with the number of open
@@ -5971,42 +6066,264 @@ public class PApplet extends Applet
    * images so that you're disk isn't simply jumping around.
    */
   public int requestImageMax = 4;
-  volatile int requestImageCount;
 
-  class AsyncImageLoader extends Thread {
-    String filename;
-    String extension;
-    PImage vessel;
+  /**
+   * Most images from loadImageAsync() that can be waiting to load (or
+   * loading) at once. Past this, it waits for one of them to finish, rather
+   * than piling up an unlimited amount of work when thousands of images are
+   * requested. Only read when the first image is requested.
+   */
+  public int requestImageQueueMax = 256;
+
+  volatile ThreadPoolExecutor requestImagePool;
+  volatile Semaphore requestImageSlots;
+  AtomicLong requestImageSequence = new AtomicLong();
+
+
+  synchronized ThreadPoolExecutor getRequestImagePool() {
+    int threads = Math.max(1, requestImageMax);
+    if (requestImagePool == null) {
+      requestImageSlots = new Semaphore(Math.max(1, requestImageQueueMax));
+      requestImagePool =
+        new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                               new PriorityBlockingQueue<Runnable>(),
+                               new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Image Loader");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      // don't keep threads around once everything has loaded
+      requestImagePool.allowCoreThreadTimeOut(true);
+
+    } else if (threads != requestImagePool.getCorePoolSize()) {
+      // requestImageMax was changed, the core size can't go past the max
+      if (threads > requestImagePool.getMaximumPoolSize()) {
+        requestImagePool.setMaximumPoolSize(threads);
+        requestImagePool.setCorePoolSize(threads);
+      } else {
+        requestImagePool.setCorePoolSize(threads);
+        requestImagePool.setMaximumPoolSize(threads);
+      }
+    }
+    return requestImagePool;
+  }
+
+
+  /**
+   * An image on its way from loadImageAsync() or requestImage(). The image
+   * returned by getImage() has a width and height of 0 until it has loaded,
+   * and -1 if it failed to load or was cancelled. Once get() returns, or
+   * isDone() is true, or the callback has been called, the image's pixels
+   * are safe to use from any thread. (Checking the width from draw() also
+   * works, as it always has, but without that guarantee.)
+   */
+  public class ImageRequest
+  implements Runnable, Future<PImage>, Comparable<ImageRequest> {
+    static final int WAITING = 0;
+    static final int LOADING = 1;
+    static final int DONE = 2;
+    static final int CANCELLED = 3;
+
+    final String filename;
+    final String extension;
+    final int priority;
+    final long sequence;
+    final String callback;
+    final Object callbackObject;
+    final boolean bounded;  // holds one of the requestImageSlots
+    final PImage vessel;
+
+    final AtomicInteger state = new AtomicInteger(WAITING);
+    final CountDownLatch finished = new CountDownLatch(1);
+
+    final long requestTime;
+    long doneTime;
+    long loadTime = -1;
 
-    public AsyncImageLoader(String filename, String extension, PImage vessel) {
+    ImageRequest(String filename, String extension, int priority,
+                 long sequence, String callback, Object callbackObject,
+                 boolean bounded) {
       this.filename = filename;
       this.extension = extension;
-      this.vessel = vessel;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.callback = callback;
+      this.callbackObject = callbackObject;
+      this.bounded = bounded;
+      vessel = createImage(0, 0, ARGB);
+      requestTime = System.nanoTime();
     }
 
-    @Override
+
     public void run() {
-      while (requestImageCount == requestImageMax) {
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) { }
+      if (!state.compareAndSet(WAITING, LOADING)) {
+        return;  // cancelled while it was waiting, slot already returned
+      }
+      long startTime = System.nanoTime();
+      PImage actual = null;
+      try {
+        actual = loadImage(filename, extension);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+
+      // if it was cancelled in the meantime, leave the vessel alone
+      boolean completed = state.compareAndSet(LOADING, DONE);
+      if (completed) {
+        // An error message should have already printed
+        if (actual == null) {
+          vessel.width = -1;
+          vessel.height = -1;
+
+        } else {
+          vessel.pixels = actual.pixels;
+          vessel.format = actual.format;
+          // the size goes last, it's what sketches check to see if it's in
+          vessel.width = actual.width;
+          vessel.height = actual.height;
+        }
+        doneTime = System.nanoTime();
+        loadTime = doneTime - startTime;
+        finished.countDown();
       }
-      requestImageCount++;
+      releaseSlot();
 
-      PImage actual = loadImage(filename, extension);
+      if (completed && callback != null) {
+        imageCallback(vessel, callback, callbackObject);
+      }
+    }
 
-      // An error message should have already printed
-      if (actual == null) {
-        vessel.width = -1;
-        vessel.height = -1;
 
-      } else {
-        vessel.width = actual.width;
-        vessel.height = actual.height;
-        vessel.format = actual.format;
-        vessel.pixels = actual.pixels;
+    /**
+     * Cancel the request. If the image hasn't started loading, it's taken
+     * out of the queue. If it's already loading, that runs to the end but
+     * the result is thrown away. Either way the image gets a width and
+     * height of -1, and the callback isn't called.
+     *
+     * @param mayInterruptIfRunning ignored, loading isn't interrupted
+     * @return false if the image had already finished loading
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (state.compareAndSet(WAITING, CANCELLED)) {
+        requestImagePool.remove(this);
+        releaseSlot();
+      } else if (!state.compareAndSet(LOADING, CANCELLED)) {
+        return false;  // done, or cancelled already
+      }
+      vessel.width = -1;
+      vessel.height = -1;
+      doneTime = System.nanoTime();
+      finished.countDown();
+      return true;
+    }
+
+
+    private void releaseSlot() {
+      if (bounded) {
+        requestImageSlots.release();
+      }
+    }
+
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+
+    public boolean isDone() {
+      return finished.getCount() == 0;
+    }
+
+
+    /**
+     * Wait for the image to finish loading.
+     * @throws CancellationException if the request was cancelled
+     */
+    public PImage get() throws InterruptedException {
+      finished.await();
+      return getDone();
+    }
+
+
+    public PImage get(long timeout, TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+      if (!finished.await(timeout, unit)) {
+        throw new TimeoutException(filename + " has not loaded yet");
+      }
+      return getDone();
+    }
+
+
+    private PImage getDone() {
+      if (isCancelled()) {
+        throw new CancellationException(filename + " was cancelled");
+      }
+      return vessel;
+    }
+
+
+    /** The image, which will be filled in once it has loaded. */
+    public PImage getImage() {
+      return vessel;
+    }
+
+
+    /**
+     * Milliseconds from the request until the image finished loading (or
+     * failed, or was cancelled), or -1 if it's not done yet.
+     */
+    public float getLatency() {
+      if (!isDone()) {
+        return -1;
+      }
+      return (doneTime - requestTime) / 1e6f;
+    }
+
+
+    /**
+     * Milliseconds spent loading the image, not counting the time spent
+     * waiting for a thread, or -1 if it hasn't (or won't) finish loading.
+     */
+    public float getLoadTime() {
+      if (!isDone() || loadTime < 0) {
+        return -1;
+      }
+      return loadTime / 1e6f;
+    }
+
+
+    /** Higher priorities first, then in the order they were requested. */
+    public int compareTo(ImageRequest other) {
+      if (priority != other.priority) {
+        return (priority > other.priority) ? -1 : 1;
       }
-      requestImageCount--;
+      if (sequence != other.sequence) {
+        return (sequence < other.sequence) ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+
+
+  static private void imageCallback(PImage image,
+                                    String callbackMethod,
+                                    Object callbackObject) {
+    try {
+      Class<?> callbackClass = callbackObject.getClass();
+      Method imageMethod =
+        callbackClass.getMethod(callbackMethod, new Class<?>[] { PImage.class });
+      imageMethod.invoke(callbackObject, new Object[] { image });
+
+    } catch (IllegalAccessException iae) {
+      System.err.println(callbackMethod + "() must be public");
+
+    } catch (InvocationTargetException ite) {
+      ite.printStackTrace();
+
+    } catch (NoSuchMethodException nsme) {
+      System.err.println(callbackMethod + "() could not be found");
     }
   }
 
@@ -6394,6 +6711,17 @@ public class PApplet extends Applet
   }
 
 
+  /**
+   * Load only the parts of a JSON file that match one of the paths, such as
+   * "features/&#42;/properties/name", which saves a lot of memory with large
+   * files. Everything else is skipped over while the file is being read.
+   * @see JSONReader
+   */
+  public JSONObject loadJSONObject(String filename, String... paths) {
+    return new JSONReader(createReader(filename)).nextJSONObject(paths);
+  }
+
+
   /**
    * @webref output:files
    * @see JSONObject
@@ -6436,6 +6764,16 @@ public class PApplet extends Applet
   }
 
 
+  /**
+   * Load only the parts of a JSON file that match one of the paths, where
+   * the first part of each path is the index into the array (or &#42;).
+   * @see JSONReader
+   */
+  public JSONArray loadJSONArray(String filename, String... paths) {
+    return new JSONReader(createReader(filename)).nextJSONArray(paths);
+  }
+
+
   /**
    * @webref output:files
    * @see JSONObject
@@ -6502,6 +6840,15 @@ public class PApplet extends Applet
           return dictionary.typedParse(createInput(filename), optionStr);
         }
       }
+      for (String opt : optionList) {
+        if (opt.equals("bin")) {
+          // use the File version so that the table can be memory-mapped
+          File file = dataFile(filename);
+          if (file.exists()) {
+            return new Table(file, optionStr);
+          }
+        }
+      }
       return new Table(createInput(filename), optionStr);
 
     } catch (IOException e) {
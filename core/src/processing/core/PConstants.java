@@ -229,6 +229,14 @@ public interface PConstants {
   static final int DILATE    = 18;
 
 
+  // resampling filters for resize()
+
+  static final int NEAREST  = 0;
+  static final int BILINEAR = 1;
+  static final int BICUBIC  = 2;
+  static final int LANCZOS3 = 3;
+
+
   // blend mode keyword definitions
   // @see processing.core.PImage#blendColor(int,int,int)
 
@@ -27,7 +27,10 @@ package processing.core;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.*;
 import javax.imageio.metadata.*;
@@ -144,13 +147,6 @@ public class PImage implements PConstants, Cloneable {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  // private fields
-  private int fracU, ifU, fracV, ifV, u1, u2, v1, v2, sX, sY, iw, iw1, ih1;
-  private int ul, ll, ur, lr, cUL, cLL, cUR, cLR;
-  private int srcXOffset, srcYOffset;
-  private int r, g, b, a;
-  private int[] srcBuffer;
-
   // fixed point precision is limited to 15 bits!!
   static final int PRECISIONB = 15;
   static final int PRECISIONF = 1 << PRECISIONB;
@@ -158,11 +154,9 @@ public class PImage implements PConstants, Cloneable {
   static final int PREC_ALPHA_SHIFT = 24-PRECISIONB;
   static final int PREC_RED_SHIFT = 16-PRECISIONB;
 
-  // internal kernel stuff for the gaussian blur filter
+  // internal stuff for the gaussian blur filter
   private int blurRadius;
-  private int blurKernelSize;
-  private int[] blurKernel;
-  private int[][] blurMult;
+  private int[] blurBuffer;
 
   // colour component bitmasks (moved from PConstants in 2.0b7)
   public static final int ALPHA_MASK = 0xff000000;
@@ -601,9 +595,27 @@ public class PImage implements PConstants, Cloneable {
    * @see PImage#get(int, int, int, int)
    */
   public void resize(int w, int h) {  // ignore
+    resize(w, h, BILINEAR);
+  }
+
+
+  /**
+   * Resize using a specific filter: NEAREST (blocky, but the fastest),
+   * BILINEAR, BICUBIC (sharper), or LANCZOS3 (sharpest, and slowest).
+   * When shrinking an image, the filter is widened to cover all the pixels
+   * that go into each new one, so that details don't turn into aliasing.
+   * The colors of ARGB images are weighted by their alpha, so that
+   * transparent pixels don't bleed their color into opaque ones.
+   * @param filter NEAREST, BILINEAR, BICUBIC, or LANCZOS3
+   */
+  public void resize(int w, int h, int filter) {  // ignore
     if (w <= 0 && h <= 0) {
       throw new IllegalArgumentException("width or height must be > 0 for resize");
     }
+    if (filter < NEAREST || filter > LANCZOS3) {
+      throw new IllegalArgumentException("resize() filter must be NEAREST, " +
+                                         "BILINEAR, BICUBIC, or LANCZOS3");
+    }
 
     if (w == 0) {  // Use height to determine relative size
       float diff = (float) h / (float) height;
@@ -612,98 +624,273 @@ public class PImage implements PConstants, Cloneable {
       float diff = (float) w / (float) width;
       h = (int) (height * diff);
     }
+    if (w <= 0 || h <= 0) {
+      throw new IllegalArgumentException("resize() would leave the image " +
+                                         "with no width or height");
+    }
 
-    BufferedImage img = shrinkImage((BufferedImage) getNative(), w, h);
-//    BufferedImage img = null;
-//    if (w < width && h < height) {
-//      img = shrinkImage((BufferedImage) getNative(), w, h);
-//    } else {
-//      img = resampleImage((BufferedImage) getNative(), w, h);
-//    }
-
-    PImage temp = new PImage(img);
-    this.width = temp.width;
-    this.height = temp.height;
+    loadPixels();
+    if (w != width || h != height) {
+      // Resample across into an image that's the new width but the old
+      // height, then down from that into one that's the new size.
+      int[] across = (filter == NEAREST) ? null : new int[w * height];
+      int[] resized = new int[w * h];
+      int[][] buffers = new int[][] {
+        pixels, across, resized,
+        resizeWeights(width, w, filter), resizeWeights(height, h, filter)
+      };
+      if (filter == NEAREST) {
+        runPass(RESIZE_NEAREST_PASS, 0, buffers, h, w);
+      } else {
+        int weighted = (format == ARGB) ? 1 : 0;
+        runPass(RESIZE_ACROSS_PASS, weighted, buffers, height, w);
+        runPass(RESIZE_DOWN_PASS, weighted, buffers, h, w);
+      }
 
-    // Get the resized pixel array
-    this.pixels = temp.pixels;
+      this.width = w;
+      this.height = h;
+      this.pixels = resized;
+    }
 
     // Mark the pixels array as altered
     updatePixels();
   }
 
 
-  // Adapted from getFasterScaledInstance() method from page 111 of
-  // "Filthy Rich Clients" by Chet Haase and Romain Guy
-  // Additional modifications and simplifications have been added,
-  // plus a fix to deal with an infinite loop if images are expanded.
-  // http://code.google.com/p/processing/issues/detail?id=1463
-  static private BufferedImage shrinkImage(BufferedImage img,
-                                           int targetWidth, int targetHeight) {
-    int type = (img.getTransparency() == Transparency.OPAQUE) ?
-      BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
-    BufferedImage outgoing = img;
-    BufferedImage scratchImage = null;
-    Graphics2D g2 = null;
-    int prevW = outgoing.getWidth();
-    int prevH = outgoing.getHeight();
-    boolean isTranslucent = img.getTransparency() != Transparency.OPAQUE;
-
-    // Use multi-step technique: start with original size, then scale down in
-    // multiple passes with drawImage() until the target size is reached
-    int w = img.getWidth();
-    int h = img.getHeight();
-
-    do {
-      if (w > targetWidth) {
-        w /= 2;
-        // if this is the last step, do the exact size
-        if (w < targetWidth) {
-          w = targetWidth;
+  /** Fixed point precision for the resize weights. */
+  static final int RESIZE_BITS = 16;
+
+
+  /**
+   * Build the table of weights for resampling a line of srcCount pixels
+   * into dstCount. The first two entries are the number of taps and
+   * dstCount, followed by one group for each new pixel: the first source
+   * pixel used, the number of them, then their weights (in RESIZE_BITS
+   * fixed point, adding up to one), padded to the number of taps.
+   */
+  static private int[] resizeWeights(int srcCount, int dstCount, int filter) {
+    double scale = (double) srcCount / dstCount;
+    double filterScale = (filter == NEAREST) ? 1 : Math.max(1, scale);
+    double support = resizeSupport(filter) * filterScale;
+    int taps = (int) Math.ceil(support) * 2 + 1;
+    int stride = taps + 2;
+    int[] table = new int[2 + dstCount * stride];
+    table[0] = taps;
+    table[1] = dstCount;
+    double[] weight = new double[taps];
+
+    for (int i = 0; i < dstCount; i++) {
+      double center = (i + 0.5) * scale;
+      int start, count;
+      if (filter == NEAREST) {
+        start = Math.min((int) center, srcCount - 1);
+        count = 1;
+        weight[0] = 1;
+      } else {
+        start = Math.max(0, (int) (center - support + 0.5));
+        int stop = Math.min(srcCount, (int) (center + support + 0.5));
+        count = Math.min(stop - start, taps);
+        double total = 0;
+        for (int k = 0; k < count; k++) {
+          double x = (start + k - center + 0.5) / filterScale;
+          weight[k] = resizeKernel(filter, x);
+          total += weight[k];
+        }
+        if (total == 0) {  // edge of a tiny image, just take the nearest
+          start = Math.min((int) center, srcCount - 1);
+          count = 1;
+          weight[0] = total = 1;
+        }
+        for (int k = 0; k < count; k++) {
+          weight[k] /= total;
         }
-      } else if (targetWidth >= w) {
-        w = targetWidth;
       }
-      if (h > targetHeight) {
-        h /= 2;
-        if (h < targetHeight) {
-          h = targetHeight;
+
+      // convert to fixed point, adding any rounding error to the largest
+      // weight so that they still add up to exactly one
+      int index = 2 + i * stride;
+      table[index] = start;
+      table[index + 1] = count;
+      int sum = 0;
+      int largest = 0;
+      for (int k = 0; k < count; k++) {
+        int fixed = (int) Math.round(weight[k] * (1 << RESIZE_BITS));
+        table[index + 2 + k] = fixed;
+        sum += fixed;
+        if (Math.abs(fixed) > Math.abs(table[index + 2 + largest])) {
+          largest = k;
         }
-      } else if (targetHeight >= h) {
-        h = targetHeight;
       }
-      if (scratchImage == null || isTranslucent) {
-        // Use a single scratch buffer for all iterations and then copy
-        // to the final, correctly-sized image before returning
-        scratchImage = new BufferedImage(w, h, type);
-        g2 = scratchImage.createGraphics();
+      table[index + 2 + largest] += (1 << RESIZE_BITS) - sum;
+    }
+    return table;
+  }
+
+
+  /** How far the filter reaches, in pixels of the (larger) source image. */
+  static private double resizeSupport(int filter) {
+    switch (filter) {
+    case BILINEAR: return 1;
+    case BICUBIC: return 2;
+    case LANCZOS3: return 3;
+    }
+    return 0.5;  // NEAREST
+  }
+
+
+  static private double resizeKernel(int filter, double x) {
+    if (x < 0) x = -x;
+    switch (filter) {
+    case BILINEAR:
+      return (x < 1) ? 1 - x : 0;
+
+    case BICUBIC:
+      // Catmull-Rom spline (the cubic convolution with a = -0.5)
+      final double a = -0.5;
+      if (x < 1) return ((a + 2) * x - (a + 3)) * x * x + 1;
+      if (x < 2) return (((x - 5) * x + 8) * x - 4) * a;
+      return 0;
+
+    case LANCZOS3:
+      if (x == 0) return 1;
+      if (x >= 3) return 0;
+      double px = Math.PI * x;
+      return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+    }
+    return (x < 0.5) ? 1 : 0;  // NEAREST
+  }
+
+
+  /**
+   * Resample rows [startRow, stopRow) of src across into dst, which is the
+   * new width but has the same number of rows.
+   */
+  static private void resizeAcross(int[] src, int srcWidth, int[] dst,
+                                   int[] table, boolean weighted,
+                                   int startRow, int stopRow) {
+    int stride = table[0] + 2;
+    for (int y = startRow; y < stopRow; y++) {
+      int srcRow = y * srcWidth;
+      int dstIndex = y * table[1];
+      for (int index = 2; index < table.length; index += stride) {
+        dst[dstIndex++] = resizePixel(src, srcRow + table[index], 1,
+                                      table, index, weighted);
       }
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-      g2.drawImage(outgoing, 0, 0, w, h, 0, 0, prevW, prevH, null);
-      prevW = w;
-      prevH = h;
-      outgoing = scratchImage;
-    } while (w != targetWidth || h != targetHeight);
-
-    if (g2 != null) {
-      g2.dispose();
-    }
-
-    // If we used a scratch buffer that is larger than our target size,
-    // create an image of the right size and copy the results into it
-    if (targetWidth != outgoing.getWidth() ||
-        targetHeight != outgoing.getHeight()) {
-      scratchImage = new BufferedImage(targetWidth, targetHeight, type);
-      g2 = scratchImage.createGraphics();
-      g2.drawImage(outgoing, 0, 0, null);
-      g2.dispose();
-      outgoing = scratchImage;
     }
-    return outgoing;
   }
 
 
+  /**
+   * Resample down from src (already the new width) into rows
+   * [startRow, stopRow) of dst.
+   */
+  static private void resizeDown(int[] src, int[] dst, int width,
+                                 int[] table, boolean weighted,
+                                 int startRow, int stopRow) {
+    int stride = table[0] + 2;
+    for (int y = startRow; y < stopRow; y++) {
+      int index = 2 + y * stride;
+      int read = table[index] * width;
+      int dstIndex = y * width;
+      for (int x = 0; x < width; x++) {
+        dst[dstIndex++] = resizePixel(src, read++, width,
+                                      table, index, weighted);
+      }
+    }
+  }
+
+
+  /**
+   * Copy the nearest pixel from src (at the old size) into rows
+   * [startRow, stopRow) of dst.
+   */
+  static private void resizeNearest(int[] src, int srcWidth, int[] dst,
+                                    int[] across, int[] down,
+                                    int startRow, int stopRow) {
+    int width = across[1];
+    int[] column = new int[width];
+    for (int x = 0; x < width; x++) {
+      column[x] = across[2 + x * (across[0] + 2)];
+    }
+    for (int y = startRow; y < stopRow; y++) {
+      int srcRow = down[2 + y * (down[0] + 2)] * srcWidth;
+      int dstIndex = y * width;
+      for (int x = 0; x < width; x++) {
+        dst[dstIndex++] = src[srcRow + column[x]];
+      }
+    }
+  }
+
+
+  /**
+   * Add up the pixels in src that begin at read and are step apart, using
+   * the count and weights from the group at table[index].
+   * When weighted is set, each color is also weighted by its alpha, which
+   * gives the same colors as filtering with premultiplied alpha, without
+   * losing precision by storing them that way in between the two passes.
+   */
+  static private int resizePixel(int[] src, int read, int step,
+                                 int[] table, int index, boolean weighted) {
+    int count = table[index + 1];
+    int offset = index + 2;
+    int half = 1 << (RESIZE_BITS - 1);
+    int a = half, r = half, g = half, b = half;
+    if (!weighted) {
+      for (int k = 0; k < count; k++) {
+        int c = src[read];
+        int weight = table[offset + k];
+        read += step;
+        a += weight * (c >>> 24);
+        r += weight * ((c >> 16) & 0xff);
+        g += weight * ((c >> 8) & 0xff);
+        b += weight * (c & 0xff);
+      }
+      return (resizeClamp(a) << 24 | resizeClamp(r) << 16 |
+              resizeClamp(g) << 8 | resizeClamp(b));
+    }
+
+    // weight * alpha, cut down to 16 bits so that the sums fit in an int
+    int total = 0;
+    r = g = b = 0;
+    for (int k = 0; k < count; k++) {
+      int c = src[read];
+      int weight = table[offset + k];
+      int alpha = c >>> 24;
+      read += step;
+      int wa = (weight * alpha) >> 8;
+      a += weight * alpha;
+      total += wa;
+      r += wa * ((c >> 16) & 0xff);
+      g += wa * ((c >> 8) & 0xff);
+      b += wa * (c & 0xff);
+    }
+    a = resizeClamp(a);
+    if (a == 0 || total <= 0) {
+      return 0;
+    }
+    return (a << 24 |
+            resizeDivide(r, total) << 16 |
+            resizeDivide(g, total) << 8 |
+            resizeDivide(b, total));
+  }
+
+
+  /** sum / total, rounded, and clamped to 0..255. */
+  static private int resizeDivide(int sum, int total) {
+    if (sum <= 0) return 0;
+    int c = (sum + total/2) / total;
+    return (c > 255) ? 255 : c;
+  }
+
+
+  /** Round a fixed point sum, and clamp it to 0..255. */
+  static private int resizeClamp(int sum) {
+    sum >>= RESIZE_BITS;  // rounding was added at the start
+    return (sum < 0) ? 0 : ((sum > 255) ? 255 : sum);
+  }
+
+
+
   //////////////////////////////////////////////////////////////
 
   // MARKING IMAGE AS LOADED / FOR USE IN RENDERERS
@@ -1061,33 +1248,19 @@ public class PImage implements PConstants, Cloneable {
       case GRAY:
         if (format == ALPHA) {
           // for an alpha image, convert it to an opaque grayscale
-          for (int i = 0; i < pixels.length; i++) {
-            int col = 255 - pixels[i];
-            pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
-          }
+          filterPass(GRAY_ALPHA_PASS, 0, null);
           format = RGB;
 
         } else {
           // Converts RGB image data into grayscale using
           // weighted RGB components, and keeps alpha channel intact.
           // [toxi 040115]
-          for (int i = 0; i < pixels.length; i++) {
-            int col = pixels[i];
-            // luminance = 0.3*red + 0.59*green + 0.11*blue
-            // 0.30 * 256 =  77
-            // 0.59 * 256 = 151
-            // 0.11 * 256 =  28
-            int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
-            pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
-          }
+          filterPass(GRAY_PASS, 0, null);
         }
         break;
 
       case INVERT:
-        for (int i = 0; i < pixels.length; i++) {
-          //pixels[i] = 0xff000000 |
-          pixels[i] ^= 0xffffff;
-        }
+        filterPass(INVERT_PASS, 0, null);
         break;
 
       case POSTERIZE:
@@ -1095,9 +1268,7 @@ public class PImage implements PConstants, Cloneable {
         "instead of filter(POSTERIZE)");
 
       case OPAQUE:
-        for (int i = 0; i < pixels.length; i++) {
-          pixels[i] |= 0xff000000;
-        }
+        filterPass(OPAQUE_PASS, 0, null);
         format = RGB;
         break;
 
@@ -1202,30 +1373,12 @@ public class PImage implements PConstants, Cloneable {
           throw new RuntimeException("Levels must be between 2 and 255 for " +
                                      "filter(POSTERIZE, levels)");
         }
-        int levels1 = levels - 1;
-        for (int i = 0; i < pixels.length; i++) {
-          int rlevel = (pixels[i] >> 16) & 0xff;
-          int glevel = (pixels[i] >> 8) & 0xff;
-          int blevel = pixels[i] & 0xff;
-          rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
-          glevel = (((glevel * levels) >> 8) * 255) / levels1;
-          blevel = (((blevel * levels) >> 8) * 255) / levels1;
-          pixels[i] = ((0xff000000 & pixels[i]) |
-                       (rlevel << 16) |
-                       (glevel << 8) |
-                       blevel);
-        }
+        filterPass(POSTERIZE_PASS, levels, null);
         break;
 
       case THRESHOLD:  // greater than or equal to the threshold
         int thresh = (int) (param * 255);
-        for (int i = 0; i < pixels.length; i++) {
-          int max = Math.max((pixels[i] & RED_MASK) >> 16,
-                             Math.max((pixels[i] & GREEN_MASK) >> 8,
-                                      (pixels[i] & BLUE_MASK)));
-          pixels[i] = (pixels[i] & ALPHA_MASK) |
-            ((max < thresh) ? 0x000000 : 0xffffff);
-        }
+        filterPass(THRESHOLD_PASS, thresh, null);
         break;
 
         // [toxi20050728] added new filters
@@ -1241,268 +1394,181 @@ public class PImage implements PConstants, Cloneable {
 
 
   /**
-   * Optimized code for building the blur kernel.
-   * further optimized blur code (approx. 15% for radius=20)
-   * bigger speed gains for larger radii (~30%)
-   * added support for various image types (ALPHA, RGB, ARGB)
+   * Sets the radius for the blur, which weights the pixels around each
+   * one by (radius - distance)^2. The kernel itself is never built, since
+   * blurLine() uses running sums instead of visiting every pixel under it.
    * [toxi 050728]
    */
   protected void buildBlurKernel(float r) {
     int radius = (int) (r * 3.5f);
     radius = (radius < 1) ? 1 : ((radius < 248) ? radius : 248);
-    if (blurRadius != radius) {
-      blurRadius = radius;
-      blurKernelSize = 1 + blurRadius<<1;
-      blurKernel = new int[blurKernelSize];
-      blurMult = new int[blurKernelSize][256];
-
-      int bk,bki;
-      int[] bm,bmi;
-
-      for (int i = 1, radiusi = radius - 1; i < radius; i++) {
-        blurKernel[radius+i] = blurKernel[radiusi] = bki = radiusi * radiusi;
-        bm=blurMult[radius+i];
-        bmi=blurMult[radiusi--];
-        for (int j = 0; j < 256; j++)
-          bm[j] = bmi[j] = bki*j;
-      }
-      bk = blurKernel[radius] = radius * radius;
-      bm = blurMult[radius];
-      for (int j = 0; j < 256; j++)
-        bm[j] = bk*j;
-    }
+    blurRadius = radius;
   }
 
 
   protected void blurAlpha(float r) {
-    int sum, cb;
-    int read, ri, ym, ymi, bk0;
-    int b2[] = new int[pixels.length];
-    int yi = 0;
+    blur(r, 1);
+  }
 
-    buildBlurKernel(r);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        //cb = cg = cr = sum = 0;
-        cb = sum = 0;
-        read = x - blurRadius;
-        if (read<0) {
-          bk0=-read;
-          read=0;
-        } else {
-          if (read >= width)
-            break;
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= width)
-            break;
-          int c = pixels[read + yi];
-          int[] bm=blurMult[i];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
-        }
-        ri = yi + x;
-        b2[ri] = cb / sum;
-      }
-      yi += width;
-    }
+  protected void blurRGB(float r) {
+    blur(r, 3);
+  }
 
-    yi = 0;
-    ym=-blurRadius;
-    ymi=ym*width;
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        //cb = cg = cr = sum = 0;
-        cb = sum = 0;
-        if (ym<0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= height)
-            break;
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= height)
-            break;
-          int[] bm=blurMult[i];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
-          read += width;
-        }
-        pixels[x+yi] = (cb/sum);
-      }
-      yi += width;
-      ymi += width;
-      ym++;
-    }
+  protected void blurARGB(float r) {
+    blur(r, 4);
   }
 
 
-  protected void blurRGB(float r) {
-    int sum, cr, cg, cb; //, k;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
-    int r2[] = new int[pixels.length];
-    int g2[] = new int[pixels.length];
-    int b2[] = new int[pixels.length];
-    int yi = 0;
-
+  /**
+   * Blur the image across, into blurBuffer, then down, back into pixels.
+   * The buffer is kept for the next blur of an image of the same size.
+   * @param channels 1 for the blue (alpha) channel only, 3 for RGB, 4 for ARGB
+   */
+  private void blur(float r, int channels) {
     buildBlurKernel(r);
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        cb = cg = cr = sum = 0;
-        read = x - blurRadius;
-        if (read<0) {
-          bk0=-read;
-          read=0;
-        } else {
-          if (read >= width)
-            break;
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= width)
-            break;
-          int c = pixels[read + yi];
-          int[] bm=blurMult[i];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
-        }
-        ri = yi + x;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
-      }
-      yi += width;
+    if (blurBuffer == null || blurBuffer.length != pixels.length) {
+      blurBuffer = new int[pixels.length];
     }
+    int[][] buffers = new int[][] {
+      blurBuffer, blurWeights(width), blurWeights(height)
+    };
+    filterPass(BLUR_ACROSS_PASS, channels, buffers);
+    filterPass(BLUR_DOWN_PASS, channels, buffers);
+  }
 
-    yi = 0;
-    ym=-blurRadius;
-    ymi=ym*width;
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        cb = cg = cr = sum = 0;
-        if (ym<0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= height)
-            break;
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= height)
-            break;
-          int[] bm=blurMult[i];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
-          read += width;
-        }
-        pixels[x+yi] = 0xff000000 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
-      }
-      yi += width;
-      ymi += width;
-      ym++;
+  /**
+   * The sum of the weights that land inside a line of n pixels, for each
+   * position along it. This is what each weighted sum is divided by, so
+   * pixels near the edges are averaged over less of the kernel.
+   */
+  private int[] blurWeights(int n) {
+    int radius = blurRadius;
+    int[] weights = new int[n];
+    for (int c = 0; c < n; c++) {
+      // distances 0..left on one side, 1..right on the other
+      int left = Math.min(c, radius - 1);
+      int right = Math.min(n - 1 - c, radius - 1);
+      weights[c] = (squareSum(radius) - squareSum(radius - left - 1) +
+                    squareSum(radius - 1) - squareSum(radius - 1 - right));
     }
+    return weights;
   }
 
 
-  protected void blurARGB(float r) {
-    int sum, cr, cg, cb, ca;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
-    int wh = pixels.length;
-    int r2[] = new int[wh];
-    int g2[] = new int[wh];
-    int b2[] = new int[wh];
-    int a2[] = new int[wh];
-    int yi = 0;
+  /** 1^2 + 2^2 + ... + n^2 */
+  static private int squareSum(int n) {
+    return n * (n + 1) * (2*n + 1) / 6;
+  }
 
-    buildBlurKernel(r);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        cb = cg = cr = ca = sum = 0;
-        read = x - blurRadius;
-        if (read<0) {
-          bk0=-read;
-          read=0;
-        } else {
-          if (read >= width)
-            break;
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= width)
-            break;
-          int c = pixels[read + yi];
-          int[] bm=blurMult[i];
-          ca += bm[(c & ALPHA_MASK) >>> 24];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
-        }
-        ri = yi + x;
-        a2[ri] = ca / sum;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
+  private void blurAcross(int[] buffer, int[] weights, int channels,
+                          int startRow, int stopRow) {
+    for (int y = startRow; y < stopRow; y++) {
+      int offset = y * width;
+      Arrays.fill(buffer, offset, offset + width, 0);
+      for (int shift = 0; shift < channels * 8; shift += 8) {
+        blurLine(pixels, buffer, offset, width, shift, weights);
       }
-      yi += width;
     }
+  }
 
-    yi = 0;
-    ym=-blurRadius;
-    ymi=ym*width;
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        cb = cg = cr = ca = sum = 0;
-        if (ym<0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= height)
-            break;
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
+  /**
+   * Blur the columns in [startCol, stopCol) a few at a time, copying each
+   * group of columns into a tile where they can be read as lines, so that
+   * the image is still read a row at a time.
+   */
+  private void blurDown(int[] buffer, int[] weights, int channels,
+                        int startCol, int stopCol) {
+    int opaque = (channels == 3) ? 0xff000000 : 0;
+    int tileWidth = Math.min(BLUR_TILE_WIDTH, stopCol - startCol);
+    int[] tile = new int[tileWidth * height];
+    int[] blurred = new int[tileWidth * height];
+
+    for (int x0 = startCol; x0 < stopCol; x0 += tileWidth) {
+      int count = Math.min(tileWidth, stopCol - x0);
+      for (int y = 0; y < height; y++) {
+        int index = y*width + x0;
+        for (int k = 0; k < count; k++) {
+          tile[k*height + y] = buffer[index + k];
         }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= height)
-            break;
-          int[] bm=blurMult[i];
-          ca += bm[a2[read]];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
-          read += width;
+      }
+      Arrays.fill(blurred, 0);
+      for (int k = 0; k < count; k++) {
+        for (int shift = 0; shift < channels * 8; shift += 8) {
+          blurLine(tile, blurred, k*height, height, shift, weights);
+        }
+      }
+      for (int y = 0; y < height; y++) {
+        int index = y*width + x0;
+        for (int k = 0; k < count; k++) {
+          pixels[index + k] = blurred[k*height + y] | opaque;
         }
-        pixels[x+yi] = (ca/sum)<<24 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
       }
-      yi += width;
-      ymi += width;
-      ym++;
+    }
+  }
+
+
+  /**
+   * Blur one 8-bit channel (at shift) of the n values in src that begin
+   * at offset, adding the result to the same channel of dst, which should
+   * be zero there to begin with.
+   * <P>
+   * Each result is sum(v * (radius - d)^2) / sum((radius - d)^2) over the
+   * values v that are a distance d < radius away, which takes the same
+   * time for any radius because the running sums are kept of v, v*d and
+   * v*d^2 for the values behind (and including) the current position
+   * (the behind* variables, d counted back from it) and ahead of it (the
+   * ahead* variables), and
+   * sum(v * (r - d)^2) = r^2 * sum(v) - 2r * sum(v*d) + sum(v*d^2).
+   * Moving one step along changes each d by one, so each sum can be
+   * updated from the others, plus the values entering and leaving.
+   * The results are the same as adding up the whole kernel each time.
+   */
+  private void blurLine(int[] src, int[] dst, int offset, int n,
+                        int shift, int[] weights) {
+    int radius = blurRadius;
+    long rr = (long) radius * radius;
+    long r1 = radius - 1;
+    // long division is a good deal slower, and only needed for the very
+    // largest radii, where the weighted sums no longer fit in an int
+    boolean small =
+      255L * (squareSum(radius) + squareSum(radius - 1)) <= Integer.MAX_VALUE;
+
+    long behind0 = (src[offset] >>> shift) & 0xff;
+    long behind1 = 0;
+    long behind2 = 0;
+    long ahead0 = 0;
+    long ahead1 = 0;
+    long ahead2 = 0;
+    for (int d = 1; d < radius && d < n; d++) {
+      long v = (src[offset + d] >>> shift) & 0xff;
+      ahead0 += v;
+      ahead1 += v * d;
+      ahead2 += v * d * d;
+    }
+
+    for (int c = 0; c < n; c++) {
+      long sum = (rr * (behind0 + ahead0) - 2 * radius * (behind1 + ahead1) +
+                  behind2 + ahead2);
+      int average = small ? (int) sum / weights[c] : (int) (sum / weights[c]);
+      dst[offset + c] |= average << shift;
+
+      // leaving at the back, passing the middle, and entering at the front
+      int back = c - radius + 1;
+      long out = (back >= 0) ? (src[offset + back] >>> shift) & 0xff : 0;
+      long mid = (c + 1 < n) ? (src[offset + c + 1] >>> shift) & 0xff : 0;
+      long in = (c + radius < n) ? (src[offset + c + radius] >>> shift) & 0xff : 0;
+
+      behind2 += 2*behind1 + behind0 - rr*out;
+      behind1 += behind0 - radius*out;
+      behind0 += mid - out;
+      ahead2 += ahead0 - 2*ahead1 + r1*r1*in;
+      ahead1 += r1*in - ahead0;
+      ahead0 += in - mid;
     }
   }
 
@@ -1512,13 +1578,21 @@ public class PImage implements PConstants, Cloneable {
    * as decision factor. [toxi 050728]
    */
   protected void dilate(boolean isInverted) {
-    int currIdx=0;
+    int[] out=new int[pixels.length];
+    filterPass(DILATE_PASS, isInverted ? 1 : 0, new int[][] { out });
+    System.arraycopy(out,0,pixels,0,out.length);
+  }
+
+
+  private void dilateRows(boolean isInverted, int[] out,
+                          int startRow, int stopRow) {
+    int currIdx=startRow*width;
     int maxIdx=pixels.length;
-    int[] out=new int[maxIdx];
+    int stopIdx=Math.min(stopRow*width, maxIdx);
 
     if (!isInverted) {
       // erosion (grow light areas)
-      while (currIdx<maxIdx) {
+      while (currIdx<stopIdx) {
         int currRowIdx=currIdx;
         int maxRowIdx=currIdx+width;
         while (currIdx<maxRowIdx) {
@@ -1575,7 +1649,7 @@ public class PImage implements PConstants, Cloneable {
       }
     } else {
       // dilate (grow dark areas)
-      while (currIdx<maxIdx) {
+      while (currIdx<stopIdx) {
         int currRowIdx=currIdx;
         int maxRowIdx=currIdx+width;
         while (currIdx<maxRowIdx) {
@@ -1631,7 +1705,216 @@ public class PImage implements PConstants, Cloneable {
         }
       }
     }
-    System.arraycopy(out,0,pixels,0,maxIdx);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Each filter is made of one or more passes over the image. The passes
+  // before DILATE_PASS work on a range of pixels, BLUR_DOWN_PASS on a range
+  // of columns, and the rest on a range of rows (the blur reads a whole row
+  // across, or a whole column down, from a buffer that's finished by the
+  // time the pass begins). Every pixel is computed the same way no matter
+  // how the work is split up, so it doesn't change the result.
+
+  static private final int GRAY_ALPHA_PASS = 0;
+  static private final int GRAY_PASS = 1;
+  static private final int INVERT_PASS = 2;
+  static private final int OPAQUE_PASS = 3;
+  static private final int POSTERIZE_PASS = 4;
+  static private final int THRESHOLD_PASS = 5;
+  static private final int DILATE_PASS = 6;
+  static private final int BLUR_ACROSS_PASS = 7;
+  static private final int BLUR_DOWN_PASS = 8;
+  static private final int RESIZE_ACROSS_PASS = 9;
+  static private final int RESIZE_DOWN_PASS = 10;
+  static private final int RESIZE_NEAREST_PASS = 11;
+  static private final int BLIT_PASS = 12;
+
+  /** Number of columns blurred together by blurDown(). */
+  static final int BLUR_TILE_WIDTH = 16;
+
+  /** Images with fewer pixels than this are filtered on a single thread. */
+  static final int PARALLEL_FILTER_PIXELS = 1 << 16;
+  /** Smallest band of pixels handed to another thread. */
+  static final int PARALLEL_FILTER_PIECE = 1 << 14;
+
+  static ForkJoinPool taskPool;
+
+
+  static synchronized ForkJoinPool getTaskPool() {
+    if (taskPool == null) {
+      taskPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return taskPool;
+  }
+
+
+  /** Run a pass over the whole image. */
+  private void filterPass(int pass, int arg, int[][] buffers) {
+    int count = pixels.length;
+    int perItem = 1;
+    if (pass == BLUR_DOWN_PASS) {
+      count = width;
+      perItem = height;
+    } else if (pass >= DILATE_PASS) {
+      count = height;
+      perItem = width;
+    }
+    runPass(pass, arg, buffers, count, perItem);
+  }
+
+
+  /**
+   * Run a pass over [0, count), where each of the count pixels, rows, or
+   * columns holds perItem pixels. Large images (on machines with more than
+   * one processor) are cut into bands that are filtered on the task pool,
+   * everything else runs right here.
+   */
+  private void runPass(int pass, int arg, int[][] buffers,
+                       int count, int perItem) {
+    int total = count * perItem;
+    if (total >= PARALLEL_FILTER_PIXELS &&
+        Runtime.getRuntime().availableProcessors() > 1) {
+      ForkJoinPool pool = getTaskPool();
+      int piece = Math.max(PARALLEL_FILTER_PIECE,
+                           total / (pool.getParallelism() * 4));
+      pool.invoke(new FilterTask(this, pass, arg, buffers, 0, count,
+                                 Math.max(1, piece / perItem)));
+    } else {
+      filterRange(pass, arg, buffers, 0, count);
+    }
+  }
+
+
+  /** Run a pass over [start, stop) of the pixels, rows, or columns. */
+  private void filterRange(int pass, int arg, int[][] buffers,
+                           int start, int stop) {
+    switch (pass) {
+    case GRAY_ALPHA_PASS:
+      for (int i = start; i < stop; i++) {
+        int col = 255 - pixels[i];
+        pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
+      }
+      break;
+
+    case GRAY_PASS:
+      for (int i = start; i < stop; i++) {
+        int col = pixels[i];
+        // luminance = 0.3*red + 0.59*green + 0.11*blue
+        // 0.30 * 256 =  77
+        // 0.59 * 256 = 151
+        // 0.11 * 256 =  28
+        int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
+        pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
+      }
+      break;
+
+    case INVERT_PASS:
+      for (int i = start; i < stop; i++) {
+        //pixels[i] = 0xff000000 |
+        pixels[i] ^= 0xffffff;
+      }
+      break;
+
+    case OPAQUE_PASS:
+      for (int i = start; i < stop; i++) {
+        pixels[i] |= 0xff000000;
+      }
+      break;
+
+    case POSTERIZE_PASS:
+      int levels = arg;
+      int levels1 = levels - 1;
+      for (int i = start; i < stop; i++) {
+        int rlevel = (pixels[i] >> 16) & 0xff;
+        int glevel = (pixels[i] >> 8) & 0xff;
+        int blevel = pixels[i] & 0xff;
+        rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
+        glevel = (((glevel * levels) >> 8) * 255) / levels1;
+        blevel = (((blevel * levels) >> 8) * 255) / levels1;
+        pixels[i] = ((0xff000000 & pixels[i]) |
+                     (rlevel << 16) |
+                     (glevel << 8) |
+                     blevel);
+      }
+      break;
+
+    case THRESHOLD_PASS:
+      int thresh = arg;
+      for (int i = start; i < stop; i++) {
+        int max = Math.max((pixels[i] & RED_MASK) >> 16,
+                           Math.max((pixels[i] & GREEN_MASK) >> 8,
+                                    (pixels[i] & BLUE_MASK)));
+        pixels[i] = (pixels[i] & ALPHA_MASK) |
+          ((max < thresh) ? 0x000000 : 0xffffff);
+      }
+      break;
+
+    case DILATE_PASS:
+      dilateRows(arg != 0, buffers[0], start, stop);
+      break;
+
+    case BLUR_ACROSS_PASS:
+      blurAcross(buffers[0], buffers[1], arg, start, stop);
+      break;
+
+    case BLUR_DOWN_PASS:
+      blurDown(buffers[0], buffers[2], arg, start, stop);
+      break;
+
+    case RESIZE_ACROSS_PASS:
+      resizeAcross(buffers[0], width, buffers[1], buffers[3], arg != 0,
+                   start, stop);
+      break;
+
+    case RESIZE_DOWN_PASS:
+      resizeDown(buffers[1], buffers[2], buffers[3][1], buffers[4], arg != 0,
+                 start, stop);
+      break;
+
+    case RESIZE_NEAREST_PASS:
+      resizeNearest(buffers[0], width, buffers[2], buffers[3], buffers[4],
+                    start, stop);
+      break;
+
+    case BLIT_PASS:
+      blitRows(buffers[0], buffers[1], buffers[2], arg, start, stop);
+      break;
+    }
+  }
+
+
+  /** Splits [start, stop) in half until the pieces are small enough. */
+  @SuppressWarnings("serial")
+  static class FilterTask extends RecursiveAction {
+    final PImage image;
+    final int pass, arg;
+    final int[][] buffers;
+    final int start, stop, piece;
+
+    FilterTask(PImage image, int pass, int arg, int[][] buffers,
+               int start, int stop, int piece) {
+      this.image = image;
+      this.pass = pass;
+      this.arg = arg;
+      this.buffers = buffers;
+      this.start = start;
+      this.stop = stop;
+      this.piece = piece;
+    }
+
+    @Override
+    protected void compute() {
+      if (stop - start <= piece) {
+        image.filterRange(pass, arg, buffers, start, stop);
+      } else {
+        int mid = (start + stop) >>> 1;
+        invokeAll(new FilterTask(image, pass, arg, buffers, start, mid, piece),
+                  new FilterTask(image, pass, arg, buffers, mid, stop, piece));
+      }
+    }
   }
 
 
@@ -1959,8 +2242,9 @@ public class PImage implements PConstants, Cloneable {
 
   /**
    * Internal blitter/resizer/copier from toxi.
-   * Uses bilinear filtering if smooth() has been enabled
-   * 'mode' determines the blending mode used in the process.
+   * Always uses bilinear filtering, 'mode' determines the blending mode
+   * used in the process. Large blits are split into bands of rows that
+   * run on the task pool, unless the source and destination share pixels.
    */
   private void blit_resize(PImage img,
                            int srcX1, int srcY1, int srcX2, int srcY2,
@@ -1977,12 +2261,6 @@ public class PImage implements PConstants, Cloneable {
     int destW = destX2 - destX1;
     int destH = destY2 - destY1;
 
-    boolean smooth = true;  // may as well go with the smoothing these days
-
-    if (!smooth) {
-      srcW++; srcH++;
-    }
-
     if (destW <= 0 || destH <= 0 ||
         srcW <= 0 || srcH <= 0 ||
         destX1 >= screenW || destY1 >= screenH ||
@@ -1993,8 +2271,8 @@ public class PImage implements PConstants, Cloneable {
     int dx = (int) (srcW / (float) destW * PRECISIONF);
     int dy = (int) (srcH / (float) destH * PRECISIONF);
 
-    srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
-    srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
+    int srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
+    int srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
 
     if (destX1 < 0) {
       destW += destX1;
@@ -2007,496 +2285,244 @@ public class PImage implements PConstants, Cloneable {
 
     destW = low(destW, screenW - destX1);
     destH = low(destH, screenH - destY1);
+    if (destW <= 0 || destH <= 0) {
+      return;  // clipped away entirely
+    }
 
     int destOffset = destY1 * screenW + destX1;
-    srcBuffer = img.pixels;
-
-    if (smooth) {
-      // use bilinear filtering
-      iw = img.width;
-      iw1 = img.width - 1;
-      ih1 = img.height - 1;
-
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            // davbol  - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = filter_bilinear();
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
+    int[][] buffers = new int[][] {
+      img.pixels, destPixels, new int[] {
+        img.width, img.height, srcXOffset, srcYOffset, dx, dy,
+        destOffset, destW, screenW
       }
-
+    };
+    if (img.pixels == destPixels) {
+      // rows may read pixels written by other rows, so keep them in order
+      filterRange(BLIT_PASS, mode, buffers, 0, destH);
     } else {
-      // nearest neighbour scaling (++fast!)
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            // davbol - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x],
-                             srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+      runPass(BLIT_PASS, mode, buffers, destH, destW);
+    }
+  }
 
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x],
-                             srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+  /**
+   * Rows [start, stop) of a blit_resize(). A row of source pixels is
+   * sampled first, then blended with the destination by blendRow().
+   * When the source and destination share pixels, the row is done a pixel
+   * at a time instead, because the source may overlap the pixels that
+   * were just written.
+   */
+  static private void blitRows(int[] srcPixels, int[] destPixels, int[] blit,
+                               int mode, int start, int stop) {
+    int iw = blit[0];
+    int ih = blit[1];
+    int srcXOffset = blit[2];
+    int srcYOffset = blit[3];
+    int dx = blit[4];
+    int dy = blit[5];
+    int destW = blit[7];
+    int screenW = blit[8];
+
+    // an unscaled copy always samples right on the source pixels
+    boolean unscaled = (dx == PRECISIONF && dy == PRECISIONF);
+    int chunk = (srcPixels == destPixels) ? 1 : destW;
+    int[] row = (mode == REPLACE) ? null : new int[chunk];
+
+    for (int y = start; y < stop; y++) {
+      int sY = srcYOffset + y*dy;
+      int destOffset = blit[6] + y*screenW;
+      for (int x = 0; x < destW; x += chunk) {
+        int count = low(chunk, destW - x);
+        int sX = srcXOffset + x*dx;
+        int[] out = row;
+        int outOffset = 0;
+        if (mode == REPLACE) {
+          out = destPixels;
+          outOffset = destOffset + x;
         }
-        break;
-
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+        if (unscaled) {
+          sampleRow(srcPixels, (sY >> PRECISIONB)*iw + (sX >> PRECISIONB),
+                    out, outOffset, count);
+        } else {
+          filterRow(srcPixels, iw, ih, sX, sY, dx, out, outOffset, count);
         }
-        break;
-
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = srcBuffer[sY + (sX >> PRECISIONB)];
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+        if (mode != REPLACE) {
+          blendRow(mode, row, destPixels, destOffset + x, count);
         }
-        break;
+      }
+    }
+  }
 
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x],
-                               srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x],
-                              srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * Bilinear sampling of count pixels along the source row at sY, starting
+   * from sX and stepping by dx (all in PRECISIONB fixed point).
+   */
+  static private void filterRow(int[] src, int iw, int ih,
+                                int sX, int sY, int dx,
+                                int[] out, int offset, int count) {
+    int iw1 = iw - 1;
+    int fracV = sY & PREC_MAXVAL;
+    int ifV = PREC_MAXVAL - fracV;
+    int v1 = (sY >> PRECISIONB) * iw;
+    int v2 = low((sY >> PRECISIONB) + 1, ih - 1) * iw;
+
+    int end = offset + count;
+    for (int i = offset; i < end; i++) {
+      int fracU = sX & PREC_MAXVAL;
+      int ifU = PREC_MAXVAL - fracU;
+      int ul = (ifU * ifV) >> PRECISIONB;
+      int ll = (ifU * fracV) >> PRECISIONB;
+      int ur = (fracU * ifV) >> PRECISIONB;
+      int lr = (fracU * fracV) >> PRECISIONB;
+      int u1 = (sX >> PRECISIONB);
+      int u2 = low(u1 + 1, iw1);
+
+      // get color values of the 4 neighbouring texels
+      int cUL = src[v1 + u1];
+      int cUR = src[v1 + u2];
+      int cLL = src[v2 + u1];
+      int cLR = src[v2 + u2];
+
+      int r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
+                ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
+               << PREC_RED_SHIFT) & RED_MASK;
+
+      int g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
+                ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
+               >>> PRECISIONB) & GREEN_MASK;
+
+      int b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
+               ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
+                 >>> PRECISIONB;
+
+      int a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
+                ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
+               << PREC_ALPHA_SHIFT) & ALPHA_MASK;
+
+      out[i] = a | r | g | b;
+      sX += dx;
+    }
+  }
 
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * What filterRow() comes up with when the fractions are all zero, without
+   * reading the neighbours: only the upper left texel counts, with a weight
+   * of PREC_MAXVAL squared, which is a hair under one (so each channel
+   * comes out one level lower, exactly as it does from filterRow).
+   */
+  static private void sampleRow(int[] src, int index,
+                                int[] out, int offset, int count) {
+    final int ul = (PREC_MAXVAL * PREC_MAXVAL) >> PRECISIONB;
+    int end = offset + count;
+    for (int i = offset; i < end; i++) {
+      int c = src[index++];
+      out[i] = (((ul*((c&ALPHA_MASK)>>>24)) << PREC_ALPHA_SHIFT) & ALPHA_MASK) |
+        (((ul*((c&RED_MASK)>>16)) << PREC_RED_SHIFT) & RED_MASK) |
+        (((ul*(c&GREEN_MASK)) >>> PRECISIONB) & GREEN_MASK) |
+        ((ul*(c&BLUE_MASK)) >>> PRECISIONB);
+    }
+  }
 
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * Blend count pixels of src into dest, starting at dest[offset]. Each mode
+   * has its own loop, so the blend_xxx() call inside stays the same for the
+   * whole row.
+   */
+  static private void blendRow(int mode, int[] src,
+                               int[] dest, int offset, int count) {
+    switch (mode) {
 
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case BLEND:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_blend(dest[offset + i], src[i]);
+      }
+      break;
 
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case ADD:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_add_pin(dest[offset + i], src[i]);
+      }
+      break;
 
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.width;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SUBTRACT:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_sub_pin(dest[offset + i], src[i]);
+      }
+      break;
 
+    case LIGHTEST:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_lightest(dest[offset + i], src[i]);
       }
-    }
-  }
+      break;
 
+    case DARKEST:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_darkest(dest[offset + i], src[i]);
+      }
+      break;
 
-  private void filter_new_scanline() {
-    sX = srcXOffset;
-    fracV = srcYOffset & PREC_MAXVAL;
-    ifV = PREC_MAXVAL - fracV;
-    v1 = (srcYOffset >> PRECISIONB) * iw;
-    v2 = low((srcYOffset >> PRECISIONB) + 1, ih1) * iw;
-  }
+    case DIFFERENCE:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_difference(dest[offset + i], src[i]);
+      }
+      break;
 
+    case EXCLUSION:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_exclusion(dest[offset + i], src[i]);
+      }
+      break;
 
-  private int filter_bilinear() {
-    fracU = sX & PREC_MAXVAL;
-    ifU = PREC_MAXVAL - fracU;
-    ul = (ifU * ifV) >> PRECISIONB;
-    ll = (ifU * fracV) >> PRECISIONB;
-    ur = (fracU * ifV) >> PRECISIONB;
-    lr = (fracU * fracV) >> PRECISIONB;
-    u1 = (sX >> PRECISIONB);
-    u2 = low(u1 + 1, iw1);
+    case MULTIPLY:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_multiply(dest[offset + i], src[i]);
+      }
+      break;
 
-    // get color values of the 4 neighbouring texels
-    cUL = srcBuffer[v1 + u1];
-    cUR = srcBuffer[v1 + u2];
-    cLL = srcBuffer[v2 + u1];
-    cLR = srcBuffer[v2 + u2];
+    case SCREEN:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_screen(dest[offset + i], src[i]);
+      }
+      break;
 
-    r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
-          ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
-         << PREC_RED_SHIFT) & RED_MASK;
+    case HARD_LIGHT:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_hard_light(dest[offset + i], src[i]);
+      }
+      break;
 
-    g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
-          ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
-         >>> PRECISIONB) & GREEN_MASK;
+    case SOFT_LIGHT:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_soft_light(dest[offset + i], src[i]);
+      }
+      break;
 
-    b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
-         ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
-           >>> PRECISIONB;
+    case OVERLAY:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_overlay(dest[offset + i], src[i]);
+      }
+      break;
 
-    a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
-          ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
-         << PREC_ALPHA_SHIFT) & ALPHA_MASK;
+    case DODGE:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_dodge(dest[offset + i], src[i]);
+      }
+      break;
 
-    return a | r | g | b;
+    case BURN:
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = blend_burn(dest[offset + i], src[i]);
+      }
+      break;
+    }
   }
 
 
-
   //////////////////////////////////////////////////////////////
 
   // internal blending methods
@@ -0,0 +1,479 @@
+package processing.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Like IntList, but for data sets too large for a single array. Values are
+ * kept in fixed-size segments of memory outside the Java heap (direct
+ * ByteBuffers), so growing the list never copies what's already there, and
+ * hundreds of millions of values don't weigh on the garbage collector.
+ * Indices are longs.
+ * <p/>
+ * Use Table.getBigIntList() to work with a column of a Table this way
+ * without making a copy of it.
+ *
+ * @see IntList
+ * @see BigFloatList
+ */
+public class BigIntList {
+  static final int SEGMENT_SHIFT = 20;
+  /** Number of values in each segment (4 MB worth) */
+  static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  protected long count;
+
+  protected IntBuffer[] segments;
+  protected int segmentCount;
+
+
+  public BigIntList() {
+    segments = new IntBuffer[10];
+  }
+
+
+  /**
+   * Use the first 'count' values of a buffer (wrapping an array, or mapped
+   * from a file), without copying it. Changes to the list show up in the
+   * buffer, and vice versa, for as long as the list doesn't grow past the
+   * end of it.
+   */
+  static BigIntList wrap(IntBuffer buffer, int count) {
+    BigIntList outgoing = new BigIntList();
+    for (int start = 0; start < count; start += SEGMENT_SIZE) {
+      int length = Math.min(SEGMENT_SIZE, count - start);
+      IntBuffer segment = buffer.duplicate();
+      segment.limit(start + length);
+      segment.position(start);
+      outgoing.addSegment(segment.slice());
+    }
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Get the length of the list.
+   */
+  public long size() {
+    return count;
+  }
+
+
+  /**
+   * Remove all entries from the list, and let go of the memory used.
+   */
+  public void clear() {
+    Arrays.fill(segments, 0, segmentCount, null);
+    segmentCount = 0;
+    count = 0;
+  }
+
+
+  /**
+   * Get an entry at a particular index.
+   */
+  public int get(long index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException("Array index out of range: " + index);
+    }
+    return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) index & SEGMENT_MASK);
+  }
+
+
+  /**
+   * Set the entry at a particular index. If the index is past the length of
+   * the list, it'll expand the list to accommodate, and fill the intermediate
+   * entries with 0s.
+   */
+  public void set(long index, int what) {
+    if (index < 0) {
+      throw new ArrayIndexOutOfBoundsException("Array index out of range: " + index);
+    }
+    if (index >= count) {
+      ensureCapacity(index + 1);
+      count = index + 1;
+    }
+    segments[(int) (index >>> SEGMENT_SHIFT)].put((int) index & SEGMENT_MASK, what);
+  }
+
+
+  /**
+   * Add a new entry to the list.
+   */
+  public void append(int value) {
+    if ((count & SEGMENT_MASK) == 0 ||
+        (count & SEGMENT_MASK) >= segments[segmentCount-1].capacity()) {
+      ensureCapacity(count + 1);
+    }
+    segments[(int) (count >>> SEGMENT_SHIFT)].put((int) count & SEGMENT_MASK, value);
+    count++;
+  }
+
+
+  public void append(int[] values) {
+    append(values, 0, values.length);
+  }
+
+
+  public void append(int[] values, int offset, int length) {
+    ensureCapacity(count + length);
+    while (length > 0) {
+      IntBuffer segment = segments[(int) (count >>> SEGMENT_SHIFT)];
+      int position = (int) count & SEGMENT_MASK;
+      int amount = Math.min(length, segment.capacity() - position);
+      IntBuffer target = segment.duplicate();
+      target.position(position);
+      target.put(values, offset, amount);
+      offset += amount;
+      length -= amount;
+      count += amount;
+    }
+  }
+
+
+  public void append(IntList list) {
+    append(list.data, 0, list.count);
+  }
+
+
+  /**
+   * Copy 'length' values, starting at 'index', into an array.
+   */
+  public void get(long index, int[] array, int offset, int length) {
+    if (index < 0 || index + length > count) {
+      throw new ArrayIndexOutOfBoundsException("Array index out of range: " +
+                                               (index < 0 ? index : index + length - 1));
+    }
+    while (length > 0) {
+      IntBuffer source = segments[(int) (index >>> SEGMENT_SHIFT)].duplicate();
+      int position = (int) index & SEGMENT_MASK;
+      int amount = Math.min(length, source.capacity() - position);
+      source.position(position);
+      source.get(array, offset, amount);
+      offset += amount;
+      length -= amount;
+      index += amount;
+    }
+  }
+
+
+  private void ensureCapacity(long needed) {
+    if (segmentCount > 0) {
+      // a wrapped array may have left a short segment at the end
+      IntBuffer last = segments[segmentCount-1];
+      long end = ((long) (segmentCount-1) << SEGMENT_SHIFT) + last.capacity();
+      if (last.capacity() != SEGMENT_SIZE && needed > end) {
+        IntBuffer replacement = allocate();
+        IntBuffer source = last.duplicate();
+        source.clear();
+        replacement.put(source);
+        segments[segmentCount-1] = replacement;
+      }
+    }
+    while (((long) segmentCount << SEGMENT_SHIFT) < needed) {
+      addSegment(allocate());
+    }
+  }
+
+
+  private void addSegment(IntBuffer segment) {
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, segmentCount << 1);
+    }
+    segments[segmentCount++] = segment;
+  }
+
+
+  static IntBuffer allocate() {
+    return ByteBuffer.allocateDirect(SEGMENT_SIZE * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+
+  /** Number of values in use from a segment. */
+  private int used(int segment) {
+    return (int) Math.min(SEGMENT_SIZE, count - ((long) segment << SEGMENT_SHIFT));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void checkMinMax(String functionName) {
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  public int min() {
+    checkMinMax("min");
+    return get(minIndex());
+  }
+
+
+  public long minIndex() {
+    checkMinMax("minIndex");
+    int m = segments[0].get(0);
+    long mi = 0;
+    for (int s = 0; s < segmentCount; s++) {
+      IntBuffer segment = segments[s];
+      int n = used(s);
+      for (int i = 0; i < n; i++) {
+        int d = segment.get(i);
+        if (d < m) {
+          m = d;
+          mi = ((long) s << SEGMENT_SHIFT) + i;
+        }
+      }
+    }
+    return mi;
+  }
+
+
+  public int max() {
+    checkMinMax("max");
+    return get(maxIndex());
+  }
+
+
+  public long maxIndex() {
+    checkMinMax("maxIndex");
+    int m = segments[0].get(0);
+    long mi = 0;
+    for (int s = 0; s < segmentCount; s++) {
+      IntBuffer segment = segments[s];
+      int n = used(s);
+      for (int i = 0; i < n; i++) {
+        int d = segment.get(i);
+        if (d > m) {
+          m = d;
+          mi = ((long) s << SEGMENT_SHIFT) + i;
+        }
+      }
+    }
+    return mi;
+  }
+
+
+  /**
+   * Add up all the values. Returns a long (unlike IntList) since with this
+   * many values an int would overflow.
+   */
+  public long sum() {
+    long outgoing = 0;
+    for (int s = 0; s < segmentCount; s++) {
+      IntBuffer segment = segments[s];
+      int n = used(s);
+      for (int i = 0; i < n; i++) {
+        outgoing += segment.get(i);
+      }
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Sorts the list in place. Each segment is sorted on its own (on separate
+   * threads, if there are several processors), and then they're all merged
+   * together, which needs a second copy of the data for a moment.
+   */
+  public void sort() {
+    if (count < 2) {
+      return;
+    }
+    if (segmentCount > 1 && Runtime.getRuntime().availableProcessors() > 1) {
+      Table.getTaskPool().invoke(new SegmentSort(0, segmentCount));
+    } else {
+      for (int s = 0; s < segmentCount; s++) {
+        sortSegment(s);
+      }
+    }
+    if (segmentCount > 1) {
+      merge();
+    }
+  }
+
+
+  /**
+   * Reverse sort, orders values from highest to lowest.
+   */
+  public void sortReverse() {
+    sort();
+    reverse();
+  }
+
+
+  public void reverse() {
+    long ii = count - 1;
+    for (long i = 0; i < count/2; i++) {
+      int t = get(i);
+      set(i, get(ii));
+      set(ii, t);
+      --ii;
+    }
+  }
+
+
+  private void sortSegment(int s) {
+    IntBuffer segment = segments[s];
+    int n = used(s);
+    if (segment.hasArray()) {
+      int offset = segment.arrayOffset();
+      Arrays.sort(segment.array(), offset, offset + n);
+    } else {
+      int[] scratch = new int[n];
+      IntBuffer buffer = segment.duplicate();
+      buffer.get(scratch);
+      Arrays.sort(scratch);
+      buffer.clear();
+      buffer.put(scratch);
+    }
+  }
+
+
+  @SuppressWarnings("serial")
+  class SegmentSort extends RecursiveAction {
+    final int lo, hi;
+
+    SegmentSort(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo == 1) {
+        sortSegment(lo);
+      } else {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new SegmentSort(lo, mid), new SegmentSort(mid, hi));
+      }
+    }
+  }
+
+
+  /**
+   * Merge the sorted segments into a new set of segments, using a heap to
+   * find the segment with the smallest value left, then copy the result
+   * back (so that a wrapped array stays in sync).
+   */
+  private void merge() {
+    int k = segmentCount;
+    int[] position = new int[k];
+    int[] length = new int[k];
+    int[] heap = new int[k];
+    for (int s = 0; s < k; s++) {
+      length[s] = used(s);
+      heap[s] = s;
+    }
+    int heapSize = k;
+    for (int i = heapSize/2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i, position);
+    }
+
+    IntBuffer[] merged = new IntBuffer[k];
+    for (int s = 0; s < k; s++) {
+      merged[s] = allocate();
+    }
+    int out = 0;
+    int outPosition = 0;
+    while (heapSize > 0) {
+      int s = heap[0];
+      merged[out].put(outPosition, segments[s].get(position[s]));
+      if (++outPosition == SEGMENT_SIZE) {
+        out++;
+        outPosition = 0;
+      }
+      if (++position[s] == length[s]) {
+        heap[0] = heap[--heapSize];
+      }
+      if (heapSize > 0) {
+        siftDown(heap, heapSize, 0, position);
+      }
+    }
+
+    for (int s = 0; s < k; s++) {
+      IntBuffer source = merged[s];
+      source.limit(length[s]);
+      IntBuffer target = segments[s].duplicate();
+      target.clear();
+      target.put(source);
+      merged[s] = null;
+    }
+  }
+
+
+  private void siftDown(int[] heap, int heapSize, int i, int[] position) {
+    int item = heap[i];
+    int value = segments[item].get(position[item]);
+    while (true) {
+      int child = 2*i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      int childValue = segments[heap[child]].get(position[heap[child]]);
+      if (child + 1 < heapSize) {
+        int rightValue = segments[heap[child+1]].get(position[heap[child+1]]);
+        if (rightValue < childValue) {
+          child++;
+          childValue = rightValue;
+        }
+      }
+      if (value <= childValue) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = item;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Copy the values into an IntList, which has to fit in a single array.
+   */
+  public IntList toIntList() {
+    if (count > Integer.MAX_VALUE - 8) {
+      throw new RuntimeException("Too many values (" + count + ") for an IntList");
+    }
+    IntList outgoing = new IntList(0);
+    outgoing.data = new int[(int) count];
+    outgoing.count = outgoing.data.length;
+    get(0, outgoing.data, 0, outgoing.count);
+    return outgoing;
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " [ ");
+    long shown = Math.min(count, 100);
+    for (long i = 0; i < shown; i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(i + ": " + get(i));
+    }
+    if (shown != count) {
+      sb.append(", ...");
+    }
+    sb.append(" ]");
+    return sb.toString();
+  }
+}
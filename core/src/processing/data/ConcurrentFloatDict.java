@@ -0,0 +1,128 @@
+package processing.data;
+
+
+/**
+ * A String to float lookup for tallying from several threads at once.
+ * Each thread adds into one of a set of smaller FloatDict cells (picked by
+ * the thread, not the key), so threads rarely wait on one another, even
+ * when they're all incrementing the same key. Reading a value adds up that
+ * key across all of the cells, so use snapshot() to get an ordinary FloatDict
+ * for sorting, getPercent(), and the rest.
+ * <p/>
+ * Individual calls are thread safe, but snapshot() and clear() aren't
+ * atomic with respect to other threads that are still adding.
+ *
+ * @see FloatDict
+ * @see ConcurrentIntDict
+ */
+public class ConcurrentFloatDict {
+  final FloatDict[] cells;
+  final int mask;
+
+
+  public ConcurrentFloatDict() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+
+  /**
+   * @param threads number of threads expected to be adding at once
+   */
+  public ConcurrentFloatDict(int threads) {
+    int length = 1;
+    while (length < threads * 2 && length < 64) {
+      length <<= 1;
+    }
+    cells = new FloatDict[length];
+    for (int i = 0; i < length; i++) {
+      cells[i] = new FloatDict();
+    }
+    mask = length - 1;
+  }
+
+
+  private FloatDict cell() {
+    return cells[(int) Thread.currentThread().getId() & mask];
+  }
+
+
+  /** Increase the value of a key by 1, adding it if it's not present. */
+  public void increment(String key) {
+    add(key, 1);
+  }
+
+
+  public void add(String key, float amount) {
+    FloatDict cell = cell();
+    synchronized (cell) {
+      cell.add(key, amount);
+    }
+  }
+
+
+  public void sub(String key, float amount) {
+    add(key, -amount);
+  }
+
+
+  /**
+   * Return the current total for a key, or 0 if it's not present.
+   */
+  public float get(String key) {
+    float total = 0;
+    for (FloatDict cell : cells) {
+      synchronized (cell) {
+        int index = cell.index(key);
+        if (index != -1) {
+          total += cell.values[index];
+        }
+      }
+    }
+    return total;
+  }
+
+
+  public boolean hasKey(String key) {
+    for (FloatDict cell : cells) {
+      synchronized (cell) {
+        if (cell.hasKey(key)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /** Remove all entries. */
+  public void clear() {
+    for (FloatDict cell : cells) {
+      synchronized (cell) {
+        cell.clear();
+      }
+    }
+  }
+
+
+  /**
+   * Add up the cells into a regular FloatDict. Keys show up in no particular
+   * order, so sort the result before displaying it.
+   */
+  public FloatDict snapshot() {
+    FloatDict outgoing = new FloatDict();
+    for (FloatDict cell : cells) {
+      synchronized (cell) {
+        for (int i = 0; i < cell.count; i++) {
+          outgoing.add(cell.keys[i], cell.values[i]);
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+}
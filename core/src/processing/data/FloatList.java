@@ -451,6 +451,161 @@ public class FloatList implements Iterable<Float> {
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // The whole-list versions below are written as plain counted loops over
+  // local copies of the fields, which is what the JIT needs to see before
+  // it'll use SIMD instructions for them.
+
+
+  /** Add an amount to every value in the list. */
+  public void add(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += amount;
+    }
+  }
+
+
+  /** Subtract an amount from every value in the list. */
+  public void sub(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] -= amount;
+    }
+  }
+
+
+  /** Multiply every value in the list by an amount. */
+  public void mult(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= amount;
+    }
+  }
+
+
+  /** Divide every value in the list by an amount. */
+  public void div(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= amount;
+    }
+  }
+
+
+  /** Add each value of another list (of the same size) to this one. */
+  public void add(FloatList list) {
+    checkSize(list, "add");
+    float[] d = data;
+    float[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += o[i];
+    }
+  }
+
+
+  /** Subtract each value of another list (of the same size) from this one. */
+  public void sub(FloatList list) {
+    checkSize(list, "sub");
+    float[] d = data;
+    float[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] -= o[i];
+    }
+  }
+
+
+  /** Multiply each value by the matching one in another list. */
+  public void mult(FloatList list) {
+    checkSize(list, "mult");
+    float[] d = data;
+    float[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= o[i];
+    }
+  }
+
+
+  /** Divide each value by the matching one in another list. */
+  public void div(FloatList list) {
+    checkSize(list, "div");
+    float[] d = data;
+    float[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= o[i];
+    }
+  }
+
+
+  private void checkSize(FloatList list, String functionName) {
+    if (list.count != count) {
+      String msg =
+        String.format("%s() needs a list with %d values, not %d.",
+                      functionName, count, list.count);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+
+  /**
+   * Replace each value with the total of it and all the values before it,
+   * so that the last entry becomes the sum() of the original list. The
+   * running total is kept as a double, so it doesn't drift on long lists.
+   */
+  public void prefixSum() {
+    float[] d = data;
+    int n = count;
+    double total = 0;
+    for (int i = 0; i < n; i++) {
+      total += d[i];
+      d[i] = (float) total;
+    }
+  }
+
+
+  /**
+   * Count how many values fall into each of 'bins' equal-sized ranges
+   * between min() and max().
+   */
+  public IntList histogram(int bins) {
+    if (count == 0) {
+      return new IntList(new int[bins]);
+    }
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count how many values fall into each of 'bins' equal-sized ranges
+   * between low and high (both inclusive). Values outside that range, and
+   * NaN, aren't counted.
+   */
+  public IntList histogram(int bins, float low, float high) {
+    int[] tally = new int[bins];
+    float scale = (high > low) ? bins / (high - low) : 0;
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      float value = d[i];
+      if (value >= low && value <= high) {
+        // min() keeps 'high' itself from landing one past the end
+        tally[Math.min(bins - 1, (int) ((value - low) * scale))]++;
+      }
+    }
+    return new IntList(tally);
+  }
+
+
   private void checkMinMax(String functionName) {
     if (count == 0) {
       String msg =
@@ -534,9 +689,11 @@ public class FloatList implements Iterable<Float> {
 
 
   public float sum() {
+    float[] d = data;
+    int n = count;
     double outgoing = 0;
-    for (int i = 0; i < count; i++) {
-      outgoing += data[i];
+    for (int i = 0; i < n; i++) {
+      outgoing += d[i];
     }
     return (float) outgoing;
   }
@@ -554,30 +711,103 @@ public class FloatList implements Iterable<Float> {
 
 
   /**
-   * Reverse sort, orders values from highest to lowest
+   * Reverse sort, orders values from highest to lowest. NaN values still go
+   * at the end, the same as with sort().
    *
    * @webref floatlist:method
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    sort();
+    reverseSorted();
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        float temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+  /**
+   * Same as sort(), but large lists are split up and sorted on several
+   * processors at once.
+   */
+  public void parallelSort() {
+    if (!ParallelSort.worthIt(count)) {
+      sort();
+      return;
+    }
+    int n = count;
+    int[] bits = new int[n];
+    for (int i = 0; i < n; i++) {
+      bits[i] = sortableBits(data[i]);
+    }
+    ParallelSort.sort(bits, n);
+    for (int i = 0; i < n; i++) {
+      data[i] = Float.intBitsToFloat(sortableBits(bits[i]));
+    }
+  }
+
+
+  /**
+   * Same as sortReverse(), but large lists are sorted on several
+   * processors at once.
+   */
+  public void parallelSortReverse() {
+    parallelSort();
+    reverseSorted();
+  }
+
+
+  /**
+   * Flip a sorted list around, except for the NaN values that sorting left
+   * at the end, so that they stay there.
+   */
+  private void reverseSorted() {
+    int stop = count;
+    while (stop > 0 && Float.isNaN(data[stop - 1])) {
+      stop--;
+    }
+    int ii = stop - 1;
+    for (int i = 0; i < stop/2; i++) {
+      float t = data[i];
+      data[i] = data[ii];
+      data[ii] = t;
+      --ii;
+    }
+  }
+
+
+  /**
+   * Returns the order that the values would be in if they were sorted, as a
+   * list of indices into this list, without changing this list. Equal values
+   * keep their original order, and NaN values go at the end.
+   */
+  public IntList argsort() {
+    // the value goes in the top half of a long and the index in the bottom,
+    // so sorting the longs sorts by value, then by index
+    int n = count;
+    long[] packed = new long[n];
+    for (int i = 0; i < n; i++) {
+      packed[i] = ((long) sortableBits(data[i]) << 32) | i;
+    }
+    ParallelSort.sort(packed, n);
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = (int) packed[i];
+    }
+    return new IntList(order);
+  }
+
+
+  /**
+   * Bits of a float, rearranged so that comparing them as ints puts them in
+   * the same order as Arrays.sort(float[]). Negative values have everything
+   * but the sign flipped, which also undoes it, so this is its own inverse
+   * (when passed the result as bits).
+   */
+  static private int sortableBits(float value) {
+    return sortableBits(Float.floatToIntBits(value));
+  }
+
+
+  static private int sortableBits(int bits) {
+    return bits ^ ((bits >> 31) & 0x7fffffff);
   }
 
 
@@ -725,13 +955,13 @@ public class FloatList implements Iterable<Float> {
    */
   public FloatList getPercent() {
     double sum = 0;
-    for (float value : array()) {
-      sum += value;
+    for (int i = 0; i < count; i++) {
+      sum += data[i];
     }
     FloatList outgoing = new FloatList(count);
+    outgoing.count = count;
     for (int i = 0; i < count; i++) {
-      double percent = data[i] / sum;
-      outgoing.set(i, (float) percent);
+      outgoing.data[i] = (float) (data[i] / sum);
     }
     return outgoing;
   }
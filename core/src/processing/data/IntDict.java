@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -23,7 +23,14 @@ public class IntDict {
   protected int[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private StringIndex indices = new StringIndex();
+
+  /** Number of removed entries still taking up space in keys/values */
+  protected int removed;
+  /** Lowest index of a removed entry, only valid when removed != 0 */
+  private int firstRemoved;
+  /** Binary indexed tree counting the removed entries before an index */
+  private int[] holes;
 
 
 //  /**
@@ -113,7 +120,7 @@ public class IntDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -125,11 +132,16 @@ public class IntDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    if (removed != 0) {
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+    indices.clear();
   }
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
@@ -239,6 +251,7 @@ public class IntDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -248,6 +261,7 @@ public class IntDict {
 
 
   public int value(int index) {
+    compact();
     return values[index];
   }
 
@@ -305,6 +319,7 @@ public class IntDict {
    * @param array values to copy into the array
    */
   public int[] valueArray(int[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new int[count];
     }
@@ -320,7 +335,7 @@ public class IntDict {
    * @brief Return a value for the specified key
    */
   public int get(String key) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index == -1) return 0;
     return values[index];
   }
@@ -332,7 +347,7 @@ public class IntDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, int amount) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -345,7 +360,7 @@ public class IntDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.get(key) != -1;
   }
 
 
@@ -365,7 +380,7 @@ public class IntDict {
    * @brief Add to a value
    */
   public void add(String key, int amount) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -388,7 +403,7 @@ public class IntDict {
    * @brief Multiply a value
    */
   public void mult(String key, int amount) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -400,7 +415,7 @@ public class IntDict {
    * @brief Divide a value
    */
   public void div(String key, int amount) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -408,6 +423,7 @@ public class IntDict {
 
 
   private void checkMinMax(String functionName) {
+    compact();
     if (count == 0) {
       String msg =
         String.format("Cannot use %s() on an empty %s.",
@@ -419,6 +435,7 @@ public class IntDict {
 
   // return the index of the minimum value
   public int minIndex() {
+    compact();
     checkMinMax("minIndex");
     int index = 0;
     int value = values[0];
@@ -448,6 +465,7 @@ public class IntDict {
 
   // return the index of the max value
   public int maxIndex() {
+    compact();
     checkMinMax("maxIndex");
     int index = 0;
     int value = values[0];
@@ -476,17 +494,20 @@ public class IntDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.get(what);
   }
 
 
   protected void create(String what, int much) {
+    if (count == keys.length && removed != 0) {
+      compact();
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, new Integer(count));
+    indices.put(what, count);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -497,34 +518,91 @@ public class IntDict {
    * @brief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
-    if (index != -1) {
-      removeIndex(index);
+    int slot = indices.remove(key);
+    if (slot == -1) {
+      return -1;
     }
+    // report the index that the entry had, not counting earlier removals
+    int index = slot;
+    if (removed != 0) {
+      for (int i = slot; i > 0; i -= i & -i) {
+        index -= holes[i];
+      }
+    }
+    removeSlot(slot);
     return index;
   }
 
 
   public String removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    //System.out.println("index is " + which + " and " + keys[which]);
     String key = keys[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    indices.remove(key);
+    removeSlot(index);
     return key;
   }
 
 
+  /**
+   * Clear out an entry whose key is already gone from the index. Rather than
+   * shifting everything after it, leave a hole that's filled in by the next
+   * call to compact(), so removing several entries is O(1) apiece.
+   */
+  private void removeSlot(int slot) {
+    if (slot == count - 1) {
+      count--;
+      keys[slot] = null;
+    } else {
+      keys[slot] = StringIndex.HOLE;
+      if (removed == 0) {
+        // keys[] can't grow until compact(), so this is big enough till then
+        if (holes == null || holes.length <= keys.length) {
+          holes = new int[keys.length + 1];
+        }
+        firstRemoved = slot;
+      } else if (slot < firstRemoved) {
+        firstRemoved = slot;
+      }
+      for (int i = slot + 1; i < holes.length; i += i & -i) {
+        holes[i]++;
+      }
+      removed++;
+    }
+    values[slot] = 0;
+  }
+
+
+  /**
+   * Slide entries down over any holes left by remove(), keeping them in the
+   * same order, so that keys[] and values[] are contiguous again.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = firstRemoved;
+      for (int i = firstRemoved; i < count; i++) {
+        if (keys[i] != StringIndex.HOLE) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          indices.put(keys[index], index);
+          index++;
+        }
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
     String tkey = keys[a];
     int tvalue = values[a];
     keys[a] = keys[b];
@@ -532,8 +610,8 @@ public class IntDict {
     keys[b] = tkey;
     values[b] = tvalue;
 
-    indices.put(keys[a], new Integer(a));
-    indices.put(keys[b], new Integer(b));
+    indices.put(keys[a], a);
+    indices.put(keys[b], b);
   }
 
 
@@ -587,6 +665,7 @@ public class IntDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -640,6 +719,7 @@ public class IntDict {
 
   /** Returns a duplicate copy of this object. */
   public IntDict copy() {
+    compact();
     IntDict outgoing = new IntDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
@@ -656,6 +736,7 @@ public class IntDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -665,6 +746,7 @@ public class IntDict {
 
   @Override
   public String toString() {
+    compact();
     StringBuilder sb = new StringBuilder();
     sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
     for (int i = 0; i < size(); i++) {
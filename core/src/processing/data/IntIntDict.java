@@ -0,0 +1,632 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import processing.core.PApplet;
+
+
+/**
+ * A simple class to use an int as a lookup for an int value. Works like
+ * IntDict, but without making a String out of each key, so it's handy for
+ * pixel indices, ids, or grid cells. Nothing is allocated by get(), set(),
+ * increment(), or the other single-key methods once the dictionary has
+ * grown to size.
+ *
+ * @see IntDict
+ * @see IntFloatDict
+ * @see LongObjectDict
+ */
+public class IntIntDict {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected int[] keys;
+  protected int[] values;
+
+  /** Internal implementation for faster lookups */
+  private LongIndex indices;
+
+  /** Number of removed entries still taking up space in keys/values */
+  protected int removed;
+  /** Lowest index of a removed entry, only valid when removed != 0 */
+  private int firstRemoved;
+  /** Binary indexed tree counting the removed entries before an index */
+  private int[] holes;
+
+
+  public IntIntDict() {
+    this(10);
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   */
+  public IntIntDict(int length) {
+    count = 0;
+    keys = new int[length];
+    values = new int[length];
+    indices = new LongIndex(length);
+  }
+
+
+  /**
+   * Read a set of entries from a Reader that has each key/value pair on
+   * a single line, separated by a tab.
+   */
+  public IntIntDict(BufferedReader reader) {
+    String[] lines = PApplet.loadStrings(reader);
+    keys = new int[lines.length];
+    values = new int[lines.length];
+    indices = new LongIndex(lines.length);
+
+    for (int i = 0; i < lines.length; i++) {
+      String[] pieces = PApplet.split(lines[i], '\t');
+      if (pieces.length == 2) {
+        set(PApplet.parseInt(pieces[0]), PApplet.parseInt(pieces[1]));
+      }
+    }
+  }
+
+
+  public IntIntDict(int[] keys, int[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = keys;
+    this.values = values;
+    count = keys.length;
+    indices = new LongIndex(count);
+    for (int i = 0; i < count; i++) {
+      indices.put(keys[i], i);
+    }
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count - removed;
+  }
+
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    count = 0;
+    if (removed != 0) {
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+    indices.clear();
+  }
+
+
+  public int key(int index) {
+    compact();
+    return keys[index];
+  }
+
+
+  // Use this with 'for' loops
+  public Iterable<Integer> keys() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Integer> keyIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index--);
+      }
+
+      public Integer next() {
+        return key(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public int[] keyArray() {
+    return keyArray(null);
+  }
+
+
+  public int[] keyArray(int[] outgoing) {
+    compact();
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new int[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public int value(int index) {
+    compact();
+    return values[index];
+  }
+
+
+  public Iterable<Integer> values() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Integer> valueIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index--);
+      }
+
+      public Integer next() {
+        return value(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   */
+  public int[] valueArray() {
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   *
+   * @param array values to copy into the array
+   */
+  public int[] valueArray(int[] array) {
+    compact();
+    if (array == null || array.length != size()) {
+      array = new int[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key, or 0 if it's not present.
+   */
+  public int get(int key) {
+    int index = indices.get(key);
+    if (index == -1) return 0;
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(int key, int amount) {
+    int index = indices.get(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] = amount;
+    }
+  }
+
+
+  public boolean hasKey(int key) {
+    return indices.get(key) != -1;
+  }
+
+
+  /**
+   * Increase the value associated with a specific key by 1.
+   */
+  public void increment(int key) {
+    add(key, 1);
+  }
+
+
+  public void add(int key, int amount) {
+    int index = indices.get(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] += amount;
+    }
+  }
+
+
+  public void sub(int key, int amount) {
+    add(key, -amount);
+  }
+
+
+  public void mult(int key, int amount) {
+    int index = indices.get(key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  public void div(int key, int amount) {
+    int index = indices.get(key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    compact();
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // return the index of the minimum value
+  public int minIndex() {
+    compact();
+    checkMinMax("minIndex");
+    int index = 0;
+    int value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] < value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the minimum value
+  public int minValue() {
+    checkMinMax("minValue");
+    return values[minIndex()];
+  }
+
+
+  // return the key for the minimum value
+  public int minKey() {
+    checkMinMax("minKey");
+    return keys[minIndex()];
+  }
+
+
+  // return the index of the max value
+  public int maxIndex() {
+    compact();
+    checkMinMax("maxIndex");
+    int index = 0;
+    int value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] > value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the maximum value
+  public int maxValue() {
+    checkMinMax("maxValue");
+    return values[maxIndex()];
+  }
+
+
+  // return the key corresponding to the maximum value
+  public int maxKey() {
+    checkMinMax("maxKey");
+    return keys[maxIndex()];
+  }
+
+
+  public int index(int what) {
+    compact();
+    return indices.get(what);
+  }
+
+
+  protected void create(int what, int much) {
+    if (count == keys.length && removed != 0) {
+      compact();
+    }
+    if (count == keys.length) {
+      int length = Math.max(10, count << 1);  // expand() won't grow an empty array
+      keys = PApplet.expand(keys, length);
+      values = PApplet.expand(values, length);
+    }
+    indices.put(what, count);
+    keys[count] = what;
+    values[count] = much;
+    count++;
+  }
+
+
+  /**
+   * Remove a key/value pair, returning the index it had, or -1 if the key
+   * wasn't present.
+   */
+  public int remove(int key) {
+    int slot = indices.remove(key);
+    if (slot == -1) {
+      return -1;
+    }
+    // report the index that the entry had, not counting earlier removals
+    int index = slot;
+    if (removed != 0) {
+      for (int i = slot; i > 0; i -= i & -i) {
+        index -= holes[i];
+      }
+    }
+    removeSlot(slot);
+    return index;
+  }
+
+
+  public int removeIndex(int index) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    int key = keys[index];
+    indices.remove(key);
+    removeSlot(index);
+    return key;
+  }
+
+
+  /**
+   * Clear out an entry whose key is already gone from the index. Rather than
+   * shifting everything after it, leave a hole that's filled in by the next
+   * call to compact(), so removing several entries is O(1) apiece.
+   */
+  private void removeSlot(int slot) {
+    if (slot == count - 1) {
+      count--;
+    } else {
+      if (removed == 0) {
+        // keys[] can't grow until compact(), so this is big enough till then
+        if (holes == null || holes.length <= keys.length) {
+          holes = new int[keys.length + 1];
+        }
+        firstRemoved = slot;
+      } else if (slot < firstRemoved) {
+        firstRemoved = slot;
+      }
+      for (int i = slot + 1; i < holes.length; i += i & -i) {
+        holes[i]++;
+      }
+      removed++;
+    }
+    values[slot] = 0;
+  }
+
+
+  /**
+   * Slide entries down over any holes left by remove(), keeping them in the
+   * same order, so that keys[] and values[] are contiguous again. There's no
+   * spare key value to mark a hole with, so an entry is still live only if
+   * the index points back at it (a removed key that was added again lives
+   * further along, where create() put it).
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = firstRemoved;
+      for (int i = firstRemoved; i < count; i++) {
+        if (indices.get(keys[i]) == i) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          indices.put(keys[index], index);
+          index++;
+        }
+      }
+      for (int i = index; i < count; i++) {
+        values[i] = 0;
+      }
+      count = index;
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+  }
+
+
+  public void swap(int a, int b) {
+    compact();
+    int tkey = keys[a];
+    int tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+
+    indices.put(keys[a], a);
+    indices.put(keys[b], b);
+  }
+
+
+  /**
+   * Sort the keys in ascending order.
+   */
+  public void sortKeys() {
+    sortImpl(true, false);
+  }
+
+
+  /**
+   * Sort the keys in descending order.
+   */
+  public void sortKeysReverse() {
+    sortImpl(true, true);
+  }
+
+
+  /**
+   * Sort by values in ascending order. The smallest value will be at [0].
+   * Keys are used as a tie-breaker.
+   */
+  public void sortValues() {
+    sortImpl(false, false);
+  }
+
+
+  /**
+   * Sort by values in descending order. The largest value will be at [0].
+   * Keys are used as a tie-breaker.
+   */
+  public void sortValuesReverse() {
+    sortImpl(false, true);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    compact();
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public float compare(int a, int b) {
+        int diff;
+        if (useKeys) {
+          diff = compareInt(keys[a], keys[b]);
+        } else {  // sort values
+          diff = compareInt(values[a], values[b]);
+          if (diff == 0) {
+            diff = compareInt(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        // just the arrays, the index is rebuilt once at the end
+        int tkey = keys[a];
+        int tvalue = values[a];
+        keys[a] = keys[b];
+        values[a] = values[b];
+        keys[b] = tkey;
+        values[b] = tvalue;
+      }
+    };
+    s.run();
+
+    for (int i = 0; i < count; i++) {
+      indices.put(keys[i], i);
+    }
+  }
+
+
+  // not subtraction, which overflows with ints of opposite sign
+  static int compareInt(int a, int b) {
+    return (a < b) ? -1 : ((a == b) ? 0 : 1);
+  }
+
+
+  /**
+   * Sum all of the values in this dictionary, then return a new IntFloatDict
+   * of each key, divided by the total sum. The total for all values will be ~1.0.
+   * @return a Dict with the original keys, mapped to their pct of the total
+   */
+  public IntFloatDict getPercent() {
+    compact();
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];
+    }
+    IntFloatDict outgoing = new IntFloatDict(count);
+    for (int i = 0; i < count; i++) {
+      double percent = values[i] / sum;
+      outgoing.set(keys[i], (float) percent);
+    }
+    return outgoing;
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public IntIntDict copy() {
+    compact();
+    IntIntDict outgoing = new IntIntDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    for (int i = 0; i < count; i++) {
+      outgoing.indices.put(keys[i], i);
+    }
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Write tab-delimited entries out to
+   * @param writer
+   */
+  public void write(PrintWriter writer) {
+    compact();
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  @Override
+  public String toString() {
+    compact();
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(keys[i] + ": " + values[i]);
+    }
+    sb.append(" }");
+    return sb.toString();
+  }
+}
@@ -432,6 +432,153 @@ public class IntList implements Iterable<Integer> {
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // The whole-list versions below are written as plain counted loops over
+  // local copies of the fields, which is what the JIT needs to see before
+  // it'll use SIMD instructions for them.
+
+
+  /** Add an amount to every value in the list. */
+  public void add(int amount) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += amount;
+    }
+  }
+
+
+  /** Subtract an amount from every value in the list. */
+  public void sub(int amount) {
+    add(-amount);
+  }
+
+
+  /** Multiply every value in the list by an amount. */
+  public void mult(int amount) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= amount;
+    }
+  }
+
+
+  /** Divide every value in the list by an amount. */
+  public void div(int amount) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= amount;
+    }
+  }
+
+
+  /** Add each value of another list (of the same size) to this one. */
+  public void add(IntList list) {
+    checkSize(list, "add");
+    int[] d = data;
+    int[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += o[i];
+    }
+  }
+
+
+  /** Subtract each value of another list (of the same size) from this one. */
+  public void sub(IntList list) {
+    checkSize(list, "sub");
+    int[] d = data;
+    int[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] -= o[i];
+    }
+  }
+
+
+  /** Multiply each value by the matching one in another list. */
+  public void mult(IntList list) {
+    checkSize(list, "mult");
+    int[] d = data;
+    int[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= o[i];
+    }
+  }
+
+
+  /** Divide each value by the matching one in another list. */
+  public void div(IntList list) {
+    checkSize(list, "div");
+    int[] d = data;
+    int[] o = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= o[i];
+    }
+  }
+
+
+  private void checkSize(IntList list, String functionName) {
+    if (list.count != count) {
+      String msg =
+        String.format("%s() needs a list with %d values, not %d.",
+                      functionName, count, list.count);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+
+  /**
+   * Replace each value with the total of it and all the values before it,
+   * so that the last entry becomes the sum() of the original list.
+   */
+  public void prefixSum() {
+    int[] d = data;
+    int n = count;
+    for (int i = 1; i < n; i++) {
+      d[i] += d[i-1];
+    }
+  }
+
+
+  /**
+   * Count how many values fall into each of 'bins' equal-sized ranges
+   * between min() and max().
+   */
+  public IntList histogram(int bins) {
+    if (count == 0) {
+      return new IntList(new int[bins]);
+    }
+    return histogram(bins, min(), max());
+  }
+
+
+  /**
+   * Count how many values fall into each of 'bins' equal-sized ranges
+   * between low and high (both inclusive). Values outside that range
+   * aren't counted.
+   */
+  public IntList histogram(int bins, int low, int high) {
+    int[] tally = new int[bins];
+    long range = (long) high - low + 1;
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      int value = d[i];
+      if (value >= low && value <= high) {
+        tally[(int) (((long) value - low) * bins / range)]++;
+      }
+    }
+    return new IntList(tally);
+  }
+
+
   private void checkMinMax(String functionName) {
     if (count == 0) {
       String msg =
@@ -448,9 +595,11 @@ public class IntList implements Iterable<Integer> {
    */
   public int min() {
     checkMinMax("min");
-    int outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] < outgoing) outgoing = data[i];
+    int[] d = data;
+    int n = count;
+    int outgoing = d[0];
+    for (int i = 1; i < n; i++) {
+      outgoing = Math.min(outgoing, d[i]);
     }
     return outgoing;
   }
@@ -478,9 +627,11 @@ public class IntList implements Iterable<Integer> {
    */
   public int max() {
     checkMinMax("max");
-    int outgoing = data[0];
-    for (int i = 1; i < count; i++) {
-      if (data[i] > outgoing) outgoing = data[i];
+    int[] d = data;
+    int n = count;
+    int outgoing = d[0];
+    for (int i = 1; i < n; i++) {
+      outgoing = Math.max(outgoing, d[i]);
     }
     return outgoing;
   }
@@ -503,9 +654,11 @@ public class IntList implements Iterable<Integer> {
 
 
   public int sum() {
+    int[] d = data;
+    int n = count;
     int outgoing = 0;
-    for (int i = 0; i < count; i++) {
-      outgoing += data[i];
+    for (int i = 0; i < n; i++) {
+      outgoing += d[i];
     }
     return outgoing;
   }
@@ -529,24 +682,49 @@ public class IntList implements Iterable<Integer> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    sort();
+    reverse();
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+  /**
+   * Same as sort(), but large lists are split up and sorted on several
+   * processors at once.
+   */
+  public void parallelSort() {
+    ParallelSort.sort(data, count);
+  }
+
+
+  /**
+   * Same as sortReverse(), but large lists are sorted on several
+   * processors at once.
+   */
+  public void parallelSortReverse() {
+    parallelSort();
+    reverse();
+  }
+
+
+  /**
+   * Returns the order that the values would be in if they were sorted, as a
+   * list of indices into this list, without changing this list. Equal values
+   * keep their original order.
+   */
+  public IntList argsort() {
+    // the value goes in the top half of a long and the index in the bottom,
+    // so sorting the longs sorts by value, then by index
+    int n = count;
+    long[] packed = new long[n];
+    for (int i = 0; i < n; i++) {
+      packed[i] = ((long) data[i] << 32) | i;
+    }
+    ParallelSort.sort(packed, n);
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = (int) packed[i];
+    }
+    return new IntList(order);
   }
 
 
@@ -733,13 +911,13 @@ public class IntList implements Iterable<Integer> {
    */
   public FloatList getPercent() {
     double sum = 0;
-    for (float value : array()) {
-      sum += value;
+    for (int i = 0; i < count; i++) {
+      sum += data[i];
     }
     FloatList outgoing = new FloatList(count);
+    outgoing.count = count;
     for (int i = 0; i < count; i++) {
-      double percent = data[i] / sum;
-      outgoing.set(i, (float) percent);
+      outgoing.data[i] = (float) (data[i] / sum);
     }
     return outgoing;
   }
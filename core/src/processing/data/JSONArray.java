@@ -39,10 +39,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import processing.core.PApplet;
 
@@ -101,16 +103,35 @@ import processing.core.PApplet;
 public class JSONArray {
 
   /**
-   * The arrayList where the JSONArray's properties are kept.
+   * The arrayList where the JSONArray's properties are kept, once it holds
+   * anything other than a single kind of number.
    */
-  private final ArrayList<Object> myArrayList;
+  ArrayList<Object> myArrayList;
+
+  // An array made up of only ints, only floats, or only doubles keeps them
+  // in a primitive array instead, rather than boxing each one (which takes
+  // four to six times the memory). The first value of any other type moves
+  // everything over to myArrayList, which is used from then on.
+  static final int OBJECTS = 0;
+  static final int INTS = 1;
+  static final int FLOATS = 2;
+  static final int DOUBLES = 3;
+  static final int EMPTY = 4;
+
+  /** Which of the above is in use */
+  int kind;
+  /** Number of values in ints, floats, or doubles */
+  int count;
+  int[] ints;
+  float[] floats;
+  double[] doubles;
 
 
   /**
    * Construct an empty JSONArray.
    */
   public JSONArray() {
-    this.myArrayList = new ArrayList<Object>();
+    kind = EMPTY;
   }
 
 
@@ -118,7 +139,8 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(Reader reader) {
-    this(new JSONTokener(reader));
+    this();
+    new JSONReader(reader).readArray(this, null, 0, 0);
   }
 
 
@@ -139,10 +161,10 @@ public class JSONArray {
       for (;;) {
         if (x.nextClean() == ',') {
           x.back();
-          myArrayList.add(JSONObject.NULL);
+          append(JSONObject.NULL);
         } else {
           x.back();
-          myArrayList.add(x.nextValue());
+          append(x.nextValue());
         }
         switch (x.nextClean()) {
         case ';':
@@ -166,10 +188,9 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(IntList list) {
-    myArrayList = new ArrayList<Object>();
-    for (int item : list.values()) {
-      myArrayList.add(new Integer(item));
-    }
+    kind = INTS;
+    ints = list.array();
+    count = ints.length;
   }
 
 
@@ -177,10 +198,9 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(FloatList list) {
-    myArrayList = new ArrayList<Object>();
-    for (float item : list.values()) {
-      myArrayList.add(new Float(item));
-    }
+    kind = FLOATS;
+    floats = list.array();
+    count = floats.length;
   }
 
 
@@ -188,6 +208,7 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(StringList list) {
+    kind = OBJECTS;
     myArrayList = new ArrayList<Object>();
     for (String item : list.values()) {
       myArrayList.add(item);
@@ -204,7 +225,7 @@ public class JSONArray {
    */
   static public JSONArray parse(String source) {
     try {
-      return new JSONArray(new JSONTokener(source));
+      return new JSONArray(new StringReader(source));
     } catch (Exception e) {
       return null;
     }
@@ -254,10 +275,101 @@ public class JSONArray {
     if (index < 0 || index >= this.size()) {
       return null;
     }
+    if (kind != OBJECTS) {
+      return box(index);
+    }
     return myArrayList.get(index);
   }
 
 
+  /** True if there's a value at this index, and it's in ints, floats, or doubles. */
+  private boolean isPrimitive(int index) {
+    return kind != OBJECTS && index >= 0 && index < count;
+  }
+
+
+  /** Value at an index of ints, floats, or doubles, as a double. */
+  private double primitive(int index) {
+    switch (kind) {
+    case INTS: return ints[index];
+    case FLOATS: return floats[index];
+    default: return doubles[index];
+    }
+  }
+
+
+  /** Value at an index of ints, floats, or doubles, as the same Object as append() would have stored. */
+  private Object box(int index) {
+    switch (kind) {
+    case INTS: return Integer.valueOf(ints[index]);
+    case FLOATS: return Float.valueOf(floats[index]);
+    default: return Double.valueOf(doubles[index]);
+    }
+  }
+
+
+  /**
+   * True if values of this kind can go into the primitive array, which
+   * is the case when it's already that kind, or nothing is in it yet.
+   */
+  private boolean holds(int which) {
+    if (kind == which) {
+      return true;
+    }
+    if (kind != OBJECTS && count == 0) {
+      kind = which;
+      return true;
+    }
+    return false;
+  }
+
+
+  /** Switch over to myArrayList, boxing anything in the primitive array. */
+  private void unpack() {
+    if (kind != OBJECTS) {
+      myArrayList = new ArrayList<Object>(Math.max(10, count));
+      for (int i = 0; i < count; i++) {
+        myArrayList.add(box(i));
+      }
+      ints = null;
+      floats = null;
+      doubles = null;
+      count = 0;
+      kind = OBJECTS;
+    }
+  }
+
+
+  void appendPrimitive(int value) {
+    if (ints == null) {
+      ints = new int[10];
+    } else if (count == ints.length) {
+      ints = PApplet.expand(ints, Math.max(10, count << 1));
+    }
+    ints[count++] = value;
+  }
+
+
+  void appendPrimitive(float value) {
+    if (floats == null) {
+      floats = new float[10];
+    } else if (count == floats.length) {
+      floats = PApplet.expand(floats, Math.max(10, count << 1));
+    }
+    floats[count++] = value;
+  }
+
+
+  void appendPrimitive(double value) {
+    if (doubles == null) {
+      doubles = new double[10];
+    } else if (count == doubles.length) {
+      doubles = PApplet.expand(doubles, Math.max(10, count << 1));
+    }
+    doubles[count++] = value;
+  }
+
+
   /**
    * Get the object value associated with an index.
    * @param index must be between 0 and length() - 1
@@ -321,6 +433,9 @@ public class JSONArray {
    * @see JSONArray#getBoolean(int)
    */
   public int getInt(int index) {
+    if (isPrimitive(index)) {
+      return (kind == INTS) ? ints[index] : (int) primitive(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -358,6 +473,9 @@ public class JSONArray {
    *  be converted to a number.
    */
   public long getLong(int index) {
+    if (isPrimitive(index)) {
+      return (kind == INTS) ? ints[index] : (long) primitive(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -420,6 +538,9 @@ public class JSONArray {
    *  be converted to a number.
    */
   public double getDouble(int index) {
+    if (isPrimitive(index)) {
+      return primitive(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -582,6 +703,9 @@ public class JSONArray {
    * @see JSONArray#getStringArray()
    */
   public int[] getIntArray() {
+    if (kind == INTS) {
+      return Arrays.copyOf(ints, count);
+    }
     int[] outgoing = new int[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getInt(i);
@@ -602,6 +726,9 @@ public class JSONArray {
 
   /** Get this entire array as a float array. Everything must be an float. */
   public float[] getFloatArray() {
+    if (kind == FLOATS) {
+      return Arrays.copyOf(floats, count);
+    }
     float[] outgoing = new float[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getFloat(i);
@@ -612,6 +739,9 @@ public class JSONArray {
 
   /** Get this entire array as a double array. Everything must be an double. */
   public double[] getDoubleArray() {
+    if (kind == DOUBLES) {
+      return Arrays.copyOf(doubles, count);
+    }
     double[] outgoing = new double[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getDouble(i);
@@ -718,6 +848,10 @@ public class JSONArray {
    * @return this.
    */
   public JSONArray append(int value) {
+    if (holds(INTS)) {
+      appendPrimitive(value);
+      return this;
+    }
     this.append(new Integer(value));
     return this;
   }
@@ -758,6 +892,10 @@ public class JSONArray {
    * @return this.
    */
   public JSONArray append(double value) {
+    if (!Double.isNaN(value) && !Double.isInfinite(value) && holds(DOUBLES)) {
+      appendPrimitive(value);
+      return this;
+    }
     Double d = new Double(value);
     JSONObject.testValidity(d);
     this.append(d);
@@ -805,8 +943,7 @@ public class JSONArray {
    * @param value a JSONArray value
    */
   public JSONArray append(JSONArray value) {
-    myArrayList.add(value);
-    return this;
+    return append((Object) value);
   }
 
 
@@ -814,8 +951,7 @@ public class JSONArray {
    * @param value a JSONObject value
    */
   public JSONArray append(JSONObject value) {
-    myArrayList.add(value);
-    return this;
+    return append((Object) value);
   }
 
 
@@ -827,6 +963,21 @@ public class JSONArray {
    * @return this.
    */
   protected JSONArray append(Object value) {
+    if (kind != OBJECTS) {
+      if (value instanceof Integer && holds(INTS)) {
+        appendPrimitive(((Integer) value).intValue());
+        return this;
+      }
+      if (value instanceof Float && holds(FLOATS)) {
+        appendPrimitive(((Float) value).floatValue());
+        return this;
+      }
+      if (value instanceof Double && holds(DOUBLES)) {
+        appendPrimitive(((Double) value).doubleValue());
+        return this;
+      }
+      unpack();
+    }
     myArrayList.add(value);
     return this;
   }
@@ -884,6 +1035,10 @@ public class JSONArray {
    * @see JSONArray#setBoolean(int, boolean)
    */
   public JSONArray setInt(int index, int value) {
+    if (kind == INTS && index >= 0 && index < count) {
+      ints[index] = value;
+      return this;
+    }
     this.set(index, new Integer(value));
     return this;
   }
@@ -1021,6 +1176,21 @@ public class JSONArray {
       throw new RuntimeException("JSONArray[" + index + "] not found.");
     }
     if (index < this.size()) {
+      if (kind != OBJECTS) {
+        if (kind == INTS && value instanceof Integer) {
+          ints[index] = ((Integer) value).intValue();
+          return this;
+        }
+        if (kind == FLOATS && value instanceof Float) {
+          floats[index] = ((Float) value).floatValue();
+          return this;
+        }
+        if (kind == DOUBLES && value instanceof Double) {
+          doubles[index] = ((Double) value).doubleValue();
+          return this;
+        }
+        unpack();
+      }
       this.myArrayList.set(index, value);
     } else {
       while (index != this.size()) {
@@ -1042,7 +1212,7 @@ public class JSONArray {
    * @see JSONArray#remove(int)
    */
   public int size() {
-    return myArrayList.size();
+    return (kind == OBJECTS) ? myArrayList.size() : count;
   }
 
 
@@ -1052,6 +1222,9 @@ public class JSONArray {
    * @return true if the value at the index is null, or if there is no value.
    */
   public boolean isNull(int index) {
+    if (isPrimitive(index)) {
+      return false;
+    }
     return JSONObject.NULL.equals(this.opt(index));
   }
 
@@ -1068,7 +1241,15 @@ public class JSONArray {
    */
   public Object remove(int index) {
     Object o = this.opt(index);
-    this.myArrayList.remove(index);
+    if (kind == OBJECTS) {
+      this.myArrayList.remove(index);
+    } else if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+    } else {
+      Object array = (kind == INTS) ? ints : ((kind == FLOATS) ? floats : doubles);
+      System.arraycopy(array, index + 1, array, index, count - index - 1);
+      count--;
+    }
     return o;
   }
 
@@ -1099,15 +1280,37 @@ public class JSONArray {
   }
 
 
+  /**
+   * Save to a file. Use "compact" in the options to write everything on a
+   * single line, otherwise two spaces are used for each level of indent.
+   */
   public boolean save(File file, String options) {
-    return save(PApplet.createWriter(file));
+    PrintWriter writer = PApplet.createWriter(file);
+    boolean success = write(writer, JSONWriter.parseIndent(options));
+    writer.close();
+    return success;
   }
 
 
   public boolean save(PrintWriter output) {
-    output.print(format(2));
-    output.flush();
-    return true;
+    return write(output, 2);
+  }
+
+
+  /**
+   * Write straight to the PrintWriter, without making a String of the whole
+   * thing first (the way format() does).
+   * @param indentFactor spaces for each level of indent, or -1 for compact
+   */
+  public boolean write(PrintWriter output, int indentFactor) {
+    JSONWriter writer = new JSONWriter(output, indentFactor);
+    writer.writeArray(this, 0);
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return !output.checkError();
   }
 
 
@@ -1138,9 +1341,7 @@ public class JSONArray {
    */
   public String format(int indentFactor) {
     StringWriter sw = new StringWriter();
-    synchronized (sw.getBuffer()) {
-      return this.write(sw, indentFactor, 0).toString();
-    }
+    return this.write(sw, indentFactor, 0).toString();
   }
 
 
@@ -1172,45 +1373,14 @@ public class JSONArray {
    * @throws JSONException
    */
   protected Writer write(Writer writer, int indentFactor, int indent) {
+    JSONWriter w = new JSONWriter(writer, indentFactor);
+    w.writeArray(this, indent);
     try {
-      boolean commanate = false;
-      int length = this.size();
-      writer.write('[');
-
-      // Use -1 to signify 'no indent'
-      int thisFactor = (indentFactor == -1) ? 0 : indentFactor;
-
-      if (length == 1) {
-        JSONObject.writeValue(writer, this.myArrayList.get(0),
-                              indentFactor, indent);
-//                              thisFactor, indent);
-      } else if (length != 0) {
-        final int newIndent = indent + thisFactor;
-
-        for (int i = 0; i < length; i += 1) {
-          if (commanate) {
-            writer.write(',');
-          }
-          if (indentFactor != -1) {
-            writer.write('\n');
-          }
-          JSONObject.indent(writer, newIndent);
-//          JSONObject.writeValue(writer, this.myArrayList.get(i),
-//                                thisFactor, newIndent);
-          JSONObject.writeValue(writer, this.myArrayList.get(i),
-                                indentFactor, newIndent);
-          commanate = true;
-        }
-        if (indentFactor != -1) {
-          writer.write('\n');
-        }
-        JSONObject.indent(writer, indent);
-      }
-      writer.write(']');
-      return writer;
+      w.flush();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    return writer;
   }
 
 
@@ -1230,7 +1400,7 @@ public class JSONArray {
       if (i > 0) {
         sb.append(separator);
       }
-      sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+      sb.append(JSONObject.valueToString(this.opt(i)));
     }
     return sb.toString();
   }
@@ -38,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
@@ -180,7 +181,7 @@ public class JSONObject {
    * The map where the JSONObject's properties are kept.
    */
 //  private final Map map;
-  private final HashMap<String, Object> map;
+  final HashMap<String, Object> map;
 
 
   /**
@@ -225,7 +226,8 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject(Reader reader) {
-    this(new JSONTokener(reader));
+    this();
+    new JSONReader(reader).readObject(this, null, 0, 0);
   }
 
 
@@ -401,7 +403,7 @@ public class JSONObject {
    *  string or a duplicated key.
    */
   static public JSONObject parse(String source) {
-    return new JSONObject(new JSONTokener(source));
+    return new JSONObject(new StringReader(source));
   }
 
 
@@ -964,7 +966,7 @@ public class JSONObject {
    * @return A String.
    * @throws JSONException If n is a non-finite number.
    */
-  private static String numberToString(Number number) {
+  static String numberToString(Number number) {
     if (number == null) {
       throw new RuntimeException("Null pointer");
     }
@@ -1333,7 +1335,7 @@ public class JSONObject {
    * @return his.
    * @throws JSONException if the key is a duplicate
    */
-  private JSONObject putOnce(String key, Object value) {
+  JSONObject putOnce(String key, Object value) {
     if (key != null && value != null) {
       if (this.opt(key) != null) {
         throw new RuntimeException("Duplicate key \"" + key + "\"");
@@ -1553,15 +1555,37 @@ public class JSONObject {
 //  }
 
 
+  /**
+   * Save to a file. Use "compact" in the options to write everything on a
+   * single line, otherwise two spaces are used for each level of indent.
+   */
   public boolean save(File file, String options) {
-    return write(PApplet.createWriter(file));
+    PrintWriter writer = PApplet.createWriter(file);
+    boolean success = write(writer, JSONWriter.parseIndent(options));
+    writer.close();
+    return success;
   }
 
 
   public boolean write(PrintWriter output) {
-    output.print(format(2));
-    output.flush();
-    return true;
+    return write(output, 2);
+  }
+
+
+  /**
+   * Write straight to the PrintWriter, without making a String of the whole
+   * thing first (the way format() does).
+   * @param indentFactor spaces for each level of indent, or -1 for compact
+   */
+  public boolean write(PrintWriter output, int indentFactor) {
+    JSONWriter writer = new JSONWriter(output, indentFactor);
+    writer.writeObject(this, 0);
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return !output.checkError();
   }
 
 
@@ -1594,9 +1618,7 @@ public class JSONObject {
    */
   public String format(int indentFactor) {
     StringWriter w = new StringWriter();
-    synchronized (w.getBuffer()) {
-      return this.write(w, indentFactor, 0).toString();
-    }
+    return this.write(w, indentFactor, 0).toString();
   }
 
   /**
@@ -1723,48 +1745,6 @@ public class JSONObject {
 //  }
 
 
-  static final Writer writeValue(Writer writer, Object value,
-                                 int indentFactor, int indent) throws IOException {
-    if (value == null || value.equals(null)) {
-      writer.write("null");
-    } else if (value instanceof JSONObject) {
-      ((JSONObject) value).write(writer, indentFactor, indent);
-    } else if (value instanceof JSONArray) {
-      ((JSONArray) value).write(writer, indentFactor, indent);
-    } else if (value instanceof Map) {
-      new JSONObject(value).write(writer, indentFactor, indent);
-    } else if (value instanceof Collection) {
-      new JSONArray(value).write(writer, indentFactor,
-                                              indent);
-    } else if (value.getClass().isArray()) {
-      new JSONArray(value).write(writer, indentFactor, indent);
-    } else if (value instanceof Number) {
-      writer.write(numberToString((Number) value));
-    } else if (value instanceof Boolean) {
-      writer.write(value.toString());
-      /*
-    } else if (value instanceof JSONString) {
-      Object o;
-      try {
-        o = ((JSONString) value).toJSONString();
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-      writer.write(o != null ? o.toString() : quote(value.toString()));
-      */
-    } else {
-      quote(value.toString(), writer);
-    }
-    return writer;
-  }
-
-
-  static final void indent(Writer writer, int indent) throws IOException {
-    for (int i = 0; i < indent; i += 1) {
-      writer.write(' ');
-    }
-  }
-
   /**
    * Write the contents of the JSONObject as JSON text to a writer. For
    * compactness, no whitespace is added.
@@ -1775,53 +1755,14 @@ public class JSONObject {
    * @throws JSONException
    */
   protected Writer write(Writer writer, int indentFactor, int indent) {
+    JSONWriter w = new JSONWriter(writer, indentFactor);
+    w.writeObject(this, indent);
     try {
-      boolean commanate = false;
-      final int length = this.size();
-      Iterator keys = this.keyIterator();
-      writer.write('{');
-
-      int actualFactor = (indentFactor == -1) ? 0 : indentFactor;
-
-      if (length == 1) {
-        Object key = keys.next();
-        writer.write(quote(key.toString()));
-        writer.write(':');
-        if (actualFactor > 0) {
-          writer.write(' ');
-        }
-        //writeValue(writer, this.map.get(key), actualFactor, indent);
-        writeValue(writer, this.map.get(key), indentFactor, indent);
-      } else if (length != 0) {
-        final int newIndent = indent + actualFactor;
-        while (keys.hasNext()) {
-          Object key = keys.next();
-          if (commanate) {
-            writer.write(',');
-          }
-          if (indentFactor != -1) {
-            writer.write('\n');
-          }
-          indent(writer, newIndent);
-          writer.write(quote(key.toString()));
-          writer.write(':');
-          if (actualFactor > 0) {
-            writer.write(' ');
-          }
-          //writeValue(writer, this.map.get(key), actualFactor, newIndent);
-          writeValue(writer, this.map.get(key), indentFactor, newIndent);
-          commanate = true;
-        }
-        if (indentFactor != -1) {
-          writer.write('\n');
-        }
-        indent(writer, indent);
-      }
-      writer.write('}');
-      return writer;
-    } catch (IOException exception) {
-      throw new RuntimeException(exception);
+      w.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
+    return writer;
   }
 
 
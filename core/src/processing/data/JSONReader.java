@@ -0,0 +1,1038 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+
+/**
+ * Reads JSON one token at a time, instead of building the whole thing into
+ * JSONObject and JSONArray objects first. Use it for files that are too
+ * large to hold in memory, or when only a small part of the data is needed:
+ * <pre>
+ * JSONReader reader = new JSONReader(createReader("cities.geojson"));
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   if (reader.nextName().equals("features")) {
+ *     reader.beginArray();
+ *     while (reader.hasNext()) {
+ *       JSONObject feature = reader.nextJSONObject();
+ *       // ...
+ *     }
+ *     reader.endArray();
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.endObject();
+ * </pre>
+ * Alternatively, nextJSONObject() and nextJSONArray() can be given a list
+ * of paths like "features/&#42;/geometry/coordinates", in which case only
+ * the matching parts of the document are kept. Each part of a path is the
+ * name of a key, the index into an array, or &#42; to match anything.
+ * Array elements that don't match are left out, rather than set to null.
+ * <p/>
+ * Accepts the same (somewhat relaxed) syntax as JSONObject and JSONArray:
+ * single-quoted strings, unquoted keys and values, and '=' or ';' in
+ * place of ':' and ','.
+ *
+ * @see JSONObject
+ * @see JSONArray
+ */
+public class JSONReader implements Closeable {
+  // types of tokens returned by peek()
+  static public final int BEGIN_ARRAY = 1;
+  static public final int END_ARRAY = 2;
+  static public final int BEGIN_OBJECT = 3;
+  static public final int END_OBJECT = 4;
+  static public final int NAME = 5;
+  static public final int STRING = 6;
+  static public final int NUMBER = 7;
+  static public final int BOOLEAN = 8;
+  static public final int NULL = 9;
+  static public final int END_DOCUMENT = 10;
+
+  static final String[] TOKEN_NAMES = {
+    null, "BEGIN_ARRAY", "END_ARRAY", "BEGIN_OBJECT", "END_OBJECT", "NAME",
+    "STRING", "NUMBER", "BOOLEAN", "NULL", "END_DOCUMENT"
+  };
+
+  // where we are inside each level of nesting
+  static final int EMPTY_ARRAY = 1;
+  static final int NONEMPTY_ARRAY = 2;
+  static final int EMPTY_OBJECT = 3;
+  static final int DANGLING_NAME = 4;
+  static final int NONEMPTY_OBJECT = 5;
+  static final int EMPTY_DOCUMENT = 6;
+  static final int NONEMPTY_DOCUMENT = 7;
+
+  /** Characters that end an unquoted value (same as JSONTokener) */
+  static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+  static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  Reader reader;
+  char[] buffer = new char[8192];
+  int pos;
+  int limit;
+
+  int[] stack = new int[32];
+  String[] pathNames = new String[32];
+  int[] pathIndices = new int[32];
+  int depth;
+
+  /** The next token, if it's been peeked at already, otherwise 0 */
+  int peeked;
+  /** Quote char for a peeked NAME or STRING, or 0 if it was unquoted */
+  char quote;
+
+  // text of an unquoted token, read while peeking so it can be identified
+  char[] literal = new char[32];
+  int literalLength;
+  boolean literalInteger;  // NUMBER with no decimal point or exponent
+  boolean literalBoolean;  // value of a BOOLEAN
+
+  StringBuilder sb = new StringBuilder();
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+    stack[depth++] = EMPTY_DOCUMENT;
+  }
+
+
+  static public JSONReader parse(String source) {
+    return new JSONReader(new StringReader(source));
+  }
+
+
+  public void close() throws IOException {
+    peeked = 0;
+    depth = 1;
+    stack[0] = NONEMPTY_DOCUMENT;
+    reader.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Returns the type of the next token without consuming it: one of
+   * BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER,
+   * BOOLEAN, NULL, or END_DOCUMENT.
+   */
+  public int peek() {
+    return (peeked != 0) ? peeked : doPeek();
+  }
+
+
+  /** Returns true if the current array or object has more elements. */
+  public boolean hasNext() {
+    int p = peek();
+    return p != END_ARRAY && p != END_OBJECT && p != END_DOCUMENT;
+  }
+
+
+  public void beginArray() {
+    expect(BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+    pathIndices[depth-1] = 0;
+    peeked = 0;
+  }
+
+
+  public void endArray() {
+    expect(END_ARRAY);
+    depth--;
+    peeked = 0;
+    afterValue();
+  }
+
+
+  public void beginObject() {
+    expect(BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+    peeked = 0;
+  }
+
+
+  public void endObject() {
+    expect(END_OBJECT);
+    depth--;
+    pathNames[depth] = null;
+    peeked = 0;
+    afterValue();
+  }
+
+
+  /** Returns the name of the next key inside an object. */
+  public String nextName() {
+    expect(NAME);
+    String name = (quote != 0) ? readQuoted(quote) : literalString();
+    pathNames[depth-1] = name;
+    peeked = 0;
+    return name;
+  }
+
+
+  /**
+   * Returns the next value as a String. Numbers (and unquoted text) are
+   * returned as they appear in the source.
+   */
+  public String nextString() {
+    int p = peek();
+    String outgoing;
+    if (p == STRING && quote != 0) {
+      outgoing = readQuoted(quote);
+    } else if (p == STRING || p == NUMBER) {
+      outgoing = literalString();
+    } else {
+      throw unexpected("STRING", p);
+    }
+    peeked = 0;
+    afterValue();
+    return outgoing;
+  }
+
+
+  public boolean nextBoolean() {
+    expect(BOOLEAN);
+    peeked = 0;
+    afterValue();
+    return literalBoolean;
+  }
+
+
+  public void nextNull() {
+    expect(NULL);
+    peeked = 0;
+    afterValue();
+  }
+
+
+  /**
+   * Returns the next value as a double. Strings that contain a number are
+   * converted as well.
+   */
+  public double nextDouble() {
+    int p = peek();
+    double outgoing;
+    if (p == NUMBER) {
+      outgoing = parseDouble();
+    } else if (p == STRING) {
+      String s = (quote != 0) ? readQuoted(quote) : literalString();
+      try {
+        outgoing = Double.parseDouble(s);
+      } catch (NumberFormatException nfe) {
+        throw syntaxError("Expected a number but found \"" + s + "\"");
+      }
+    } else {
+      throw unexpected("NUMBER", p);
+    }
+    peeked = 0;
+    afterValue();
+    return outgoing;
+  }
+
+
+  public float nextFloat() {
+    return (float) nextDouble();
+  }
+
+
+  public long nextLong() {
+    if (peek() == NUMBER && literalInteger) {
+      long value = parseLong();
+      if (value != Long.MIN_VALUE || literal[0] == '-') {  // no overflow
+        peeked = 0;
+        afterValue();
+        return value;
+      }
+    }
+    double value = nextDouble();
+    if ((long) value != value) {
+      throw syntaxError("Expected a long but found " + value);
+    }
+    return (long) value;
+  }
+
+
+  public int nextInt() {
+    long value = nextLong();
+    if ((int) value != value) {
+      throw syntaxError("Expected an int but found " + value);
+    }
+    return (int) value;
+  }
+
+
+  /**
+   * Skip over the next value, including everything inside it if it's an
+   * array or object. If the next token is a NAME, then both the name and
+   * its value are skipped.
+   */
+  public void skipValue() {
+    if (peek() == NAME) {
+      skipName();
+    }
+    int count = 0;
+    do {
+      int p = peek();
+      switch (p) {
+      case BEGIN_ARRAY:
+        beginArray();
+        count++;
+        break;
+      case BEGIN_OBJECT:
+        beginObject();
+        count++;
+        break;
+      case END_ARRAY:
+        endArray();
+        count--;
+        break;
+      case END_OBJECT:
+        endObject();
+        count--;
+        break;
+      case NAME:
+        skipName();
+        break;
+      case STRING:
+        if (quote != 0) {
+          skipQuoted(quote);
+        }
+        peeked = 0;
+        afterValue();
+        break;
+      case NUMBER:
+      case BOOLEAN:
+      case NULL:
+        peeked = 0;
+        afterValue();
+        break;
+      default:
+        throw unexpected("a value", p);
+      }
+    } while (count != 0);
+  }
+
+
+  private void skipName() {
+    if (quote != 0) {
+      skipQuoted(quote);
+    }
+    pathNames[depth-1] = null;
+    peeked = 0;
+  }
+
+
+  /**
+   * Where the reader is in the document, as a path like "features/3/name",
+   * in the same form used to select parts of the document.
+   */
+  public String getPath() {
+    StringBuilder outgoing = new StringBuilder();
+    for (int i = 1; i < depth; i++) {
+      String part = null;
+      if (stack[i] == EMPTY_ARRAY || stack[i] == NONEMPTY_ARRAY) {
+        part = String.valueOf(pathIndices[i]);
+      } else if (pathNames[i] != null) {
+        part = pathNames[i];
+      }
+      if (part != null) {
+        if (outgoing.length() != 0) {
+          outgoing.append('/');
+        }
+        outgoing.append(part);
+      }
+    }
+    return outgoing.toString();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read the next value into a JSONObject, JSONArray, String, Integer, Long,
+   * Double, Boolean, or JSONObject.NULL, the same types used by JSONObject.
+   */
+  public Object nextValue() {
+    return readValue(null, 0, 0);
+  }
+
+
+  /**
+   * Read the next object, keeping only the parts that match one of the
+   * paths (relative to this object). With no paths, keeps everything.
+   */
+  public JSONObject nextJSONObject(String... paths) {
+    JSONObject outgoing = new JSONObject();
+    String[][] select = parsePaths(paths);
+    readObject(outgoing, select, select == null ? 0 : -1L, 0);
+    return outgoing;
+  }
+
+
+  /**
+   * Read the next array, keeping only the parts that match one of the
+   * paths (relative to this array). With no paths, keeps everything.
+   */
+  public JSONArray nextJSONArray(String... paths) {
+    JSONArray outgoing = new JSONArray();
+    String[][] select = parsePaths(paths);
+    readArray(outgoing, select, select == null ? 0 : -1L, 0);
+    return outgoing;
+  }
+
+
+  static String[][] parsePaths(String[] paths) {
+    if (paths == null || paths.length == 0) {
+      return null;
+    }
+    if (paths.length > 64) {
+      throw new IllegalArgumentException("No more than 64 paths can be used at once");
+    }
+    String[][] outgoing = new String[paths.length][];
+    for (int i = 0; i < paths.length; i++) {
+      outgoing[i] = paths[i].split("/");
+    }
+    return outgoing;
+  }
+
+
+  // 'select' is the list of paths (or null to keep everything), and the bits
+  // of 'active' say which of them match the path down to this 'level'.
+
+
+  Object readValue(String[][] select, long active, int level) {
+    int p = peek();
+    switch (p) {
+    case BEGIN_OBJECT:
+      JSONObject object = new JSONObject();
+      readObject(object, select, active, level);
+      return object;
+    case BEGIN_ARRAY:
+      JSONArray array = new JSONArray();
+      readArray(array, select, active, level);
+      return array;
+    }
+    if (select != null) {
+      // the paths go deeper than this, so there's nothing here to keep
+      skipValue();
+      return null;
+    }
+    switch (p) {
+    case STRING:
+      return nextString();
+    case NUMBER:
+      return nextNumber();
+    case BOOLEAN:
+      return nextBoolean() ? Boolean.TRUE : Boolean.FALSE;
+    case NULL:
+      nextNull();
+      return JSONObject.NULL;
+    }
+    throw unexpected("a value", p);
+  }
+
+
+  void readObject(JSONObject target, String[][] select, long active, int level) {
+    if (peek() != BEGIN_OBJECT) {
+      throw syntaxError("A JSONObject text must begin with '{'");
+    }
+    beginObject();
+    while (hasNext()) {
+      String name = nextName();
+      if (select == null) {
+        target.putOnce(name, readValue(null, 0, 0));
+      } else {
+        long matched = match(select, active, level, name, -1);
+        if (matched == 0) {
+          skipValue();
+        } else if (complete(select, matched, level)) {
+          target.putOnce(name, readValue(null, 0, 0));
+        } else {
+          target.putOnce(name, readValue(select, matched, level + 1));
+        }
+      }
+    }
+    endObject();
+  }
+
+
+  void readArray(JSONArray target, String[][] select, long active, int level) {
+    if (peek() != BEGIN_ARRAY) {
+      throw syntaxError("A JSONArray text must start with '['");
+    }
+    beginArray();
+    for (int index = 0; hasNext(); index++) {
+      if (select == null) {
+        if (peeked == NUMBER) {
+          appendNumber(target);
+        } else {
+          target.append(readValue(null, 0, 0));
+        }
+      } else {
+        long matched = match(select, active, level, null, index);
+        if (matched == 0) {
+          skipValue();
+        } else if (complete(select, matched, level)) {
+          target.append(readValue(null, 0, 0));
+        } else {
+          Object value = readValue(select, matched, level + 1);
+          if (value != null) {
+            target.append(value);
+          }
+        }
+      }
+    }
+    endArray();
+  }
+
+
+  /** Which of the active paths match this key (or array index) too. */
+  static long match(String[][] select, long active, int level,
+                    String name, int index) {
+    long outgoing = 0;
+    for (int i = 0; i < select.length; i++) {
+      if ((active & (1L << i)) != 0 && level < select[i].length) {
+        String part = select[i][level];
+        if (part.equals("*") ||
+            (name != null ? part.equals(name) :
+             part.equals(String.valueOf(index)))) {
+          outgoing |= 1L << i;
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  /** True if one of the matched paths ends here, so keep it all. */
+  static boolean complete(String[][] select, long matched, int level) {
+    for (int i = 0; i < select.length; i++) {
+      if ((matched & (1L << i)) != 0 && select[i].length == level + 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /** NUMBER as an Integer, Long, or Double, same as JSONTokener. */
+  Object nextNumber() {
+    expect(NUMBER);
+    Object outgoing;
+    if (literalInteger) {
+      long value = parseLong();
+      if (value == Long.MIN_VALUE && literal[0] != '-') {
+        outgoing = literalString();  // too large, keep it as text
+      } else if ((int) value == value) {
+        outgoing = Integer.valueOf((int) value);
+      } else {
+        outgoing = Long.valueOf(value);
+      }
+    } else {
+      double value = parseDouble();
+      if (Double.isInfinite(value)) {
+        outgoing = literalString();
+      } else {
+        outgoing = Double.valueOf(value);
+      }
+    }
+    peeked = 0;
+    afterValue();
+    return outgoing;
+  }
+
+
+  /**
+   * Same as target.append(nextNumber()), but an int or double goes
+   * straight into the array's primitive storage (if it's using it)
+   * without being boxed first.
+   */
+  private void appendNumber(JSONArray target) {
+    if (literalInteger) {
+      long value = parseLong();
+      if ((int) value == value &&
+          (target.kind == JSONArray.INTS || target.kind == JSONArray.EMPTY)) {
+        peeked = 0;
+        afterValue();
+        target.append((int) value);
+        return;
+      }
+    } else if (target.kind == JSONArray.DOUBLES || target.kind == JSONArray.EMPTY) {
+      double value = parseDouble();
+      if (!Double.isInfinite(value)) {
+        peeked = 0;
+        afterValue();
+        target.append(value);
+        return;
+      }
+    }
+    target.append(nextNumber());
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      int newLength = depth << 1;
+      stack = java.util.Arrays.copyOf(stack, newLength);
+      pathNames = java.util.Arrays.copyOf(pathNames, newLength);
+      pathIndices = java.util.Arrays.copyOf(pathIndices, newLength);
+    }
+    stack[depth++] = scope;
+  }
+
+
+  private void afterValue() {
+    pathIndices[depth-1]++;
+  }
+
+
+  private void expect(int token) {
+    int p = peek();
+    if (p != token) {
+      throw unexpected(TOKEN_NAMES[token], p);
+    }
+  }
+
+
+  private RuntimeException unexpected(String wanted, int found) {
+    return syntaxError("Expected " + wanted + " but found " + TOKEN_NAMES[found]);
+  }
+
+
+  private RuntimeException syntaxError(String message) {
+    String path = getPath();
+    if (path.length() != 0) {
+      message += " at " + path;
+    }
+    return new RuntimeException(message);
+  }
+
+
+  private int doPeek() {
+    int scope = stack[depth-1];
+    int c;
+
+    if (scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY) {
+      c = nextClean();
+      if (scope == NONEMPTY_ARRAY) {
+        if (c == ']') {
+          return peeked = END_ARRAY;
+        }
+        if (c != ',' && c != ';') {
+          throw syntaxError("Expected a ',' or ']'");
+        }
+        c = nextClean();
+      } else {
+        stack[depth-1] = NONEMPTY_ARRAY;
+      }
+      if (c == ']') {  // empty array, or a trailing comma
+        return peeked = END_ARRAY;
+      }
+      if (c == ',' || c == ';') {  // nothing between two commas
+        pos--;
+        return peeked = NULL;
+      }
+      return peekValue(c);
+
+    } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+      c = nextClean();
+      if (scope == NONEMPTY_OBJECT) {
+        if (c == '}') {
+          return peeked = END_OBJECT;
+        }
+        if (c != ',' && c != ';') {
+          throw syntaxError("Expected a ',' or '}'");
+        }
+        c = nextClean();
+      }
+      if (c == '}') {
+        return peeked = END_OBJECT;
+      }
+      if (c == -1) {
+        throw syntaxError("A JSONObject text must end with '}'");
+      }
+      stack[depth-1] = DANGLING_NAME;
+      if (c == '"' || c == '\'') {
+        quote = (char) c;
+      } else {
+        readLiteral(c);
+        if (literalLength == 0) {
+          throw syntaxError("Missing value");
+        }
+        quote = 0;
+      }
+      return peeked = NAME;
+
+    } else if (scope == DANGLING_NAME) {
+      c = nextClean();
+      if (c == '=') {
+        if (peekChar() == '>') {
+          pos++;
+        }
+      } else if (c != ':') {
+        throw syntaxError("Expected a ':' after a key");
+      }
+      stack[depth-1] = NONEMPTY_OBJECT;
+      return peekValue(nextClean());
+
+    } else {  // top level of the document
+      stack[depth-1] = NONEMPTY_DOCUMENT;
+      c = nextClean();
+      if (c == -1) {
+        return peeked = END_DOCUMENT;
+      }
+      return peekValue(c);
+    }
+  }
+
+
+  private int peekValue(int c) {
+    switch (c) {
+    case '"':
+    case '\'':
+      quote = (char) c;
+      return peeked = STRING;
+    case '{':
+      return peeked = BEGIN_OBJECT;
+    case '[':
+      return peeked = BEGIN_ARRAY;
+    case -1:
+      throw syntaxError("Unexpected end of input");
+    }
+
+    readLiteral(c);
+    if (literalLength == 0) {
+      throw syntaxError("Missing value");
+    }
+    quote = 0;
+    if (literalEquals("true")) {
+      literalBoolean = true;
+      return peeked = BOOLEAN;
+    }
+    if (literalEquals("false")) {
+      literalBoolean = false;
+      return peeked = BOOLEAN;
+    }
+    if (literalEquals("null")) {
+        return peeked = NULL;
+    }
+    return peeked = isNumber() ? NUMBER : STRING;
+  }
+
+
+  /** Next char that isn't whitespace, or -1 at the end of the input. */
+  private int nextClean() {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      char c = buffer[pos++];
+      if (c == 0) {
+        return -1;  // same as JSONTokener
+      }
+      if (c > ' ') {
+        return c;
+      }
+    }
+  }
+
+
+  private int peekChar() {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+
+  private boolean fill() {
+    try {
+      int count;
+      do {
+        count = reader.read(buffer, 0, buffer.length);
+      } while (count == 0);
+      if (count == -1) {
+        pos = limit = 0;
+        return false;
+      }
+      pos = 0;
+      limit = count;
+      return true;
+
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /** Unquoted text, up to the next delimiter, with whitespace trimmed. */
+  private void readLiteral(int c) {
+    literalLength = 0;
+    while (c >= ' ' && DELIMITERS.indexOf(c) == -1) {
+      if (literalLength == literal.length) {
+        literal = java.util.Arrays.copyOf(literal, literalLength << 1);
+      }
+      literal[literalLength++] = (char) c;
+      if (pos == limit && !fill()) {
+        c = -1;
+        break;
+      }
+      c = buffer[pos++];
+    }
+    if (c != -1) {
+      pos--;  // leave the delimiter for later
+    }
+    while (literalLength > 0 && literal[literalLength-1] <= ' ') {
+      literalLength--;
+    }
+  }
+
+
+  private boolean literalEquals(String what) {
+    if (literalLength != what.length()) {
+      return false;
+    }
+    for (int i = 0; i < literalLength; i++) {
+      if (Character.toLowerCase(literal[i]) != what.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private String literalString() {
+    return new String(literal, 0, literalLength);
+  }
+
+
+  /**
+   * Check whether the literal is a number, and whether it's an integer.
+   * Optional sign, digits with an optional decimal point, then an optional
+   * exponent, and at least one digit before the exponent.
+   */
+  private boolean isNumber() {
+    int i = 0;
+    int n = literalLength;
+    if (literal[0] == '-' || literal[0] == '+') {
+      i++;
+    }
+    int digits = 0;
+    while (i < n && literal[i] >= '0' && literal[i] <= '9') {
+      i++;
+      digits++;
+    }
+    literalInteger = true;
+    if (i < n && literal[i] == '.') {
+      literalInteger = false;
+      i++;
+      while (i < n && literal[i] >= '0' && literal[i] <= '9') {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < n && (literal[i] == 'e' || literal[i] == 'E')) {
+      literalInteger = false;
+      i++;
+      if (i < n && (literal[i] == '-' || literal[i] == '+')) {
+        i++;
+      }
+      int start = i;
+      while (i < n && literal[i] >= '0' && literal[i] <= '9') {
+        i++;
+      }
+      if (i == start) {
+        return false;
+      }
+    }
+    return i == n;
+  }
+
+
+  /** Parse an integer literal, returning Long.MIN_VALUE on overflow. */
+  private long parseLong() {
+    int i = 0;
+    boolean negative = false;
+    if (literal[0] == '-' || literal[0] == '+') {
+      negative = literal[0] == '-';
+      i++;
+    }
+    // accumulate as a negative number, which has the larger range
+    long value = 0;
+    for (; i < literalLength; i++) {
+      int digit = literal[i] - '0';
+      if (value < (Long.MIN_VALUE + digit) / 10) {
+        return Long.MIN_VALUE;
+      }
+      value = value * 10 - digit;
+    }
+    if (!negative) {
+      return (value == Long.MIN_VALUE) ? Long.MIN_VALUE : -value;
+    }
+    return value;
+  }
+
+
+  /**
+   * Parse a number from the literal. When it has 15 or fewer significant
+   * digits and a small exponent, both halves are exact as doubles and the
+   * result only gets rounded once, so it can be calculated directly without
+   * creating a String. Anything else goes through Double.parseDouble().
+   */
+  private double parseDouble() {
+    int i = 0;
+    int n = literalLength;
+    boolean negative = false;
+    if (literal[0] == '-' || literal[0] == '+') {
+      negative = literal[0] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    for (; i < n; i++) {
+      char c = literal[i];
+      if (c >= '0' && c <= '9') {
+        if (mantissa != 0 || c != '0') {
+          if (++significant > 15) {
+            return Double.parseDouble(literalString());
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (fraction) {
+          exponent--;
+        }
+      } else if (c == '.') {
+        fraction = true;
+      } else {
+        break;  // exponent
+      }
+    }
+    if (i < n) {
+      i++;  // skip the 'e'
+      boolean negativeExponent = false;
+      if (literal[i] == '-' || literal[i] == '+') {
+        negativeExponent = literal[i] == '-';
+        i++;
+      }
+      int e = 0;
+      for (; i < n; i++) {
+        if (e > 10000) {
+          return Double.parseDouble(literalString());
+        }
+        e = e * 10 + (literal[i] - '0');
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    double value;
+    if (mantissa == 0) {
+      value = 0;
+    } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    } else {
+      return Double.parseDouble(literalString());
+    }
+    return negative ? -value : value;
+  }
+
+
+  /** Read the rest of a quoted string, handling escapes like JSONTokener. */
+  private String readQuoted(char quote) {
+    sb.setLength(0);
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == quote) {
+          sb.append(buffer, start, pos - start - 1);
+          return sb.toString();
+        } else if (c == '\\') {
+          sb.append(buffer, start, pos - start - 1);
+          sb.append(readEscape());
+          start = pos;
+        } else if (c == '\n' || c == '\r' || c == 0) {
+          throw syntaxError("Unterminated string");
+        }
+      }
+      sb.append(buffer, start, pos - start);
+      if (!fill()) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+
+  private void skipQuoted(char quote) {
+    while (true) {
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == quote) {
+          return;
+        } else if (c == '\\') {
+          readEscape();
+        } else if (c == '\n' || c == '\r' || c == 0) {
+          throw syntaxError("Unterminated string");
+        }
+      }
+      if (!fill()) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+
+  private char nextChar() {
+    if (pos == limit && !fill()) {
+      throw syntaxError("Unterminated string");
+    }
+    return buffer[pos++];
+  }
+
+
+  private char readEscape() {
+    char c = nextChar();
+    switch (c) {
+    case 'b': return '\b';
+    case 't': return '\t';
+    case 'n': return '\n';
+    case 'f': return '\f';
+    case 'r': return '\r';
+    case 'u':
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        int digit = JSONTokener.dehexchar(nextChar());
+        if (digit == -1) {
+          throw syntaxError("Illegal escape.");
+        }
+        value = (value << 4) | digit;
+      }
+      return (char) value;
+    case '"':
+    case '\'':
+    case '\\':
+    case '/':
+      return c;
+    }
+    throw syntaxError("Illegal escape.");
+  }
+}
@@ -0,0 +1,590 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import processing.core.PApplet;
+
+
+/**
+ * Writes JSON text straight to a Writer, rather than building it up as a
+ * String first. JSONObject and JSONArray use this for save(), write(), and
+ * format(), and it can also be used on its own to write out a large data
+ * set a piece at a time:
+ * <pre>
+ * JSONWriter writer = new JSONWriter(createWriter("points.json"), -1);
+ * writer.beginArray();
+ * for (Point p : points) {
+ *   writer.beginObject();
+ *   writer.name("x").value(p.x);
+ *   writer.name("y").value(p.y);
+ *   writer.endObject();
+ * }
+ * writer.endArray();
+ * writer.close();
+ * </pre>
+ * An indent of -1 writes everything on a single line, with no extra spaces.
+ * Otherwise each entry goes on its own line, indented by that many spaces
+ * per level. (When writing a whole JSONObject or JSONArray, entries are laid
+ * out the same way as format(), which keeps a single entry on the same line.)
+ * <p/>
+ * Numbers are formatted without creating any Strings along the way, with
+ * the same output as JSONObject otherwise produces.
+ *
+ * @see JSONObject
+ * @see JSONArray
+ * @see JSONReader
+ */
+public class JSONWriter implements Closeable, Flushable {
+  static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  /** Largest integer that a double holds exactly */
+  static final double EXACT_LIMIT = 9007199254740992.0;  // 2^53
+
+  // where we are inside each level of nesting
+  static final int EMPTY_ARRAY = 1;
+  static final int NONEMPTY_ARRAY = 2;
+  static final int EMPTY_OBJECT = 3;
+  static final int DANGLING_NAME = 4;
+  static final int NONEMPTY_OBJECT = 5;
+  static final int DOCUMENT = 6;
+
+  Writer writer;
+  int indentFactor;
+
+  char[] buffer = new char[8192];
+  int length;
+  char[] digits = new char[24];
+
+  int[] stack = new int[32];
+  int depth;
+
+
+  /** Write compact JSON, all on one line. */
+  public JSONWriter(Writer writer) {
+    this(writer, -1);
+  }
+
+
+  /**
+   * @param indent spaces to indent each level, or -1 for compact output
+   */
+  public JSONWriter(Writer writer, int indent) {
+    this.writer = writer;
+    this.indentFactor = indent;
+    stack[depth++] = DOCUMENT;
+  }
+
+
+  public JSONWriter(OutputStream output, int indent) {
+    this(PApplet.createWriter(output), indent);
+  }
+
+
+  public void flush() throws IOException {
+    writer.write(buffer, 0, length);
+    length = 0;
+    writer.flush();
+  }
+
+
+  public void close() throws IOException {
+    flush();
+    writer.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public JSONWriter beginObject() {
+    beforeValue();
+    push(EMPTY_OBJECT);
+    write('{');
+    return this;
+  }
+
+
+  public JSONWriter endObject() {
+    int scope = stack[depth-1];
+    if (scope == DANGLING_NAME) {
+      throw new RuntimeException("Missing a value after the last name");
+    }
+    if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+      throw new RuntimeException("endObject() without beginObject()");
+    }
+    depth--;
+    if (scope == NONEMPTY_OBJECT) {
+      newline(depth - 1);
+    }
+    write('}');
+    return this;
+  }
+
+
+  public JSONWriter beginArray() {
+    beforeValue();
+    push(EMPTY_ARRAY);
+    write('[');
+    return this;
+  }
+
+
+  public JSONWriter endArray() {
+    int scope = stack[depth-1];
+    if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+      throw new RuntimeException("endArray() without beginArray()");
+    }
+    depth--;
+    if (scope == NONEMPTY_ARRAY) {
+      newline(depth - 1);
+    }
+    write(']');
+    return this;
+  }
+
+
+  /** Write the name for the next value inside an object. */
+  public JSONWriter name(String name) {
+    int scope = stack[depth-1];
+    if (scope == NONEMPTY_OBJECT) {
+      write(',');
+    } else if (scope != EMPTY_OBJECT) {
+      throw new RuntimeException("name() can only be used inside an object");
+    }
+    newline(depth - 1);
+    writeName(name);
+    stack[depth-1] = DANGLING_NAME;
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    writeQuoted(value);
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    beforeValue();
+    writeLong(value);
+    return this;
+  }
+
+
+  public JSONWriter value(long value) {
+    beforeValue();
+    writeLong(value);
+    return this;
+  }
+
+
+  public JSONWriter value(float value) {
+    beforeValue();
+    writeDouble(value, true);
+    return this;
+  }
+
+
+  public JSONWriter value(double value) {
+    beforeValue();
+    writeDouble(value, false);
+    return this;
+  }
+
+
+  public JSONWriter value(boolean value) {
+    beforeValue();
+    write(value ? "true" : "false");
+    return this;
+  }
+
+
+  public JSONWriter nullValue() {
+    beforeValue();
+    write("null");
+    return this;
+  }
+
+
+  /**
+   * Write a JSONObject, JSONArray, String, Number, Boolean, or
+   * JSONObject.NULL, along with anything inside it.
+   */
+  public JSONWriter value(Object value) {
+    beforeValue();
+    writeValue(value, (depth - 1) * Math.max(0, indentFactor));
+    return this;
+  }
+
+
+  /**
+   * Figure out the indent from the options passed to save(): "compact" for
+   * everything on one line, or "indent=4" for four spaces. The default is 2.
+   */
+  static int parseIndent(String options) {
+    int indent = 2;
+    if (options != null) {
+      String[] opts = PApplet.trim(PApplet.split(options, ','));
+      for (String opt : opts) {
+        if (opt.equals("compact")) {
+          indent = -1;
+        } else if (opt.startsWith("indent=")) {
+          indent = PApplet.parseInt(opt.substring(7), -2);
+          if (indent == -2) {
+            throw new IllegalArgumentException("Could not read a number from " + opt);
+          }
+        } else {
+          System.err.println("Ignoring unknown option: " + opt);
+        }
+      }
+    }
+    return indent;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      stack = java.util.Arrays.copyOf(stack, depth << 1);
+    }
+    stack[depth++] = scope;
+  }
+
+
+  /** Add a comma and newline, as needed, before the next value. */
+  private void beforeValue() {
+    int scope = stack[depth-1];
+    switch (scope) {
+    case NONEMPTY_ARRAY:
+      write(',');
+      newline(depth - 1);
+      break;
+    case EMPTY_ARRAY:
+      newline(depth - 1);
+      stack[depth-1] = NONEMPTY_ARRAY;
+      break;
+    case DANGLING_NAME:
+      stack[depth-1] = NONEMPTY_OBJECT;
+      break;
+    case DOCUMENT:
+      break;
+    default:
+      throw new RuntimeException("Use name() before each value inside an object");
+    }
+  }
+
+
+  private void newline(int level) {
+    if (indentFactor != -1) {
+      write('\n');
+      spaces(level * indentFactor);
+    }
+  }
+
+
+  private void writeName(String name) {
+    writeQuoted(name);
+    write(':');
+    if (indentFactor > 0) {
+      write(' ');
+    }
+  }
+
+
+  /**
+   * Write a value using the same layout as JSONObject.format(), where
+   * 'indent' is the number of spaces in front of the current line.
+   */
+  void writeValue(Object value, int indent) {
+    if (value == null || value.equals(null)) {
+      write("null");
+    } else if (value instanceof JSONObject) {
+      writeObject((JSONObject) value, indent);
+    } else if (value instanceof JSONArray) {
+      writeArray((JSONArray) value, indent);
+    } else if (value instanceof Map) {
+      writeObject(new JSONObject(value), indent);
+    } else if (value instanceof Collection || value.getClass().isArray()) {
+      writeArray(new JSONArray(value), indent);
+    } else if (value instanceof Integer || value instanceof Long ||
+               value instanceof Short || value instanceof Byte) {
+      writeLong(((Number) value).longValue());
+    } else if (value instanceof Float) {
+      writeDouble(((Float) value).floatValue(), true);
+    } else if (value instanceof Double) {
+      writeDouble(((Double) value).doubleValue(), false);
+    } else if (value instanceof Number) {
+      write(JSONObject.numberToString((Number) value));
+    } else if (value instanceof Boolean) {
+      write(value.toString());
+    } else {
+      writeQuoted(value.toString());
+    }
+  }
+
+
+  void writeObject(JSONObject object, int indent) {
+    write('{');
+    int size = object.map.size();
+    int factor = Math.max(0, indentFactor);
+    if (size == 1) {
+      for (Map.Entry<String, Object> entry : object.map.entrySet()) {
+        writeName(entry.getKey());
+        writeValue(entry.getValue(), indent);
+      }
+    } else if (size != 0) {
+      int newIndent = indent + factor;
+      boolean comma = false;
+      for (Map.Entry<String, Object> entry : object.map.entrySet()) {
+        if (comma) {
+          write(',');
+        }
+        if (indentFactor != -1) {
+          write('\n');
+        }
+        spaces(newIndent);
+        writeName(entry.getKey());
+        writeValue(entry.getValue(), newIndent);
+        comma = true;
+      }
+      if (indentFactor != -1) {
+        write('\n');
+      }
+      spaces(indent);
+    }
+    write('}');
+  }
+
+
+  void writeArray(JSONArray array, int indent) {
+    write('[');
+    int size = array.size();
+    int factor = Math.max(0, indentFactor);
+    if (size == 1) {
+      writeElement(array, 0, indent);
+    } else if (size != 0) {
+      int newIndent = indent + factor;
+      for (int i = 0; i < size; i++) {
+        if (i != 0) {
+          write(',');
+        }
+        if (indentFactor != -1) {
+          write('\n');
+        }
+        spaces(newIndent);
+        writeElement(array, i, newIndent);
+      }
+      if (indentFactor != -1) {
+        write('\n');
+      }
+      spaces(indent);
+    }
+    write(']');
+  }
+
+
+  /** Write one entry of an array, without boxing it if it's a number. */
+  private void writeElement(JSONArray array, int index, int indent) {
+    switch (array.kind) {
+    case JSONArray.INTS:
+      writeLong(array.ints[index]);
+      break;
+    case JSONArray.FLOATS:
+      writeDouble(array.floats[index], true);
+      break;
+    case JSONArray.DOUBLES:
+      writeDouble(array.doubles[index], false);
+      break;
+    default:
+      writeValue(array.myArrayList.get(index), indent);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void write(char c) {
+    if (length == buffer.length) {
+      drain();
+    }
+    buffer[length++] = c;
+  }
+
+
+  private void write(String s) {
+    int count = s.length();
+    if (length + count > buffer.length) {
+      drain();
+      if (count > buffer.length) {
+        try {
+          writer.write(s);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        return;
+      }
+    }
+    s.getChars(0, count, buffer, length);
+    length += count;
+  }
+
+
+  private void write(char[] c, int offset, int count) {
+    if (length + count > buffer.length) {
+      drain();
+    }
+    System.arraycopy(c, offset, buffer, length, count);
+    length += count;
+  }
+
+
+  private void spaces(int count) {
+    for (int i = 0; i < count; i++) {
+      write(' ');
+    }
+  }
+
+
+  /** Pass the buffer along to the Writer, without flushing the Writer. */
+  private void drain() {
+    try {
+      writer.write(buffer, 0, length);
+      length = 0;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /** Same escapes as JSONObject.quote(). */
+  private void writeQuoted(String s) {
+    write('"');
+    int count = s.length();
+    char c = 0;
+    for (int i = 0; i < count; i++) {
+      char b = c;
+      c = s.charAt(i);
+      switch (c) {
+      case '\\':
+      case '"':
+        write('\\');
+        write(c);
+        break;
+      case '/':
+        if (b == '<') {
+          write('\\');
+        }
+        write(c);
+        break;
+      case '\b': write("\\b"); break;
+      case '\t': write("\\t"); break;
+      case '\n': write("\\n"); break;
+      case '\f': write("\\f"); break;
+      case '\r': write("\\r"); break;
+      default:
+        if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
+            (c >= '\u2000' && c < '\u2100')) {
+          write("\\u");
+          for (int shift = 12; shift >= 0; shift -= 4) {
+            write(Character.forDigit((c >> shift) & 0xF, 16));
+          }
+        } else {
+          write(c);
+        }
+      }
+    }
+    write('"');
+  }
+
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      write(String.valueOf(value));
+      return;
+    }
+    if (value < 0) {
+      write('-');
+      value = -value;
+    }
+    int start = digits.length;
+    do {
+      digits[--start] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    write(digits, start, digits.length - start);
+  }
+
+
+  /**
+   * Write a float or double the way JSONObject does (the output of
+   * Float.toString() or Double.toString(), minus any trailing zeros after
+   * the decimal point). Values between 0.001 and 10^7 (where toString()
+   * doesn't use an exponent) are done here: find the fewest decimal places
+   * that still read back as the same value, and write that integer with the
+   * decimal point added. Anything else goes through numberToString().
+   */
+  private void writeDouble(double value, boolean isFloat) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    double a = Math.abs(value);
+    if (a == 0) {
+      write((Double.doubleToRawLongBits(value) < 0) ? "-0" : "0");
+      return;
+    }
+    if (a >= 1e-3 && a < 1e7) {
+      for (int places = 0; places < POWERS_OF_TEN.length; places++) {
+        double scaled = Math.rint(a * POWERS_OF_TEN[places]);
+        if (scaled >= EXACT_LIMIT) {
+          break;
+        }
+        double back = scaled / POWERS_OF_TEN[places];
+        if (isFloat ? ((float) back == (float) a) : (back == a)) {
+          if (value < 0) {
+            write('-');
+          }
+          writeDecimal((long) scaled, places);
+          return;
+        }
+      }
+    }
+    write(JSONObject.numberToString(isFloat ?
+                                    (Number) Float.valueOf((float) value) :
+                                    (Number) Double.valueOf(value)));
+  }
+
+
+  /** Write 'number' divided by 10^places, without trailing zeros. */
+  private void writeDecimal(long number, int places) {
+    while (places > 0 && number % 10 == 0) {
+      number /= 10;
+      places--;
+    }
+    int start = digits.length;
+    int count = 0;
+    do {
+      if (count == places && places != 0) {
+        digits[--start] = '.';
+      }
+      digits[--start] = (char) ('0' + (number % 10));
+      number /= 10;
+      count++;
+    } while (number != 0 || count <= places);
+    write(digits, start, digits.length - start);
+  }
+}
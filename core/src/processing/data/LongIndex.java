@@ -0,0 +1,145 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Internal lookup from an int or long key to its position (slot) in the
+ * keys array of IntIntDict, IntFloatDict, or LongObjectDict. Same idea as
+ * StringIndex: open addressing with linear probing, tombstones for removed
+ * keys, and nothing boxed, so lookups don't allocate.
+ * Advanced users only, not official API.
+ */
+class LongIndex {
+  static final int EMPTY = -1;
+  static final int REMOVED = -2;
+
+  long[] keys;
+  int[] slots;  // EMPTY, REMOVED, or the slot for the key
+  int mask;
+
+  int count;  // number of keys
+  int used;   // keys plus tombstones
+
+
+  LongIndex() {
+    this(16);
+  }
+
+
+  LongIndex(int expected) {
+    int capacity = 16;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    slots = new int[capacity];
+    Arrays.fill(slots, EMPTY);
+    mask = capacity - 1;
+    count = 0;
+    used = 0;
+  }
+
+
+  /** Spread the bits around, since sequential ids are the common case. */
+  static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+
+  /** Position in the hash table for this key, or -1 if it's not present. */
+  private int find(long key) {
+    int i = hash(key) & mask;
+    while (slots[i] != EMPTY) {
+      if (slots[i] != REMOVED && keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /** Returns the slot for this key, or -1 if it's not present. */
+  int get(long key) {
+    int i = find(key);
+    return (i == -1) ? -1 : slots[i];
+  }
+
+
+  /** Set (or change) the slot for a key. */
+  void put(long key, int slot) {
+    int i = find(key);
+    if (i != -1) {
+      slots[i] = slot;
+      return;
+    }
+    if ((used + 1) * 2 > slots.length) {
+      rebuild();
+    }
+    i = hash(key) & mask;
+    while (slots[i] >= 0) {  // reuse the first tombstone along the way
+      i = (i + 1) & mask;
+    }
+    if (slots[i] == EMPTY) {
+      used++;
+    }
+    keys[i] = key;
+    slots[i] = slot;
+    count++;
+  }
+
+
+  /** Remove a key, returning the slot it had, or -1 if it wasn't present. */
+  int remove(long key) {
+    int i = find(key);
+    if (i == -1) {
+      return -1;
+    }
+    int slot = slots[i];
+    slots[i] = REMOVED;
+    count--;
+    return slot;
+  }
+
+
+  void clear() {
+    if (used != 0) {
+      Arrays.fill(slots, EMPTY);
+      count = 0;
+      used = 0;
+    }
+  }
+
+
+  /**
+   * Re-insert everything into a new table, doubling the size only if it's
+   * actually full (rather than just littered with tombstones).
+   */
+  private void rebuild() {
+    long[] oldKeys = keys;
+    int[] oldSlots = slots;
+    allocate((count + 1) * 2 > oldSlots.length / 2 ?
+             oldSlots.length << 1 : oldSlots.length);
+    for (int j = 0; j < oldSlots.length; j++) {
+      if (oldSlots[j] >= 0) {
+        int i = hash(oldKeys[j]) & mask;
+        while (slots[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        slots[i] = oldSlots[j];
+        count++;
+        used++;
+      }
+    }
+  }
+}
@@ -0,0 +1,470 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import processing.core.PApplet;
+
+
+/**
+ * A simple class to use a long as a lookup for any kind of object, i.e. a
+ * HashMap&lt;Long, V&gt; that doesn't box its keys. Follows the IntDict way
+ * of doing things: entries stay in the order they were added (or sorted),
+ * and can be read back by index as well as by key.
+ *
+ * @see IntIntDict
+ * @see IntFloatDict
+ */
+public class LongObjectDict<V> {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected long[] keys;
+  protected Object[] values;
+
+  /** Internal implementation for faster lookups */
+  private LongIndex indices;
+
+  /** Number of removed entries still taking up space in keys/values */
+  protected int removed;
+  /** Lowest index of a removed entry, only valid when removed != 0 */
+  private int firstRemoved;
+  /** Binary indexed tree counting the removed entries before an index */
+  private int[] holes;
+
+
+  public LongObjectDict() {
+    this(10);
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   */
+  public LongObjectDict(int length) {
+    count = 0;
+    keys = new long[length];
+    values = new Object[length];
+    indices = new LongIndex(length);
+  }
+
+
+  public LongObjectDict(long[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = keys;
+    this.values = values;
+    count = keys.length;
+    indices = new LongIndex(count);
+    for (int i = 0; i < count; i++) {
+      indices.put(keys[i], i);
+    }
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count - removed;
+  }
+
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    Arrays.fill(values, 0, count, null);  // let go of the objects
+    count = 0;
+    if (removed != 0) {
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+    indices.clear();
+  }
+
+
+  public long key(int index) {
+    compact();
+    return keys[index];
+  }
+
+
+  // Use this with 'for' loops
+  public Iterable<Long> keys() {
+    return new Iterable<Long>() {
+
+      @Override
+      public Iterator<Long> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Long> keyIterator() {
+    return new Iterator<Long>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index--);
+      }
+
+      public Long next() {
+        return key(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public long[] keyArray() {
+    return keyArray(null);
+  }
+
+
+  public long[] keyArray(long[] outgoing) {
+    compact();
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new long[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  @SuppressWarnings("unchecked")
+  public V value(int index) {
+    compact();
+    return (V) values[index];
+  }
+
+
+  public Iterable<V> values() {
+    return new Iterable<V>() {
+
+      @Override
+      public Iterator<V> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<V> valueIterator() {
+    return new Iterator<V>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index--);
+      }
+
+      public V next() {
+        return value(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values. If it's not the same
+   * size as the number of values, a new array of the same type will be
+   * allocated and returned, so use valueArray(new Thing[0]) to get a new one.
+   *
+   * @param array values to copy into the array
+   */
+  @SuppressWarnings("unchecked")
+  public V[] valueArray(V[] array) {
+    compact();
+    if (array.length != count) {
+      array = (V[]) java.lang.reflect.Array.newInstance(array.getClass().getComponentType(), count);
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key, or null if it's not present.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    int index = indices.get(key);
+    if (index == -1) return null;
+    return (V) values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(long key, V value) {
+    int index = indices.get(key);
+    if (index == -1) {
+      create(key, value);
+    } else {
+      values[index] = value;
+    }
+  }
+
+
+  public boolean hasKey(long key) {
+    return indices.get(key) != -1;
+  }
+
+
+  public int index(long what) {
+    compact();
+    return indices.get(what);
+  }
+
+
+  protected void create(long what, V value) {
+    if (count == keys.length && removed != 0) {
+      compact();
+    }
+    if (count == keys.length) {
+      int length = Math.max(10, count << 1);  // expand() won't grow an empty array
+      keys = PApplet.expand(keys, length);
+      values = (Object[]) PApplet.expand(values, length);
+    }
+    indices.put(what, count);
+    keys[count] = what;
+    values[count] = value;
+    count++;
+  }
+
+
+  /**
+   * Remove a key/value pair, returning the index it had, or -1 if the key
+   * wasn't present.
+   */
+  public int remove(long key) {
+    int slot = indices.remove(key);
+    if (slot == -1) {
+      return -1;
+    }
+    // report the index that the entry had, not counting earlier removals
+    int index = slot;
+    if (removed != 0) {
+      for (int i = slot; i > 0; i -= i & -i) {
+        index -= holes[i];
+      }
+    }
+    removeSlot(slot);
+    return index;
+  }
+
+
+  public long removeIndex(int index) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    long key = keys[index];
+    indices.remove(key);
+    removeSlot(index);
+    return key;
+  }
+
+
+  /**
+   * Clear out an entry whose key is already gone from the index. Rather than
+   * shifting everything after it, leave a hole that's filled in by the next
+   * call to compact(), so removing several entries is O(1) apiece.
+   */
+  private void removeSlot(int slot) {
+    if (slot == count - 1) {
+      count--;
+    } else {
+      if (removed == 0) {
+        // keys[] can't grow until compact(), so this is big enough till then
+        if (holes == null || holes.length <= keys.length) {
+          holes = new int[keys.length + 1];
+        }
+        firstRemoved = slot;
+      } else if (slot < firstRemoved) {
+        firstRemoved = slot;
+      }
+      for (int i = slot + 1; i < holes.length; i += i & -i) {
+        holes[i]++;
+      }
+      removed++;
+    }
+    values[slot] = null;
+  }
+
+
+  /**
+   * Slide entries down over any holes left by remove(), keeping them in the
+   * same order, so that keys[] and values[] are contiguous again. There's no
+   * spare key value to mark a hole with, so an entry is still live only if
+   * the index points back at it (a removed key that was added again lives
+   * further along, where create() put it).
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = firstRemoved;
+      for (int i = firstRemoved; i < count; i++) {
+        if (indices.get(keys[i]) == i) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          indices.put(keys[index], index);
+          index++;
+        }
+      }
+      for (int i = index; i < count; i++) {
+        values[i] = null;
+      }
+      count = index;
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+  }
+
+
+  public void swap(int a, int b) {
+    compact();
+    long tkey = keys[a];
+    Object tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+
+    indices.put(keys[a], a);
+    indices.put(keys[b], b);
+  }
+
+
+  /**
+   * Sort the keys in ascending order.
+   */
+  public void sortKeys() {
+    sortImpl(null, false);
+  }
+
+
+  /**
+   * Sort the keys in descending order.
+   */
+  public void sortKeysReverse() {
+    sortImpl(null, true);
+  }
+
+
+  /**
+   * Sort by values, using the Comparator to decide their order.
+   * Keys are used as a tie-breaker.
+   */
+  public void sortValues(Comparator<? super V> comparator) {
+    sortImpl(comparator, false);
+  }
+
+
+  /**
+   * Sort by values in the opposite order of the Comparator.
+   */
+  public void sortValuesReverse(Comparator<? super V> comparator) {
+    sortImpl(comparator, true);
+  }
+
+
+  protected void sortImpl(final Comparator<? super V> comparator,
+                          final boolean reverse) {
+    compact();
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public float compare(int a, int b) {
+        int diff = 0;
+        if (comparator != null) {
+          diff = comparator.compare(value(a), value(b));
+        }
+        if (diff == 0) {
+          diff = (keys[a] < keys[b]) ? -1 : ((keys[a] == keys[b]) ? 0 : 1);
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        // just the arrays, the index is rebuilt once at the end
+        long tkey = keys[a];
+        Object tvalue = values[a];
+        keys[a] = keys[b];
+        values[a] = values[b];
+        keys[b] = tkey;
+        values[b] = tvalue;
+      }
+    };
+    s.run();
+
+    for (int i = 0; i < count; i++) {
+      indices.put(keys[i], i);
+    }
+  }
+
+
+  /** Returns a duplicate copy of this object. The values aren't copied. */
+  public LongObjectDict<V> copy() {
+    compact();
+    LongObjectDict<V> outgoing = new LongObjectDict<V>(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    for (int i = 0; i < count; i++) {
+      outgoing.indices.put(keys[i], i);
+    }
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Write tab-delimited entries out to
+   * @param writer
+   */
+  public void write(PrintWriter writer) {
+    compact();
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  @Override
+  public String toString() {
+    compact();
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(keys[i] + ": " + values[i]);
+    }
+    sb.append(" }");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,199 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Merge sort that sorts pieces of an array with Arrays.sort() on separate
+ * threads (using the same pool as Table), then merges them back together.
+ * Stands in for Arrays.parallelSort(), which needs Java 8. Small arrays,
+ * or a single processor, just use Arrays.sort() directly.
+ * Advanced users only, not official API.
+ */
+class ParallelSort {
+  /** Below this many elements, splitting things up isn't worth it */
+  static final int MIN_PARALLEL = 1 << 16;
+  /** Smallest piece handed to Arrays.sort() */
+  static final int MIN_PIECE = 1 << 13;
+
+
+  static boolean worthIt(int count) {
+    return count >= MIN_PARALLEL &&
+      Runtime.getRuntime().availableProcessors() > 1;
+  }
+
+
+  static int pieceSize(int count, ForkJoinPool pool) {
+    return Math.max(MIN_PIECE, count / (pool.getParallelism() * 4));
+  }
+
+
+  static void sort(int[] data, int count) {
+    if (worthIt(count)) {
+      ForkJoinPool pool = Table.getTaskPool();
+      pool.invoke(new IntSort(data, new int[count], 0, count,
+                              pieceSize(count, pool)));
+    } else {
+      Arrays.sort(data, 0, count);
+    }
+  }
+
+
+  static void sort(long[] data, int count) {
+    if (worthIt(count)) {
+      ForkJoinPool pool = Table.getTaskPool();
+      pool.invoke(new LongSort(data, new long[count], 0, count,
+                               pieceSize(count, pool)));
+    } else {
+      Arrays.sort(data, 0, count);
+    }
+  }
+
+
+  /** Stable, like Arrays.sort() for objects. */
+  static <T> void sort(T[] data, int count, Comparator<? super T> comparator) {
+    if (worthIt(count)) {
+      ForkJoinPool pool = Table.getTaskPool();
+      pool.invoke(new ObjectSort<T>(data, data.clone(), 0, count,
+                                    pieceSize(count, pool), comparator));
+    } else {
+      Arrays.sort(data, 0, count, comparator);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Each of these sorts [lo, hi) of the array. After both halves are sorted,
+  // the left half is copied to the scratch array and merged back in, which
+  // never overwrites anything in the right half that hasn't been read yet.
+
+
+  @SuppressWarnings("serial")
+  static class IntSort extends RecursiveAction {
+    final int[] data;
+    final int[] scratch;
+    final int lo, hi, piece;
+
+    IntSort(int[] data, int[] scratch, int lo, int hi, int piece) {
+      this.data = data;
+      this.scratch = scratch;
+      this.lo = lo;
+      this.hi = hi;
+      this.piece = piece;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= piece) {
+        Arrays.sort(data, lo, hi);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new IntSort(data, scratch, lo, mid, piece),
+                new IntSort(data, scratch, mid, hi, piece));
+      if (data[mid-1] <= data[mid]) {
+        return;  // already in order
+      }
+      System.arraycopy(data, lo, scratch, lo, mid - lo);
+      int i = lo;
+      int j = mid;
+      int k = lo;
+      while (i < mid && j < hi) {
+        data[k++] = (data[j] < scratch[i]) ? data[j++] : scratch[i++];
+      }
+      while (i < mid) {
+        data[k++] = scratch[i++];
+      }
+    }
+  }
+
+
+  @SuppressWarnings("serial")
+  static class LongSort extends RecursiveAction {
+    final long[] data;
+    final long[] scratch;
+    final int lo, hi, piece;
+
+    LongSort(long[] data, long[] scratch, int lo, int hi, int piece) {
+      this.data = data;
+      this.scratch = scratch;
+      this.lo = lo;
+      this.hi = hi;
+      this.piece = piece;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= piece) {
+        Arrays.sort(data, lo, hi);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new LongSort(data, scratch, lo, mid, piece),
+                new LongSort(data, scratch, mid, hi, piece));
+      if (data[mid-1] <= data[mid]) {
+        return;
+      }
+      System.arraycopy(data, lo, scratch, lo, mid - lo);
+      int i = lo;
+      int j = mid;
+      int k = lo;
+      while (i < mid && j < hi) {
+        data[k++] = (data[j] < scratch[i]) ? data[j++] : scratch[i++];
+      }
+      while (i < mid) {
+        data[k++] = scratch[i++];
+      }
+    }
+  }
+
+
+  @SuppressWarnings("serial")
+  static class ObjectSort<T> extends RecursiveAction {
+    final T[] data;
+    final T[] scratch;
+    final int lo, hi, piece;
+    final Comparator<? super T> comparator;
+
+    ObjectSort(T[] data, T[] scratch, int lo, int hi, int piece,
+               Comparator<? super T> comparator) {
+      this.data = data;
+      this.scratch = scratch;
+      this.lo = lo;
+      this.hi = hi;
+      this.piece = piece;
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= piece) {
+        Arrays.sort(data, lo, hi, comparator);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new ObjectSort<T>(data, scratch, lo, mid, piece, comparator),
+                new ObjectSort<T>(data, scratch, mid, hi, piece, comparator));
+      if (comparator.compare(data[mid-1], data[mid]) <= 0) {
+        return;
+      }
+      System.arraycopy(data, lo, scratch, lo, mid - lo);
+      int i = lo;
+      int j = mid;
+      int k = lo;
+      // ties go to the left half, which keeps things stable
+      while (i < mid && j < hi) {
+        data[k++] = (comparator.compare(data[j], scratch[i]) < 0) ?
+          data[j++] : scratch[i++];
+      }
+      while (i < mid) {
+        data[k++] = scratch[i++];
+      }
+    }
+  }
+}
@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -23,7 +23,14 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private StringIndex indices = new StringIndex();
+
+  /** Number of removed entries still taking up space in keys/values */
+  protected int removed;
+  /** Lowest index of a removed entry, only valid when removed != 0 */
+  private int firstRemoved;
+  /** Binary indexed tree counting the removed entries before an index */
+  private int[] holes;
 
 
   public StringDict() {
@@ -89,7 +96,7 @@ public class StringDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -101,16 +108,22 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    if (removed != 0) {
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+    indices.clear();
   }
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -168,6 +181,7 @@ public class StringDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -177,6 +191,7 @@ public class StringDict {
 
 
   public String value(int index) {
+    compact();
     return values[index];
   }
 
@@ -226,6 +241,7 @@ public class StringDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public String[] valueArray(String[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new String[count];
     }
@@ -241,7 +257,7 @@ public class StringDict {
    * @brief Return a value for the specified key
    */
   public String get(String key) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index == -1) return null;
     return values[index];
   }
@@ -251,7 +267,7 @@ public class StringDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, String amount) {
-    int index = index(key);
+    int index = indices.get(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -261,8 +277,8 @@ public class StringDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.get(what);
   }
 
   /**
@@ -270,16 +286,19 @@ public class StringDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.get(key) != -1;
   }
 
 
   protected void create(String key, String value) {
+    if (count == keys.length && removed != 0) {
+      compact();
+    }
     if (count == keys.length) {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(key, new Integer(count));
+    indices.put(key, count);
     keys[count] = key;
     values[count] = value;
     count++;
@@ -290,34 +309,91 @@ public class StringDict {
    * @brief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
-    if (index != -1) {
-      removeIndex(index);
+    int slot = indices.remove(key);
+    if (slot == -1) {
+      return -1;
     }
+    // report the index that the entry had, not counting earlier removals
+    int index = slot;
+    if (removed != 0) {
+      for (int i = slot; i > 0; i -= i & -i) {
+        index -= holes[i];
+      }
+    }
+    removeSlot(slot);
     return index;
   }
 
 
   public String removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    //System.out.println("index is " + which + " and " + keys[which]);
     String key = keys[index];
     indices.remove(key);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = null;
+    removeSlot(index);
     return key;
   }
 
 
+  /**
+   * Clear out an entry whose key is already gone from the index. Rather than
+   * shifting everything after it, leave a hole that's filled in by the next
+   * call to compact(), so removing several entries is O(1) apiece.
+   */
+  private void removeSlot(int slot) {
+    if (slot == count - 1) {
+      count--;
+      keys[slot] = null;
+    } else {
+      keys[slot] = StringIndex.HOLE;
+      if (removed == 0) {
+        // keys[] can't grow until compact(), so this is big enough till then
+        if (holes == null || holes.length <= keys.length) {
+          holes = new int[keys.length + 1];
+        }
+        firstRemoved = slot;
+      } else if (slot < firstRemoved) {
+        firstRemoved = slot;
+      }
+      for (int i = slot + 1; i < holes.length; i += i & -i) {
+        holes[i]++;
+      }
+      removed++;
+    }
+    values[slot] = null;
+  }
+
+
+  /**
+   * Slide entries down over any holes left by remove(), keeping them in the
+   * same order, so that keys[] and values[] are contiguous again.
+   */
+  private void compact() {
+    if (removed != 0) {
+      int index = firstRemoved;
+      for (int i = firstRemoved; i < count; i++) {
+        if (keys[i] != StringIndex.HOLE) {
+          keys[index] = keys[i];
+          values[index] = values[i];
+          indices.put(keys[index], index);
+          index++;
+        }
+      }
+      for (int i = index; i < count; i++) {
+        keys[i] = null;
+        values[i] = null;
+      }
+      count = index;
+      removed = 0;
+      Arrays.fill(holes, 0);
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
     String tkey = keys[a];
     String tvalue = values[a];
     keys[a] = keys[b];
@@ -325,8 +401,8 @@ public class StringDict {
     keys[b] = tkey;
     values[b] = tvalue;
 
-    indices.put(keys[a], new Integer(a));
-    indices.put(keys[b], new Integer(b));
+    indices.put(keys[a], a);
+    indices.put(keys[b], b);
   }
 
 
@@ -371,6 +447,7 @@ public class StringDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -405,6 +482,7 @@ public class StringDict {
 
   /** Returns a duplicate copy of this object. */
   public StringDict copy() {
+    compact();
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
@@ -421,6 +499,7 @@ public class StringDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -430,6 +509,7 @@ public class StringDict {
 
   @Override
   public String toString() {
+    compact();
     StringBuilder sb = new StringBuilder();
     sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
     for (int i = 0; i < size(); i++) {
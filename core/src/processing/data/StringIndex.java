@@ -0,0 +1,159 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Internal lookup from a String to its position (slot) in the keys array of
+ * IntDict, FloatDict, or StringDict. Open addressing with linear probing,
+ * with the hash of each key cached alongside it, so there's no boxing and
+ * no entry objects. Removed entries leave a tombstone that's reused by
+ * later additions, and cleared out whenever the table is rebuilt.
+ * Advanced users only, not official API.
+ */
+class StringIndex {
+  static final int EMPTY = -1;
+  static final int REMOVED = -2;
+
+  /**
+   * Placed in the keys array of a dict where an entry has been removed,
+   * until the array is compacted. Compared by identity, so it can't be
+   * mistaken for an actual key.
+   */
+  static final String HOLE = new String("(removed)");
+
+  String[] keys;
+  int[] hashes;
+  int[] slots;  // EMPTY, REMOVED, or the slot for the key
+  int mask;
+
+  int count;  // number of keys
+  int used;   // keys plus tombstones
+
+
+  StringIndex() {
+    this(16);
+  }
+
+
+  StringIndex(int expected) {
+    int capacity = 16;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+
+  private void allocate(int capacity) {
+    keys = new String[capacity];
+    hashes = new int[capacity];
+    slots = new int[capacity];
+    Arrays.fill(slots, EMPTY);
+    mask = capacity - 1;
+    count = 0;
+    used = 0;
+  }
+
+
+  static int hash(String key) {
+    int h = (key == null) ? 0 : key.hashCode();
+    return (h ^ (h >>> 16)) * 0x9E3779B9;
+  }
+
+
+  /** Position in the hash table for this key, or -1 if it's not present. */
+  private int find(String key, int hash) {
+    int i = hash & mask;
+    while (slots[i] != EMPTY) {
+      if (slots[i] != REMOVED && hashes[i] == hash &&
+          (key == null ? keys[i] == null : key.equals(keys[i]))) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /** Returns the slot for this key, or -1 if it's not present. */
+  int get(String key) {
+    int i = find(key, hash(key));
+    return (i == -1) ? -1 : slots[i];
+  }
+
+
+  /** Set (or change) the slot for a key. */
+  void put(String key, int slot) {
+    int hash = hash(key);
+    int i = find(key, hash);
+    if (i != -1) {
+      slots[i] = slot;
+      return;
+    }
+    if ((used + 1) * 2 > slots.length) {
+      rebuild();
+    }
+    i = hash & mask;
+    while (slots[i] >= 0) {  // reuse the first tombstone along the way
+      i = (i + 1) & mask;
+    }
+    if (slots[i] == EMPTY) {
+      used++;
+    }
+    keys[i] = key;
+    hashes[i] = hash;
+    slots[i] = slot;
+    count++;
+  }
+
+
+  /** Remove a key, returning the slot it had, or -1 if it wasn't present. */
+  int remove(String key) {
+    int i = find(key, hash(key));
+    if (i == -1) {
+      return -1;
+    }
+    int slot = slots[i];
+    keys[i] = null;
+    slots[i] = REMOVED;
+    count--;
+    return slot;
+  }
+
+
+  void clear() {
+    if (used != 0) {
+      Arrays.fill(keys, null);
+      Arrays.fill(slots, EMPTY);
+      count = 0;
+      used = 0;
+    }
+  }
+
+
+  /**
+   * Re-insert everything into a new table, doubling the size only if it's
+   * actually full (rather than just littered with tombstones).
+   */
+  private void rebuild() {
+    String[] oldKeys = keys;
+    int[] oldHashes = hashes;
+    int[] oldSlots = slots;
+    allocate((count + 1) * 2 > oldSlots.length / 2 ?
+             oldSlots.length << 1 : oldSlots.length);
+    for (int j = 0; j < oldSlots.length; j++) {
+      if (oldSlots[j] >= 0) {
+        int i = oldHashes[j] & mask;
+        while (slots[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        hashes[i] = oldHashes[j];
+        slots[i] = oldSlots[j];
+        count++;
+        used++;
+      }
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package processing.data;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Random;
 
@@ -454,25 +456,52 @@ public class StringList implements Iterable<String> {
 
 
   private void sortImpl(final boolean reverse) {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    Arrays.sort(data, 0, count, reverse ?
+                Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER) :
+                String.CASE_INSENSITIVE_ORDER);
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        float diff = data[a].compareToIgnoreCase(data[b]);
-        return reverse ? -diff : diff;
-      }
 
+  /**
+   * Same as sort(), but large lists are split up and sorted on several
+   * processors at once.
+   */
+  public void parallelSort() {
+    ParallelSort.sort(data, count, String.CASE_INSENSITIVE_ORDER);
+  }
+
+
+  /**
+   * Same as sortReverse(), but large lists are sorted on several
+   * processors at once.
+   */
+  public void parallelSortReverse() {
+    ParallelSort.sort(data, count,
+                      Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER));
+  }
+
+
+  /**
+   * Returns the order that the values would be in if they were sorted, as a
+   * list of indices into this list, without changing this list. Equal values
+   * (ignoring case) keep their original order.
+   */
+  public IntList argsort() {
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    ParallelSort.sort(order, count, new Comparator<Integer>() {
       @Override
-      public void swap(int a, int b) {
-        String temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
+      public int compare(Integer a, Integer b) {
+        return data[a].compareToIgnoreCase(data[b]);
       }
-    }.run();
+    });
+    int[] outgoing = new int[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = order[i];
+    }
+    return new IntList(outgoing);
   }
 
 
@@ -25,13 +25,22 @@ package processing.data;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -76,10 +85,17 @@ public class Table {
   protected int missingCategory = -1;
 
   String[] columnTitles;
-  HashMapBlows[] columnCategories;
+  Categories[] columnCategories;
   HashMap<String, Integer> columnIndices;
+  // lookup tables for faster find (not the same as columnIndices above),
+  // null unless index() has been called
+  ColumnIndex[] columnIndexes;
 
   protected Object[] columns;  // [column]
+  // true if some columns are ByteBuffers mapped from a binary file
+  protected boolean mapped;
+  // the (canonical) file they're mapped from
+  protected File mappedFile;
 
   // accessible for advanced users
   static public final int STRING = 0;
@@ -121,8 +137,14 @@ public class Table {
   public Table(File file, String options) throws IOException {
     // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    String opts = extensionOptions(true, file.getName(), options);
+    if (opts != null &&
+        Arrays.asList(PApplet.trim(PApplet.split(opts, ','))).contains("bin") &&
+        !file.getName().toLowerCase().endsWith(".gz")) {
+      loadBinary(file);  // memory-mapped, if possible
+    } else {
+      parse(PApplet.createInput(file), opts);
+    }
   }
 
   /**
@@ -140,6 +162,9 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>parallel - parse large CSV or TSV files using multiple cores
+   * <li>categories - store String columns that have only a few distinct
+   * values as CATEGORY columns, which use much less memory
    * </ul>
    *
    * @nowebref
@@ -237,7 +262,7 @@ public class Table {
   protected void init() {
     columns = new Object[0];
     columnTypes = new int[0];
-    columnCategories = new HashMapBlows[0];
+    columnCategories = new Categories[0];
   }
 
 
@@ -302,6 +327,8 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
+    boolean categories = false;
 
     String worksheet = null;
     final String sheetParam = "worksheet=";
@@ -324,6 +351,10 @@ public class Table {
           extension = "bin";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
+        } else if (opt.equals("categories")) {
+          categories = true;
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
@@ -346,7 +377,9 @@ public class Table {
 
     } else {
       BufferedReader reader = PApplet.createReader(input);
-      if (awfulCSV) {
+      if (parallel) {
+        parseParallel(reader, header, "tsv".equals(extension), awfulCSV);
+      } else if (awfulCSV) {
         parseAwfulCSV(reader, header);
       } else if ("tsv".equals(extension)) {
         parseBasic(reader, header, true);
@@ -354,56 +387,550 @@ public class Table {
         parseBasic(reader, header, false);
       }
     }
+
+    if (categories) {
+      convertCategories();
+    }
   }
 
 
   protected void parseBasic(BufferedReader reader,
                             boolean header, boolean tsv) throws IOException {
-    String line = null;
-    int row = 0;
-    if (rowCount == 0) {
-      setRowCount(10);
+    int row = parseRows(reader, header, tsv, 0);
+    // shorten or lengthen based on what's left
+    if (row != getRowCount()) {
+      setRowCount(row);
+    }
+  }
+
+
+  /**
+   * Parse lines of CSV or TSV into the table, starting at the specified row.
+   * The row count is doubled whenever it runs out of room, so it's likely
+   * to be too large afterwards.
+   * @return the row after the last one that was read
+   */
+  protected int parseRows(BufferedReader reader, boolean header, boolean tsv,
+                          int row) throws IOException {
+    // Lines are tokenized directly out of this buffer, and each field is
+    // parsed straight into its column, so there's no String per line and
+    // no String[] per row the way readLine() and split() would require.
+    char[] c = new char[16384];
+    int start = 0;  // start of the current line
+    int scan = 0;  // how far we've looked for the end of the line
+    int limit = 0;  // amount of valid data in the buffer
+    boolean skipLF = false;  // last line ended with \r, may need to eat \n
+
+    if (row >= rowCount) {
+      setRowCount(Math.max(10, row << 1));
     }
-    //int prev = 0;  //-1;
     try {
-      while ((line = reader.readLine()) != null) {
-        if (row == getRowCount()) {
-          setRowCount(row << 1);
-        }
-        if (row == 0 && header) {
-          setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
-          header = false;
-        } else {
-          setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
-          row++;
+      while (true) {
+        if (skipLF && start < limit) {
+          if (c[start] == '\n') {
+            start++;
+            scan = start;
+          }
+          skipLF = false;
         }
 
-        // this is problematic unless we're going to calculate rowCount first
-        if (row % 10000 == 0) {
-        /*
-        if (row < rowCount) {
-          int pct = (100 * row) / rowCount;
-          if (pct != prev) {  // also prevents "0%" from showing up
-            System.out.println(pct + "%");
-            prev = pct;
+        int stop = -1;
+        while (scan < limit) {
+          char ch = c[scan];
+          if (ch == '\n' || ch == '\r') {
+            stop = scan;
+            break;
           }
+          scan++;
         }
-         */
-          try {
-            // Sleep this thread so that the GC can catch up
-            Thread.sleep(10);
-          } catch (InterruptedException e) {
-            e.printStackTrace();
+
+        if (stop == -1) {
+          // no complete line in the buffer, move what's left to the front
+          // and read more, expanding the buffer if a line won't fit
+          if (start != 0) {
+            System.arraycopy(c, start, c, 0, limit - start);
+            limit -= start;
+            scan -= start;
+            start = 0;
+          }
+          if (limit == c.length) {
+            c = PApplet.expand(c);
+          }
+          int count = reader.read(c, limit, c.length - limit);
+          if (count == -1) {
+            // catch any leftovers (last line had no line ending)
+            if (limit > start) {
+              if (row == getRowCount()) {
+                setRowCount(row << 1);
+              }
+              if (parseLine(c, start, limit, row, header, tsv)) {
+                row++;
+              }
+            }
+            break;
+          }
+          limit += count;
+
+        } else {
+          if (row == getRowCount()) {
+            setRowCount(row << 1);
           }
+          if (parseLine(c, start, stop, row, header, tsv)) {
+            row++;
+          } else {
+            header = false;
+          }
+          skipLF = (c[stop] == '\r');
+          start = stop + 1;
+          scan = start;
         }
       }
     } catch (Exception e) {
       throw new RuntimeException("Error reading table on line " + row, e);
     }
-    // shorten or lengthen based on what's left
-    if (row != getRowCount()) {
-      setRowCount(row);
+    return row;
+  }
+
+
+  /**
+   * Parse a single line of CSV or TSV data from c[start] up to c[stop].
+   * The contents of c may be modified (to remove escaped quotes).
+   * @return false if this line was used as the header, true if it's a row
+   */
+  protected boolean parseLine(char[] c, int start, int stop, int row,
+                              boolean header, boolean tsv) {
+    if (row == 0 && header) {
+      String line = new String(c, start, stop - start);
+      setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+      return false;
+    }
+
+    int col = 0;
+    if (tsv) {
+      int offset = start;
+      for (int i = start; i < stop; i++) {
+        if (c[i] == '\t') {
+          ensureColumn(col);
+          setRowCol(row, col++, c, offset, i - offset);
+          offset = i + 1;
+        }
+      }
+      ensureColumn(col);
+      setRowCol(row, col, c, offset, stop - offset);
+
+    } else {
+      // same rules as splitLineCSV(), but without the intermediate Strings
+      int offset = start;
+      while (offset < stop) {
+        int first = offset;
+        int last = nextComma(c, offset, stop);
+        offset = last + 1;  // step over the comma next time around
+        if (c[first] == '\"' && c[last-1] == '\"') {
+          first++;
+          last--;
+        }
+        int i = first;
+        int ii = first;
+        while (i < last) {
+          if (c[i] == '\"') {
+            i++;  // skip over pairs of double quotes become one
+            if (i == stop) {
+              break;  // stray quote at the end of the line
+            }
+          }
+          if (i != ii) {
+            c[ii] = c[i];
+          }
+          i++;
+          ii++;
+        }
+        ensureColumn(col);
+        setRowCol(row, col++, c, first, ii - first);
+      }
+      // a trailing comma (or an empty line) means one more blank entry
+      if (offset == stop) {
+        ensureColumn(col);
+        setRowCol(row, col, c, stop, 0);
+      }
+    }
+    return true;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // state for follow(), which reads the lines appended to a file over time
+  protected File followFile;
+  protected String followOptions;
+  protected long followOffset;  // bytes of the file that have been read
+
+
+  /**
+   * Read any rows that have been added to the end of a file since the last
+   * time this was called. The first call reads the whole file, and later
+   * calls only parse the new lines, so this can be called from draw() (or
+   * pre(), see below) to keep up with a log file as it grows:
+   * <pre>
+   * Table log = new Table();
+   *
+   * void draw() {
+   *   log.follow(dataFile("log.csv"), "header");
+   *   ...
+   * }
+   * </pre>
+   * Lines are only read once they're complete, so a partly written line is
+   * picked up on a later call. If the file gets shorter (i.e. it has been
+   * replaced), the rows are cleared and it's read again from the start.
+   * Options include header, csv, tsv, and window=N, which keeps only the
+   * last N rows, so that memory use stays flat for a file that never stops
+   * growing.
+   * @return the number of rows that were added
+   */
+  public int follow(File file, String options) throws IOException {
+    String opts = extensionOptions(true, file.getName(), options);
+    if (!file.equals(followFile) ||
+        (opts == null ? followOptions != null : !opts.equals(followOptions))) {
+      followFile = file;
+      followOptions = opts;
+      followOffset = 0;
+      setRowCount(0);
+    }
+    return follow();
+  }
+
+
+  /**
+   * Read any rows that have been added to the file passed to
+   * follow(File, String) since the last time it was checked.
+   */
+  public int follow() throws IOException {
+    if (followFile == null) {
+      throw new IllegalStateException("Use follow(File, String) to choose a file first");
+    }
+    boolean header = false;
+    boolean tsv = false;
+    int window = 0;
+    if (followOptions != null) {
+      for (String opt : PApplet.trim(PApplet.split(followOptions, ','))) {
+        if (opt.equals("tsv")) {
+          tsv = true;
+        } else if (opt.equals("csv")) {
+          tsv = false;
+        } else if (opt.equals("header")) {
+          header = true;
+        } else if (opt.startsWith("window=")) {
+          window = PApplet.parseInt(opt.substring(7), 0);
+        } else {
+          throw new IllegalArgumentException("'" + opt + "' is not a valid option for following a Table");
+        }
+      }
+    }
+
+    RandomAccessFile raf = new RandomAccessFile(followFile, "r");
+    try {
+      long length = raf.length();
+      if (length < followOffset) {
+        // file was truncated or replaced, start over
+        followOffset = 0;
+        setRowCount(0);
+      }
+      long end = followLineEnd(raf, length);
+      if (end <= followOffset) {
+        return 0;
+      }
+
+      raf.seek(followOffset);
+      final InputStream input = Channels.newInputStream(raf.getChannel());
+      final long[] remaining = { end - followOffset };
+      InputStream bounded = new InputStream() {
+        public int read() throws IOException {
+          if (remaining[0] == 0) return -1;
+          remaining[0]--;
+          return input.read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (remaining[0] == 0) return -1;
+          int count = input.read(b, off, (int) Math.min(len, remaining[0]));
+          if (count > 0) remaining[0] -= count;
+          return count;
+        }
+      };
+
+      // Parse into the room left over from last time, growing by doubling,
+      // and then set the row count without trimming the columns, so that
+      // adding a few rows doesn't mean copying the whole table each time.
+      int before = rowCount;
+      detach();
+      dirtyIndexes();
+      // addColumn(), derive() and the like make new columns exactly rowCount
+      // long, so bring everything up to the longest column before using it.
+      int capacity = rowCount;
+      int shortest = Integer.MAX_VALUE;
+      for (Object data : columns) {
+        int size = Array.getLength(data);
+        capacity = Math.max(capacity, size);
+        shortest = Math.min(shortest, size);
+      }
+      if (shortest < capacity) {
+        setRowCount(capacity);
+      } else {
+        rowCount = capacity;
+      }
+      int row = parseRows(PApplet.createReader(bounded),
+                          header && followOffset == 0, tsv, before);
+      rowCount = row;
+      followOffset = end;
+
+      if (window > 0 && rowCount > window) {
+        dropRows(rowCount - window);
+      }
+      return row - before;
+
+    } finally {
+      raf.close();
+    }
+  }
+
+
+  /**
+   * Check for new rows when used with <tt>registerMethod("pre", table)</tt>,
+   * after follow(File, String) has been called once.
+   */
+  public void pre() {
+    try {
+      follow();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+
+  /**
+   * Find the end of the last complete line in the file. A \r at the very
+   * end doesn't count, since it may be half of a \r\n that's still being
+   * written.
+   */
+  protected long followLineEnd(RandomAccessFile raf,
+                               long length) throws IOException {
+    byte[] block = new byte[8192];
+    long stop = length;
+    while (stop > followOffset) {
+      long start = Math.max(followOffset, stop - block.length);
+      int count = (int) (stop - start);
+      raf.seek(start);
+      raf.readFully(block, 0, count);
+      for (int i = count - 1; i >= 0; i--) {
+        long position = start + i;
+        if (block[i] == '\n' ||
+            (block[i] == '\r' && position != length - 1)) {
+          return position + 1;
+        }
+      }
+      stop = start;
+    }
+    return followOffset;
+  }
+
+
+  /**
+   * Remove rows from the start of the table, shifting the rest down inside
+   * the same arrays (rather than reallocating them the way removeRow() does).
+   */
+  protected void dropRows(int count) {
+    detach();
+    dirtyIndexes();
+    int remaining = rowCount - count;
+    for (int col = 0; col < columns.length; col++) {
+      Object data = columns[col];
+      System.arraycopy(data, count, data, 0, remaining);
+      // clear out the old rows, so that the Strings can be collected and
+      // any rows added later start out empty
+      switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY: Arrays.fill((int[]) data, remaining, rowCount, 0); break;
+        case LONG: Arrays.fill((long[]) data, remaining, rowCount, 0); break;
+        case FLOAT: Arrays.fill((float[]) data, remaining, rowCount, 0); break;
+        case DOUBLE: Arrays.fill((double[]) data, remaining, rowCount, 0); break;
+        case STRING: Arrays.fill((String[]) data, remaining, rowCount, null); break;
+      }
+    }
+    rowCount = remaining;
+  }
+
+
+  static final int PARALLEL_CHUNK_SIZE = 1 << 22;  // chars per chunk
+  static ForkJoinPool taskPool;
+
+
+  static synchronized ForkJoinPool getTaskPool() {
+    if (taskPool == null) {
+      taskPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return taskPool;
+  }
+
+
+  /**
+   * Split the incoming data into chunks at line boundaries, parse each chunk
+   * into its own Table on a separate thread, and then stitch the columns
+   * together. With awfulCSV (the 'newlines' option), quotes are tracked so
+   * that a chunk never ends inside a quoted entry.
+   */
+  protected void parseParallel(Reader reader, boolean header, boolean tsv,
+                               boolean awfulCSV) throws IOException {
+    ForkJoinPool pool = getTaskPool();
+    List<ForkJoinTask<Table>> tasks = new ArrayList<ForkJoinTask<Table>>();
+
+    char[] c = new char[PARALLEL_CHUNK_SIZE];
+    int limit = 0;  // amount of valid data in the buffer
+    int scan = 0;  // how far we've looked for line endings
+    int safe = 0;  // end of the last complete line (outside any quotes)
+    boolean insideQuote = false;
+
+    while (true) {
+      if (limit == c.length) {
+        if (safe == 0) {
+          // no line break in the whole buffer, need more room
+          c = PApplet.expand(c);
+        } else {
+          tasks.add(pool.submit(parseChunk(Arrays.copyOf(c, safe),
+                                           header && tasks.isEmpty(),
+                                           tsv, awfulCSV)));
+          System.arraycopy(c, safe, c, 0, limit - safe);
+          limit -= safe;
+          scan -= safe;
+          safe = 0;
+        }
+      }
+      int count = reader.read(c, limit, c.length - limit);
+      if (count == -1) {
+        break;
+      }
+      limit += count;
+
+      while (scan < limit) {
+        char ch = c[scan];
+        if (ch == '\"') {
+          if (awfulCSV) {
+            insideQuote = !insideQuote;
+          }
+        } else if (!insideQuote) {
+          if (ch == '\n') {
+            safe = scan + 1;
+          } else if (ch == '\r') {
+            if (scan + 1 == limit) {
+              break;  // need to see whether \n comes next
+            }
+            if (c[scan + 1] != '\n') {
+              safe = scan + 1;
+            }
+          }
+        }
+        scan++;
+      }
+    }
+    if (limit > 0) {
+      tasks.add(pool.submit(parseChunk(Arrays.copyOf(c, limit),
+                                       header && tasks.isEmpty(),
+                                       tsv, awfulCSV)));
+    }
+
+    Table[] chunks = new Table[tasks.size()];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = tasks.get(i).join();
+    }
+    mergeChunks(chunks, header);
+  }
+
+
+  protected Callable<Table> parseChunk(final char[] c, final boolean header,
+                                       final boolean tsv,
+                                       final boolean awfulCSV) {
+    return new Callable<Table>() {
+      public Table call() throws Exception {
+        Table chunk = new Table();
+        chunk.setColumnCount(getColumnCount());
+        for (int col = 0; col < getColumnCount(); col++) {
+          chunk.setColumnType(col, columnTypes[col]);
+        }
+        chunk.missingString = missingString;
+        chunk.missingInt = missingInt;
+        chunk.missingLong = missingLong;
+        chunk.missingFloat = missingFloat;
+        chunk.missingDouble = missingDouble;
+        chunk.missingCategory = missingCategory;
+
+        BufferedReader reader = new BufferedReader(new CharArrayReader(c));
+        if (awfulCSV) {
+          chunk.parseAwfulCSV(reader, header);
+        } else {
+          chunk.parseBasic(reader, header, tsv);
+        }
+        return chunk;
+      }
+    };
+  }
+
+
+  /**
+   * Replace the contents of this table with the rows of each chunk, in order.
+   * Each chunk builds its own dictionary for CATEGORY columns. Those are
+   * added to this table's dictionary one chunk at a time, in order, so the
+   * indices come out the same as they would from parsing on one thread.
+   */
+  protected void mergeChunks(Table[] chunks, boolean header) {
+    int total = 0;
+    int columnCount = getColumnCount();
+    for (Table chunk : chunks) {
+      total += chunk.rowCount;
+      columnCount = Math.max(columnCount, chunk.getColumnCount());
+    }
+    if (header && chunks.length > 0) {
+      setColumnTitles(chunks[0].columnTitles);
+    }
+    if (columnCount > 0) {
+      ensureColumn(columnCount - 1);
+    }
+
+    for (int col = 0; col < columns.length; col++) {
+      Object merged;
+      switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY: merged = new int[total]; break;
+        case LONG: merged = new long[total]; break;
+        case FLOAT: merged = new float[total]; break;
+        case DOUBLE: merged = new double[total]; break;
+        case STRING: merged = new String[total]; break;
+        default: throw new IllegalArgumentException("That's not a valid column type.");
+      }
+      int offset = 0;
+      for (Table chunk : chunks) {
+        if (col < chunk.columns.length) {
+          System.arraycopy(chunk.columns[col], 0, merged, offset, chunk.rowCount);
+          if (columnTypes[col] == CATEGORY) {
+            Categories dict = chunk.columnCategories[col];
+            int[] remap = new int[dict.size()];
+            for (int i = 0; i < remap.length; i++) {
+              remap[i] = columnCategories[col].index(dict.key(i));
+            }
+            int[] indexData = (int[]) merged;
+            for (int row = offset; row < offset + chunk.rowCount; row++) {
+              int index = indexData[row];
+              if (index != missingCategory &&
+                  index >= 0 && index < remap.length) {
+                indexData[row] = remap[index];
+              }
+            }
+          }
+        }
+        offset += chunk.rowCount;
+      }
+      columns[col] = merged;
     }
+    rowCount = total;
+    dirtyIndexes();
   }
 
 
@@ -419,6 +946,7 @@ public class Table {
     boolean insideQuote = false;
     int row = 0;
     int col = 0;
+    int used = 0;  // rows actually set, since the count runs ahead
     int ch;
     while ((ch = reader.read()) != -1) {
       if (insideQuote) {
@@ -461,19 +989,27 @@ public class Table {
             }
           }
           setString(row, col, new String(c, 0, count));
+          used = row + 1;
           count = 0;
           if (row == 0 && header) {
             // Use internal row removal (efficient because only one row).
             removeTitleRow();
+            used = 0;
             // Un-set the header variable so that next time around, we don't
             // just get stuck into a loop, removing the 0th row repeatedly.
             header = false;
           }
           row++;
           col = 0;
+          // double the room when it runs out, rather than growing (and
+          // copying every column) one row at a time inside setString()
+          if (row >= getRowCount()) {
+            setRowCount(Math.max(10, row << 1));
+          }
 
         } else if (ch == ',') {
           setString(row, col, new String(c, 0, count));
+          used = row + 1;
           count = 0;
           // starting a new column, make sure we have room
           col++;
@@ -490,6 +1026,10 @@ public class Table {
     // catch any leftovers
     if (count > 0) {
       setString(row, col, new String(c, 0, count));
+      used = row + 1;
+    }
+    if (used != getRowCount()) {
+      setRowCount(used);
     }
   }
 
@@ -560,6 +1100,19 @@ public class Table {
   }
 
 
+  static protected int nextComma(char[] c, int index, int stop) {
+    boolean quote = false;
+    for (int i = index; i < stop; i++) {
+      if (!quote && (c[i] == ',')) {
+        return i;
+      } else if (c[i] == '\"') {
+        quote = !quote;
+      }
+    }
+    return stop;
+  }
+
+
   /**
    * Read a .ods (OpenDoc spreadsheet) zip file from an InputStream, and
    * return the InputStream for content.xml contained inside.
@@ -905,6 +1458,11 @@ public class Table {
 
 
   public boolean save(File file, String options) throws IOException {
+    if (mapped && file.getCanonicalFile().equals(mappedFile)) {
+      // Writing over the file that the columns are mapped from would pull
+      // the data out from under them (createOutput() truncates it first).
+      detach();
+    }
     return save(PApplet.createOutput(file),
                 Table.extensionOptions(false, file.getName(), options));
   }
@@ -1105,73 +1663,80 @@ public class Table {
   }
 
 
+  // The original binary format wrote each row as a series of values. Version
+  // 2 stores each column contiguously (and aligned to 8 bytes) so that a file
+  // can be memory-mapped, and numeric columns read directly from the file.
+  static final int BINARY_VERSION_1 = 0x9007AB1E;
+  static final int BINARY_VERSION_2 = 0x9007AB2E;
+  static final int BINARY_BLOCK_SIZE = 1 << 16;
+
+
   protected void saveBinary(OutputStream os) throws IOException {
     DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
-    output.writeInt(0x9007AB1E);  // version
-    output.writeInt(getRowCount());
-    output.writeInt(getColumnCount());
+
+    // Build the header separately, so that its length is known
+    // and the column data can start on an 8-byte boundary.
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeInt(getRowCount());
+    header.writeInt(getColumnCount());
     if (columnTitles != null) {
-      output.writeBoolean(true);
+      header.writeBoolean(true);
       for (String title : columnTitles) {
-        output.writeUTF(title);
+        header.writeUTF(title);
       }
     } else {
-      output.writeBoolean(false);
+      header.writeBoolean(false);
     }
     for (int i = 0; i < getColumnCount(); i++) {
-      //System.out.println(i + " is " + columnTypes[i]);
-      output.writeInt(columnTypes[i]);
+      header.writeInt(columnTypes[i]);
     }
-
     for (int i = 0; i < getColumnCount(); i++) {
       if (columnTypes[i] == CATEGORY) {
-        columnCategories[i].write(output);
+        columnCategories[i].write(header);
       }
     }
     if (missingString == null) {
-      output.writeBoolean(false);
+      header.writeBoolean(false);
     } else {
-      output.writeBoolean(true);
-      output.writeUTF(missingString);
+      header.writeBoolean(true);
+      header.writeUTF(missingString);
+    }
+    header.writeInt(missingInt);
+    header.writeLong(missingLong);
+    header.writeFloat(missingFloat);
+    header.writeDouble(missingDouble);
+    header.writeInt(missingCategory);
+    header.flush();
+
+    long position = 12 + headerBytes.size();  // magic and data start
+    long dataStart = binaryAlign(position);
+    output.writeInt(BINARY_VERSION_2);
+    output.writeLong(dataStart);
+    headerBytes.writeTo(output);
+    writeBinaryPadding(output, position);
+
+    // numeric columns first, since their size and location is known
+    position = dataStart;
+    for (int col = 0; col < getColumnCount(); col++) {
+      if (columnTypes[col] != STRING) {
+        writeBinaryColumn(output, col);
+        position += (long) rowCount * binaryWidth(columnTypes[col]);
+        position = writeBinaryPadding(output, position);
+      }
     }
-    output.writeInt(missingInt);
-    output.writeLong(missingLong);
-    output.writeFloat(missingFloat);
-    output.writeDouble(missingDouble);
-    output.writeInt(missingCategory);
-
-    for (TableRow row : rows()) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        switch (columnTypes[col]) {
-        case STRING:
-          String str = row.getString(col);
+    // String columns go at the end, one column after another
+    for (int col = 0; col < getColumnCount(); col++) {
+      if (columnTypes[col] == STRING) {
+        String[] stringData = (String[]) columns[col];
+        for (int row = 0; row < rowCount; row++) {
+          String str = stringData[row];
           if (str == null) {
             output.writeBoolean(false);
           } else {
             output.writeBoolean(true);
             output.writeUTF(str);
           }
-          break;
-        case INT:
-          output.writeInt(row.getInt(col));
-          break;
-        case LONG:
-          output.writeLong(row.getLong(col));
-          break;
-        case FLOAT:
-          output.writeFloat(row.getFloat(col));
-          break;
-        case DOUBLE:
-          output.writeDouble(row.getDouble(col));
-          break;
-        case CATEGORY:
-          String peace = row.getString(col);
-          if (peace.equals(missingString)) {
-            output.writeInt(missingCategory);
-          } else {
-            output.writeInt(columnCategories[col].index(peace));
-          }
-          break;
         }
       }
     }
@@ -1181,30 +1746,207 @@ public class Table {
   }
 
 
-  protected void loadBinary(InputStream is) throws IOException {
-    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+  static long binaryAlign(long position) {
+    return (position + 7) & ~7L;
+  }
 
-    int magic = input.readInt();
-    if (magic != 0x9007AB1E) {
-      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+
+  static int binaryWidth(int type) {
+    switch (type) {
+      case INT:
+      case FLOAT:
+      case CATEGORY: return 4;
+      case LONG:
+      case DOUBLE: return 8;
     }
-    int rowCount = input.readInt();
-    setRowCount(rowCount);
-    int columnCount = input.readInt();
-    setColumnCount(columnCount);
+    return 0;
+  }
 
-    boolean hasTitles = input.readBoolean();
-    if (hasTitles) {
-      columnTitles = new String[getColumnCount()];
-      for (int i = 0; i < columnCount; i++) {
-        //columnTitles[i] = input.readUTF();
-        setColumnTitle(i, input.readUTF());
-      }
+
+  /** Pad with zeroes to the next 8-byte boundary, returns the new position. */
+  static long writeBinaryPadding(DataOutputStream output,
+                                 long position) throws IOException {
+    long aligned = binaryAlign(position);
+    for (long i = position; i < aligned; i++) {
+      output.writeByte(0);
+    }
+    return aligned;
+  }
+
+
+  protected void writeBinaryColumn(DataOutputStream output,
+                                   int col) throws IOException {
+    Object data = columns[col];
+    if (data instanceof ByteBuffer) {
+      // still mapped from a file, so the bytes can be copied as-is
+      ByteBuffer source = ((ByteBuffer) data).duplicate();
+      source.clear();
+      byte[] block = new byte[BINARY_BLOCK_SIZE];
+      while (source.hasRemaining()) {
+        int count = Math.min(block.length, source.remaining());
+        source.get(block, 0, count);
+        output.write(block, 0, count);
+      }
+      return;
+    }
+
+    int width = binaryWidth(columnTypes[col]);
+    ByteBuffer buffer = ByteBuffer.allocate(BINARY_BLOCK_SIZE);
+    for (int offset = 0; offset < rowCount; ) {
+      int count = Math.min(rowCount - offset, buffer.capacity() / width);
+      buffer.clear();
+      switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY:
+          buffer.asIntBuffer().put((int[]) data, offset, count);
+          break;
+        case LONG:
+          buffer.asLongBuffer().put((long[]) data, offset, count);
+          break;
+        case FLOAT:
+          buffer.asFloatBuffer().put((float[]) data, offset, count);
+          break;
+        case DOUBLE:
+          buffer.asDoubleBuffer().put((double[]) data, offset, count);
+          break;
+      }
+      output.write(buffer.array(), 0, count * width);
+      offset += count;
+    }
+  }
+
+
+  protected Object readBinaryColumn(DataInputStream input,
+                                    int col) throws IOException {
+    Object data = null;
+    switch (columnTypes[col]) {
+      case INT:
+      case CATEGORY: data = new int[rowCount]; break;
+      case LONG: data = new long[rowCount]; break;
+      case FLOAT: data = new float[rowCount]; break;
+      case DOUBLE: data = new double[rowCount]; break;
+    }
+    int width = binaryWidth(columnTypes[col]);
+    byte[] block = new byte[BINARY_BLOCK_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(block);
+    for (int offset = 0; offset < rowCount; ) {
+      int count = Math.min(rowCount - offset, block.length / width);
+      input.readFully(block, 0, count * width);
+      buffer.clear();
+      switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY:
+          buffer.asIntBuffer().get((int[]) data, offset, count);
+          break;
+        case LONG:
+          buffer.asLongBuffer().get((long[]) data, offset, count);
+          break;
+        case FLOAT:
+          buffer.asFloatBuffer().get((float[]) data, offset, count);
+          break;
+        case DOUBLE:
+          buffer.asDoubleBuffer().get((double[]) data, offset, count);
+          break;
+      }
+      offset += count;
+    }
+    return data;
+  }
+
+
+  protected void readBinaryStrings(DataInputStream input) throws IOException {
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == STRING) {
+        String[] stringData = new String[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          if (input.readBoolean()) {
+            stringData[row] = input.readUTF();
+          }
+        }
+        columns[col] = stringData;
+      }
+    }
+  }
+
+
+  /**
+   * Read everything between the magic number and the row data, which is the
+   * same for both versions of the binary format. Column data is not allocated.
+   */
+  protected void loadBinaryHeader(DataInputStream input) throws IOException {
+    rowCount = input.readInt();
+    int columnCount = input.readInt();
+    columns = new Object[columnCount];
+    columnTypes = new int[columnCount];
+    columnCategories = new Categories[columnCount];
+    columnIndices = null;
+    columnIndexes = null;
+
+    boolean hasTitles = input.readBoolean();
+    if (hasTitles) {
+      columnTitles = new String[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        columnTitles[i] = input.readUTF();
+      }
+    } else {
+      columnTitles = null;
     }
     for (int column = 0; column < columnCount; column++) {
       int newType = input.readInt();
+      if (newType < STRING || newType > CATEGORY) {
+        throw new IllegalArgumentException(newType + " is not a valid column type.");
+      }
       columnTypes[column] = newType;
-      switch (newType) {
+    }
+
+    for (int i = 0; i < columnCount; i++) {
+      if (columnTypes[i] == CATEGORY) {
+        columnCategories[i] = new Categories(input);
+      }
+    }
+
+    if (input.readBoolean()) {
+      missingString = input.readUTF();
+    } else {
+      missingString = null;
+    }
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+  }
+
+
+  protected void loadBinary(InputStream is) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+
+    int magic = input.readInt();
+    if (magic == BINARY_VERSION_2) {
+      long dataStart = input.readLong();
+      byte[] header = new byte[(int) (dataStart - 12)];
+      input.readFully(header);
+      loadBinaryHeader(new DataInputStream(new ByteArrayInputStream(header)));
+
+      for (int col = 0; col < columns.length; col++) {
+        if (columnTypes[col] != STRING) {
+          columns[col] = readBinaryColumn(input, col);
+          long length = (long) rowCount * binaryWidth(columnTypes[col]);
+          input.skipBytes((int) (binaryAlign(length) - length));
+        }
+      }
+      readBinaryStrings(input);
+      input.close();
+      return;
+    }
+
+    if (magic != BINARY_VERSION_1) {
+      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+    }
+    loadBinaryHeader(input);
+    int columnCount = columns.length;
+    for (int column = 0; column < columnCount; column++) {
+      switch (columnTypes[column]) {
       case INT:
         columns[column] = new int[rowCount];
         break;
@@ -1223,28 +1965,9 @@ public class Table {
       case CATEGORY:
         columns[column] = new int[rowCount];;
         break;
-      default:
-        throw new IllegalArgumentException(newType + " is not a valid column type.");
-      }
-    }
-
-    for (int i = 0; i < columnCount; i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i] = new HashMapBlows(input);
       }
     }
 
-    if (input.readBoolean()) {
-      missingString = input.readUTF();
-    } else {
-      missingString = null;
-    }
-    missingInt = input.readInt();
-    missingLong = input.readLong();
-    missingFloat = input.readFloat();
-    missingDouble = input.readDouble();
-    missingCategory = input.readInt();
-
     for (int row = 0; row < rowCount; row++) {
       for (int col = 0; col < columnCount; col++) {
         switch (columnTypes[col]) {
@@ -1280,6 +2003,193 @@ public class Table {
   }
 
 
+  /**
+   * Open a binary table from a file. Files in the newer (version 2) format
+   * are memory-mapped, so that numeric columns are read directly from the
+   * file rather than copied onto the heap. String columns are still loaded,
+   * and mapped columns are copied to the heap the first time the table is
+   * modified. Columns larger than 2 GB can't be mapped, and are loaded.
+   */
+  protected void loadBinary(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      int magic = raf.readInt();
+      if (magic != BINARY_VERSION_2) {
+        raf.close();
+        loadBinary(PApplet.createInput(file));  // older format, load it all
+        return;
+      }
+      long dataStart = raf.readLong();
+      byte[] header = new byte[(int) (dataStart - 12)];
+      raf.readFully(header);
+      loadBinaryHeader(new DataInputStream(new ByteArrayInputStream(header)));
+
+      FileChannel channel = raf.getChannel();
+      long position = dataStart;
+      for (int col = 0; col < columns.length; col++) {
+        if (columnTypes[col] != STRING) {
+          long length = (long) rowCount * binaryWidth(columnTypes[col]);
+          if (length <= Integer.MAX_VALUE) {
+            columns[col] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            mapped = true;
+          } else {
+            channel.position(position);
+            InputStream stream = Channels.newInputStream(channel);
+            columns[col] =
+              readBinaryColumn(new DataInputStream(new BufferedInputStream(stream)), col);
+          }
+          position = binaryAlign(position + length);
+        }
+      }
+      channel.position(position);
+      InputStream stream = Channels.newInputStream(channel);
+      readBinaryStrings(new DataInputStream(new BufferedInputStream(stream)));
+      if (mapped) {
+        mappedFile = file.getCanonicalFile();
+      }
+
+    } finally {
+      raf.close();
+    }
+  }
+
+
+  /**
+   * Copy any memory-mapped columns onto the heap. Called before making
+   * changes, since mapped columns are read-only and can't change size.
+   */
+  protected void detach() {
+    if (mapped) {
+      for (int col = 0; col < columns.length; col++) {
+        columns[col] = getColumnData(col);
+      }
+      mapped = false;
+      mappedFile = null;
+    }
+  }
+
+
+  /**
+   * Get the array of values for a column, copying it onto the heap if it's
+   * mapped from a file. Unlike detach(), this leaves the table unchanged.
+   */
+  protected Object getColumnData(int column) {
+    if (columns[column] instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) columns[column]).duplicate();
+      buffer.clear();
+      switch (columnTypes[column]) {
+        case INT:
+        case CATEGORY:
+          int[] intData = new int[rowCount];
+          buffer.asIntBuffer().get(intData);
+          return intData;
+        case LONG:
+          long[] longData = new long[rowCount];
+          buffer.asLongBuffer().get(longData);
+          return longData;
+        case FLOAT:
+          float[] floatData = new float[rowCount];
+          buffer.asFloatBuffer().get(floatData);
+          return floatData;
+        case DOUBLE:
+          double[] doubleData = new double[rowCount];
+          buffer.asDoubleBuffer().get(doubleData);
+          return doubleData;
+      }
+    }
+    return columns[column];
+  }
+
+
+  /**
+   * Get the values from a column for a list of rows, as an array of the
+   * column's type. Rows that are -1 get the missing value for the type.
+   */
+  protected Object gatherColumn(int column, int[] rows) {
+    Object data = getColumnData(column);
+    int count = rows.length;
+    switch (columnTypes[column]) {
+      case INT:
+      case CATEGORY: {
+        int[] values = (int[]) data;
+        int missing = (columnTypes[column] == INT) ? missingInt : missingCategory;
+        int[] outgoing = new int[count];
+        for (int i = 0; i < count; i++) {
+          outgoing[i] = (rows[i] == -1) ? missing : values[rows[i]];
+        }
+        return outgoing;
+      }
+      case LONG: {
+        long[] values = (long[]) data;
+        long[] outgoing = new long[count];
+        for (int i = 0; i < count; i++) {
+          outgoing[i] = (rows[i] == -1) ? missingLong : values[rows[i]];
+        }
+        return outgoing;
+      }
+      case FLOAT: {
+        float[] values = (float[]) data;
+        float[] outgoing = new float[count];
+        for (int i = 0; i < count; i++) {
+          outgoing[i] = (rows[i] == -1) ? missingFloat : values[rows[i]];
+        }
+        return outgoing;
+      }
+      case DOUBLE: {
+        double[] values = (double[]) data;
+        double[] outgoing = new double[count];
+        for (int i = 0; i < count; i++) {
+          outgoing[i] = (rows[i] == -1) ? missingDouble : values[rows[i]];
+        }
+        return outgoing;
+      }
+      case STRING: {
+        String[] values = (String[]) data;
+        String[] outgoing = new String[count];
+        for (int i = 0; i < count; i++) {
+          outgoing[i] = (rows[i] == -1) ? missingString : values[rows[i]];
+        }
+        return outgoing;
+      }
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+
+
+  /**
+   * Add a column whose values have already been filled in (as an array with
+   * rowCount entries), used when building the results of groupBy() et al.
+   */
+  protected void addColumnData(String title, int type, Object data,
+                               Categories categories) {
+    addColumn(title, type);
+    int column = columns.length - 1;
+    columns[column] = data;
+    if (type == CATEGORY) {
+      // indices never change once assigned, so it's safe to share
+      columnCategories[column] = categories;
+    }
+  }
+
+
+  /**
+   * Create an empty table (with the same missing values as this one) that
+   * will be filled in with addColumnData().
+   */
+  protected Table createResult(int rowCount) {
+    Table outgoing = new Table();
+    outgoing.missingString = missingString;
+    outgoing.missingInt = missingInt;
+    outgoing.missingLong = missingLong;
+    outgoing.missingFloat = missingFloat;
+    outgoing.missingDouble = missingDouble;
+    outgoing.missingCategory = missingCategory;
+    outgoing.setRowCount(rowCount);
+    return outgoing;
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -1329,19 +2239,26 @@ public class Table {
     }
     columnTypes = PApplet.splice(columnTypes, type, index);
 
-//    columnCategories = (HashMapBlows[])
-//      PApplet.splice(columnCategories, new HashMapBlows(), index);
-    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
+//    columnCategories = (Categories[])
+//      PApplet.splice(columnCategories, new Categories(), index);
+    Categories[] catTemp = new Categories[columns.length + 1];
     // Faster than arrayCopy for a dozen or so entries
     for (int i = 0; i < index; i++) {
       catTemp[i] = columnCategories[i];
     }
-    catTemp[index] = new HashMapBlows();
+    catTemp[index] = new Categories();
     for (int i = index; i < columns.length; i++) {
       catTemp[i+1] = columnCategories[i];
     }
     columnCategories = catTemp;
 
+    if (columnIndexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[columns.length + 1];
+      System.arraycopy(columnIndexes, 0, indexTemp, 0, index);
+      System.arraycopy(columnIndexes, index, indexTemp, index+1, columns.length - index);
+      columnIndexes = indexTemp;
+    }
+
     Object[] temp = new Object[columns.length + 1];
     System.arraycopy(columns, 0, temp, 0, index);
     System.arraycopy(columns, index, temp, index+1, columns.length - index);
@@ -1374,7 +2291,7 @@ public class Table {
     int newCount = columns.length - 1;
 
     Object[] columnsTemp = new Object[newCount];
-    HashMapBlows[] catTemp = new HashMapBlows[newCount];
+    Categories[] catTemp = new Categories[newCount];
 
     for (int i = 0; i < column; i++) {
       columnsTemp[i] = columns[i];
@@ -1388,6 +2305,13 @@ public class Table {
     columns = columnsTemp;
     columnCategories = catTemp;
 
+    if (columnIndexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[newCount];
+      System.arraycopy(columnIndexes, 0, indexTemp, 0, column);
+      System.arraycopy(columnIndexes, column+1, indexTemp, column, newCount - column);
+      columnIndexes = indexTemp;
+    }
+
     if (columnTitles != null) {
       String[] titlesTemp = new String[newCount];
       for (int i = 0; i < column; i++) {
@@ -1430,8 +2354,11 @@ public class Table {
         columnTitles = PApplet.expand(columnTitles, newCount);
       }
       columnTypes = PApplet.expand(columnTypes, newCount);
-      columnCategories = (HashMapBlows[])
+      columnCategories = (Categories[])
         PApplet.expand(columnCategories, newCount);
+      if (columnIndexes != null) {
+        columnIndexes = (ColumnIndex[]) PApplet.expand(columnIndexes, newCount);
+      }
     }
   }
 
@@ -1536,7 +2463,7 @@ public class Table {
       }
       case CATEGORY: {
         int[] indexData = new int[rowCount];
-        HashMapBlows categories = new HashMapBlows();
+        Categories categories = new Categories();
         for (int row = 0; row < rowCount; row++) {
           String s = getString(row, column);
           indexData[row] = categories.index(s);
@@ -1551,6 +2478,7 @@ public class Table {
     }
 //    System.out.println("new type is " + newType);
     columnTypes[column] = newType;
+    dirtyIndex(column);
   }
 
 
@@ -1634,6 +2562,91 @@ public class Table {
   }
 
 
+  public Categories getColumnCategories(String columnName) {
+    return getColumnCategories(checkColumnIndex(columnName));
+  }
+
+
+  /**
+   * Get the dictionary of a CATEGORY column, which can be passed to
+   * setColumnCategories() so that another table uses the same indices.
+   */
+  public Categories getColumnCategories(int column) {
+    checkColumn(column);
+    return (columnTypes[column] == CATEGORY) ? columnCategories[column] : null;
+  }
+
+
+  public void setColumnCategories(String columnName, Categories categories) {
+    setColumnCategories(checkColumnIndex(columnName), categories);
+  }
+
+
+  /**
+   * Use a dictionary (perhaps shared with other tables) for a column.
+   * The column is converted to CATEGORY if it isn't already, and any
+   * existing values are re-numbered to match the new dictionary.
+   */
+  public void setColumnCategories(int column, Categories categories) {
+    checkColumn(column);
+    if (columnTypes[column] != CATEGORY) {
+      setColumnType(column, CATEGORY);
+    }
+    Categories previous = columnCategories[column];
+    if (previous != categories) {
+      detach();
+      int[] remap = new int[previous.size()];
+      for (int i = 0; i < remap.length; i++) {
+        remap[i] = categories.index(previous.key(i));
+      }
+      int[] indexData = (int[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        int index = indexData[row];
+        if (index != missingCategory && index >= 0 && index < remap.length) {
+          indexData[row] = remap[index];
+        }
+      }
+      columnCategories[column] = categories;
+      dirtyIndex(column);
+    }
+  }
+
+
+  static final int CATEGORY_RATIO = 8;  // rows per distinct value, at least
+
+  /**
+   * Convert each String column to CATEGORY if there are few enough distinct
+   * values: a column with a million rows and a few hundred names takes
+   * 4 bytes per row instead of a separate String (40 bytes or more) each.
+   */
+  protected void convertCategories() {
+    int limit = rowCount / CATEGORY_RATIO;
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == STRING) {
+        String[] stringData = (String[]) columns[col];
+        Categories categories = new Categories();
+        int[] indexData = new int[rowCount];
+        int row = 0;
+        while (row < rowCount && categories.size() <= limit) {
+          String value = stringData[row];
+          if (value == null || value.equals(missingString)) {
+            indexData[row] = missingCategory;
+          } else {
+            indexData[row] = categories.index(value);
+          }
+          row++;
+        }
+        if (row == rowCount && categories.size() <= limit) {
+          columns[col] = indexData;
+          columnTypes[col] = CATEGORY;
+          columnCategories[col] = categories;
+          dirtyIndex(col);
+        }
+      }
+    }
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -1771,6 +2784,8 @@ public class Table {
 
   public void setRowCount(int newCount) {
     if (newCount != rowCount) {
+      detach();
+      dirtyIndexes();
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
       }
@@ -1784,13 +2799,6 @@ public class Table {
           case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
           case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
         }
-        if (newCount > 1000000) {
-          try {
-            Thread.sleep(10);  // gc time!
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
       }
       if (newCount > 1000000) {
         int ms = (int) (System.currentTimeMillis() - t);
@@ -1858,6 +2866,8 @@ public class Table {
 
 
   public void insertRow(int insert, Object[] columnData) {
+    detach();
+    dirtyIndexes();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -1910,6 +2920,8 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    detach();
+    dirtyIndexes();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2017,6 +3029,7 @@ public class Table {
 
 
   public void setRow(int row, Object[] pieces) {
+    detach();
     ensureBounds(row, pieces.length - 1);
     // pieces.length may be less than columns.length, so loop over pieces
     for (int col = 0; col < pieces.length; col++) {
@@ -2026,6 +3039,7 @@ public class Table {
 
 
   protected void setRowCol(int row, int col, Object piece) {
+    dirtyIndex(col);
     switch (columnTypes[col]) {
       case STRING:
         String[] stringData = (String[]) columns[col];
@@ -2106,33 +3120,159 @@ public class Table {
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
   /**
-   * @webref table:method
-   * @brief Gets a row from a table
-   * @param row ID number of the row to get
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * Set an entry from a range of characters, used while parsing so that
+   * numeric columns don't need to create a String for each entry.
    */
-  public TableRow getRow(int row) {
-    return new RowPointer(this, row);
-  }
-
-
-  /**
-   * Note that this one iterator instance is shared by any calls to iterate
-   * the rows of this table. This is very efficient, but not thread-safe.
-   * If you want to iterate in a multi-threaded manner, don't use the iterator.
-   *
-   * @webref table:method
-   * @brief Gets multiple rows from a table
-   * @see Table#getRow(int)
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
+  protected void setRowCol(int row, int col, char[] c, int offset, int length) {
+    dirtyIndex(col);
+    switch (columnTypes[col]) {
+      case STRING:
+        String[] stringData = (String[]) columns[col];
+        stringData[row] = new String(c, offset, length);
+        break;
+      case INT:
+        int[] intData = (int[]) columns[col];
+        intData[row] = parseInt(c, offset, length, missingInt);
+        break;
+      case LONG:
+        long[] longData = (long[]) columns[col];
+        longData[row] = parseLong(c, offset, length, missingLong);
+        break;
+      case FLOAT:
+        float[] floatData = (float[]) columns[col];
+        floatData[row] =
+          PApplet.parseFloat(new String(c, offset, length), missingFloat);
+        break;
+      case DOUBLE:
+        double[] doubleData = (double[]) columns[col];
+        try {
+          doubleData[row] = Double.parseDouble(new String(c, offset, length));
+        } catch (NumberFormatException nfe) {
+          doubleData[row] = missingDouble;
+        }
+        break;
+      case CATEGORY:
+        int[] indexData = (int[]) columns[col];
+        String peace = new String(c, offset, length);
+        if (peace.equals(missingString)) {  // missingString might be null
+          indexData[row] = missingCategory;
+        } else {
+          indexData[row] = columnCategories[col].index(peace);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+
+
+  /**
+   * Same as PApplet.parseInt(String, int), but reading from a char array.
+   * Plain ASCII numbers short enough that they can't overflow are handled
+   * here, anything else goes the long way through a String.
+   */
+  static protected int parseInt(char[] c, int offset, int length, int otherwise) {
+    int stop = offset + length;
+    for (int i = offset; i < stop; i++) {
+      if (c[i] == '.') {
+        stop = i;  // same as parseInt(), ignore everything after the decimal
+        break;
+      }
+    }
+    int i = offset;
+    boolean negative = false;
+    if (i < stop && (c[i] == '-' || c[i] == '+')) {
+      negative = (c[i] == '-');
+      i++;
+    }
+    int digits = stop - i;
+    if (digits > 0 && digits < 10) {
+      int value = 0;
+      while (i < stop) {
+        int d = c[i] - '0';
+        if (d < 0 || d > 9) {
+          break;  // not a plain ASCII digit, let the String version decide
+        }
+        value = value*10 + d;
+        i++;
+      }
+      if (i == stop) {
+        return negative ? -value : value;
+      }
+    }
+    if (digits == 0) {
+      return otherwise;
+    }
+    return PApplet.parseInt(new String(c, offset, length), otherwise);
+  }
+
+
+  /**
+   * Same as Long.parseLong(), but reading from a char array, and returning
+   * the 'otherwise' value when the number is invalid.
+   */
+  static protected long parseLong(char[] c, int offset, int length, long otherwise) {
+    int stop = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < stop && (c[i] == '-' || c[i] == '+')) {
+      negative = (c[i] == '-');
+      i++;
+    }
+    int digits = stop - i;
+    if (digits > 0 && digits < 19) {
+      long value = 0;
+      while (i < stop) {
+        int d = c[i] - '0';
+        if (d < 0 || d > 9) {
+          break;  // not a plain ASCII digit, let the String version decide
+        }
+        value = value*10 + d;
+        i++;
+      }
+      if (i == stop) {
+        return negative ? -value : value;
+      }
+    }
+    if (digits == 0) {
+      return otherwise;
+    }
+    try {
+      return Long.parseLong(new String(c, offset, length));
+    } catch (NumberFormatException nfe) {
+      return otherwise;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Gets a row from a table
+   * @param row ID number of the row to get
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public TableRow getRow(int row) {
+    return new RowPointer(this, row);
+  }
+
+
+  /**
+   * Note that this one iterator instance is shared by any calls to iterate
+   * the rows of this table. This is very efficient, but not thread-safe.
+   * If you want to iterate in a multi-threaded manner, don't use the iterator.
+   *
+   * @webref table:method
+   * @brief Gets multiple rows from a table
+   * @see Table#getRow(int)
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
    * @see Table#matchRow(String, int)
    * @see Table#matchRows(String, int)
    */
@@ -2510,8 +3650,11 @@ public class Table {
     checkBounds(row, column);
     if (columnTypes[column] == INT ||
         columnTypes[column] == CATEGORY) {
-      int[] intData = (int[]) columns[column];
-      return intData[row];
+      Object data = columns[column];
+      if (data instanceof int[]) {
+        return ((int[]) data)[row];
+      }
+      return ((ByteBuffer) data).getInt(row << 2);
     }
     String str = getString(row, column);
     return (str == null || str.equals(missingString)) ?
@@ -2549,6 +3692,7 @@ public class Table {
       setString(row, column, String.valueOf(value));
 
     } else {
+      detach();
       ensureBounds(row, column);
       if (columnTypes[column] != INT &&
           columnTypes[column] != CATEGORY) {
@@ -2556,6 +3700,7 @@ public class Table {
       }
       int[] intData = (int[]) columns[column];
       intData[row] = value;
+      dirtyIndex(column);
     }
   }
 
@@ -2598,8 +3743,11 @@ public class Table {
   public long getLong(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == LONG) {
-      long[] longData = (long[]) columns[column];
-      return longData[row];
+      Object data = columns[column];
+      if (data instanceof long[]) {
+        return ((long[]) data)[row];
+      }
+      return ((ByteBuffer) data).getLong(row << 3);
     }
     String str = getString(row, column);
     if (str == null || str.equals(missingString)) {
@@ -2628,12 +3776,14 @@ public class Table {
       setString(row, column, String.valueOf(value));
 
     } else {
+      detach();
       ensureBounds(row, column);
       if (columnTypes[column] != LONG) {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
       long[] longData = (long[]) columns[column];
       longData[row] = value;
+      dirtyIndex(column);
     }
   }
 
@@ -2689,8 +3839,11 @@ public class Table {
   public float getFloat(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == FLOAT) {
-      float[] floatData = (float[]) columns[column];
-      return floatData[row];
+      Object data = columns[column];
+      if (data instanceof float[]) {
+        return ((float[]) data)[row];
+      }
+      return ((ByteBuffer) data).getFloat(row << 2);
     }
     String str = getString(row, column);
     if (str == null || str.equals(missingString)) {
@@ -2730,12 +3883,14 @@ public class Table {
       setString(row, column, String.valueOf(value));
 
     } else {
+      detach();
       ensureBounds(row, column);
       if (columnTypes[column] != FLOAT) {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
       float[] longData = (float[]) columns[column];
       longData[row] = value;
+      dirtyIndex(column);
     }
   }
 
@@ -2777,8 +3932,11 @@ public class Table {
   public double getDouble(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == DOUBLE) {
-      double[] doubleData = (double[]) columns[column];
-      return doubleData[row];
+      Object data = columns[column];
+      if (data instanceof double[]) {
+        return ((double[]) data)[row];
+      }
+      return ((ByteBuffer) data).getDouble(row << 3);
     }
     String str = getString(row, column);
     if (str == null || str.equals(missingString)) {
@@ -2807,12 +3965,14 @@ public class Table {
       setString(row, column, String.valueOf(value));
 
     } else {
+      detach();
       ensureBounds(row, column);
       if (columnTypes[column] != DOUBLE) {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
       double[] doubleData = (double[]) columns[column];
       doubleData[row] = value;
+      dirtyIndex(column);
     }
   }
 
@@ -2930,6 +4090,13 @@ public class Table {
         return missingString;
       }
       return columnCategories[column].key(cat);
+    } else if (columns[column] instanceof ByteBuffer) {
+      switch (columnTypes[column]) {
+        case INT: return String.valueOf(getInt(row, column));
+        case LONG: return String.valueOf(getLong(row, column));
+        case FLOAT: return String.valueOf(getFloat(row, column));
+        default: return String.valueOf(getDouble(row, column));
+      }
     } else {
       return String.valueOf(Array.get(columns[column], row));
     }
@@ -2966,11 +4133,20 @@ public class Table {
    */
   public void setString(int row, int column, String value) {
     ensureBounds(row, column);
+    if (columnTypes[column] == CATEGORY) {
+      detach();
+      int[] indexData = (int[]) columns[column];
+      indexData[row] = (value == null) ?
+        missingCategory : columnCategories[column].index(value);
+      dirtyIndex(column);
+      return;
+    }
     if (columnTypes[column] != STRING) {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
     String[] stringData = (String[]) columns[column];
     stringData[row] = value;
+    dirtyIndex(column);
   }
 
   /**
@@ -3029,6 +4205,10 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndex(value);
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3075,10 +4255,15 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRowIndices(value);
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3204,6 +4389,11 @@ public class Table {
    */
   public int matchRowIndex(String regexp, int column) {
     checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      int[] rows = index.matchRowIndices(regexp);
+      return (rows.length == 0) ? -1 : rows[0];
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -3242,10 +4432,15 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] matchRowIndices(String regexp, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      return index.matchRowIndices(regexp);
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -3355,6 +4550,165 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Return a list of rows whose values in this column are between low and
+   * high (inclusive). Entries that aren't numbers are skipped. If there are
+   * no matches, a zero length array will be returned (not a null array).
+   * @param low the smallest value to match
+   * @param high the largest value to match
+   * @param column ID number of the column to search
+   */
+  public int[] findRangeIndices(double low, double high, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      return index.findRangeIndices(low, high, column);
+    }
+
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = getRangeValue(row, column);
+      if (value >= low && value <= high) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRangeIndices(double low, double high, String columnName) {
+    return findRangeIndices(low, high, getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Finds multiple rows whose values are between low and high (inclusive).
+   * @param low the smallest value to match
+   * @param high the largest value to match
+   * @param column ID number of the column to search
+   */
+  public Iterable<TableRow> findRange(final double low, final double high,
+                                      final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this, findRangeIndices(low, high, column));
+      }
+    };
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterable<TableRow> findRange(double low, double high, String columnName) {
+    return findRange(low, high, getColumnIndex(columnName));
+  }
+
+
+  /** Numeric value used for range searches, NaN if it's not a number. */
+  protected double getRangeValue(int row, int column) {
+    switch (columnTypes[column]) {
+      case INT: return getInt(row, column);
+      case LONG: return getLong(row, column);
+      case FLOAT: return getFloat(row, column);
+      default: return getDouble(row, column);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Build an index for a column, so that findRow(), findRows(), matchRow(),
+   * findRange() and the others can go straight to the matching rows instead
+   * of checking every entry. Uses additional memory, so it's only worth it
+   * for columns that will be searched often. The index is kept up to date
+   * as the table changes (it's rebuilt on the next search after a change),
+   * until removeIndex() is called.
+   * @param column ID number of the column to index
+   */
+  public void index(int column) {
+    checkColumn(column);
+    if (columnIndexes == null) {
+      columnIndexes = new ColumnIndex[columns.length];
+    }
+    if (columnIndexes[column] == null) {
+      columnIndexes[column] = new ColumnIndex();
+    }
+    columnIndexes[column].update(column);
+  }
+
+
+  /**
+   * @param columnName title of the column to index
+   */
+  public void index(String columnName) {
+    index(getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Remove the index for a column, and free the memory it was using.
+   * @param column ID number of the column
+   */
+  public void removeIndex(int column) {
+    checkColumn(column);
+    if (columnIndexes != null) {
+      columnIndexes[column] = null;
+    }
+  }
+
+
+  /**
+   * @param columnName title of the column
+   */
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  /** Returns an up to date index for this column, or null if none is set. */
+  protected ColumnIndex getIndex(int column) {
+    if (columnIndexes != null && column < columnIndexes.length) {
+      ColumnIndex index = columnIndexes[column];
+      if (index != null) {
+        index.update(column);
+        return index;
+      }
+    }
+    return null;
+  }
+
+
+  /** Note that the contents of a column have changed. */
+  protected void dirtyIndex(int column) {
+    if (columnIndexes != null && column < columnIndexes.length &&
+        columnIndexes[column] != null) {
+      columnIndexes[column].dirty = true;
+    }
+  }
+
+
+  /** Note that rows have been added, removed, or moved around. */
+  protected void dirtyIndexes() {
+    if (columnIndexes != null) {
+      for (ColumnIndex index : columnIndexes) {
+        if (index != null) {
+          index.dirty = true;
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
    * Replace a String with another. Set empty entries null by using
    * replace("", null) or use replace(null, "") to go the other direction.
@@ -3371,6 +4725,7 @@ public class Table {
 
   public void replace(String orig, String replacement, int col) {
     if (columnTypes[col] == STRING) {
+      dirtyIndex(col);
       String[] stringData = (String[]) columns[col];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row].equals(orig)) {
@@ -3399,6 +4754,7 @@ public class Table {
   public void replaceAll(String regex, String replacement, int column) {
     checkColumn(column);
     if (columnTypes[column] == STRING) {
+      dirtyIndex(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
@@ -3496,6 +4852,7 @@ public class Table {
    */
   public void trim(int column) {
     if (columnTypes[column] == STRING) {
+      dirtyIndex(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
@@ -3565,47 +4922,163 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  class HashMapBlows {
-    HashMap<String,Integer> dataToIndex = new HashMap<String, Integer>();
-    ArrayList<String> indexToData = new ArrayList<String>();
+  /**
+   * The dictionary for a CATEGORY column, which gives each distinct String
+   * an index (starting at 0, in the order they were added). Strings are
+   * stored in an open addressing hash table of plain arrays, rather than
+   * a HashMap of boxed Integers.
+   * <p/>
+   * Looking up a String that's already present doesn't take a lock, and
+   * adding one only locks the dictionary briefly, so a dictionary can be
+   * shared between threads (as when parsing in parallel) and between tables
+   * (see setColumnCategories), for instance all the files from one source.
+   * Entries are never removed or renumbered, so the indices stay valid.
+   */
+  static public class Categories {
+    // Everything a lookup needs, swapped out as a whole when it grows.
+    // Slots hold index + 1 (0 is empty), and are set only after the key
+    // is in place, so a reader that finds a slot also sees its key.
+    static class Entries {
+      final String[] keys;
+      final int[] hashes;
+      final AtomicIntegerArray slots;
+      final int mask;
+
+      Entries(int capacity) {
+        keys = new String[capacity >> 1];
+        hashes = new int[capacity >> 1];
+        slots = new AtomicIntegerArray(capacity);
+        mask = capacity - 1;
+      }
+    }
+
+    volatile Entries entries = new Entries(16);
+    volatile int count;
+
+
+    public Categories() { }
 
-    HashMapBlows() { }
 
-    HashMapBlows(DataInputStream input) throws IOException {
+    Categories(DataInputStream input) throws IOException {
       read(input);
     }
 
-    /** gets the index, and creates one if it doesn't already exist. */
-    int index(String key) {
-      Integer value = dataToIndex.get(key);
-      if (value != null) {
-        return value;
+
+    /** Get the index for a String, adding it if it's not already present. */
+    public int index(String key) {
+      int index = find(key);
+      return (index != -1) ? index : add(key);
+    }
+
+
+    /** Get the index for a String, or -1 if it's not in the dictionary. */
+    public int find(String key) {
+      Entries e = entries;
+      int hash = hash(key);
+      int slot = hash & e.mask;
+      int value;
+      while ((value = e.slots.get(slot)) != 0) {
+        int index = value - 1;
+        if (e.hashes[index] == hash && equal(e.keys[index], key)) {
+          return index;
+        }
+        slot = (slot + 1) & e.mask;
       }
+      return -1;
+    }
 
-      int v = dataToIndex.size();
-      dataToIndex.put(key, v);
-      indexToData.add(key);
-      return v;
+
+    public String key(int index) {
+      if (index < 0 || index >= count) {
+        throw new ArrayIndexOutOfBoundsException(index);
+      }
+      return entries.keys[index];
     }
 
-    String key(int index) {
-      return indexToData.get(index);
+
+    public int size() {
+      return count;
     }
 
-    int size() {
-      return dataToIndex.size();
+
+    /** Return a copy of the Strings, in the order of their indices. */
+    public String[] keyArray() {
+      int size = count;
+      return Arrays.copyOf(entries.keys, size);
+    }
+
+
+    synchronized int add(String key) {
+      Entries e = entries;
+      int hash = hash(key);
+      int slot = hash & e.mask;
+      int value;
+      while ((value = e.slots.get(slot)) != 0) {
+        // check again, another thread may have added it in the meantime
+        int index = value - 1;
+        if (e.hashes[index] == hash && equal(e.keys[index], key)) {
+          return index;
+        }
+        slot = (slot + 1) & e.mask;
+      }
+
+      int index = count;
+      if (index == e.keys.length) {
+        e = grow(e);
+        slot = hash & e.mask;
+        while (e.slots.get(slot) != 0) {
+          slot = (slot + 1) & e.mask;
+        }
+      }
+      e.keys[index] = key;
+      e.hashes[index] = hash;
+      e.slots.set(slot, index + 1);
+      count = index + 1;
+      return index;
+    }
+
+
+    private Entries grow(Entries e) {
+      Entries bigger = new Entries((e.mask + 1) << 1);
+      System.arraycopy(e.keys, 0, bigger.keys, 0, e.keys.length);
+      System.arraycopy(e.hashes, 0, bigger.hashes, 0, e.hashes.length);
+      for (int index = 0; index < e.keys.length; index++) {
+        int slot = bigger.hashes[index] & bigger.mask;
+        while (bigger.slots.get(slot) != 0) {
+          slot = (slot + 1) & bigger.mask;
+        }
+        bigger.slots.set(slot, index + 1);
+      }
+      entries = bigger;
+      return bigger;
+    }
+
+
+    static int hash(String key) {
+      int h = (key == null) ? 0 : key.hashCode();
+      return (h ^ (h >>> 16)) * 0x9E3779B9;
+    }
+
+
+    static boolean equal(String a, String b) {
+      return (a == null) ? (b == null) : a.equals(b);
     }
 
+
     void write(DataOutputStream output) throws IOException {
-      output.writeInt(size());
-      for (String str : indexToData) {
-        output.writeUTF(str);
+      int size = count;
+      String[] keys = entries.keys;
+      output.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        output.writeUTF(keys[i]);
       }
     }
 
     private void writeln(PrintWriter writer) throws IOException {
-      for (String str : indexToData) {
-        writer.println(str);
+      int size = count;
+      String[] keys = entries.keys;
+      for (int i = 0; i < size; i++) {
+        writer.println(keys[i]);
       }
       writer.flush();
       writer.close();
@@ -3613,185 +5086,1477 @@ public class Table {
 
     void read(DataInputStream input) throws IOException {
       int count = input.readInt();
-      dataToIndex = new HashMap<String, Integer>(count);
       for (int i = 0; i < count; i++) {
-        String str = input.readUTF();
-        dataToIndex.put(str, i);
-        indexToData.add(str);
+        index(input.readUTF());
       }
     }
   }
 
 
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-//  class HashMapSucks extends HashMap<String,Integer> {
-//
-//    void increment(String what) {
-//      Integer value = get(what);
-//      if (value == null) {
-//        put(what, 1);
-//      } else {
-//        put(what, value + 1);
-//      }
-//    }
-//
-//    void check(String what) {
-//      if (get(what) == null) {
-//        put(what, 0);
-//      }
-//    }
-//  }
+  /**
+   * Lookup table for a single column. Rows are grouped by their value (as a
+   * String, which is how find() compares them), and each group's rows are
+   * stored contiguously in ascending order. The sorted order used for range
+   * searches is only built the first time it's needed.
+   */
+  class ColumnIndex {
+    boolean dirty = true;
+
+    HashMap<String, Integer> groups;
+    // the rows for group g are groupRows[groupStart[g]] up to groupStart[g+1]
+    int[] groupStart;
+    int[] groupRows;
+
+    // rows that have a numeric value, sorted by that value
+    int[] sortedRows;
+    double[] sortedValues;
+
+    void update(int column) {
+      if (dirty) {
+        groups = new HashMap<String, Integer>();
+        int[] rowGroup = new int[rowCount];
+        int[] counts = new int[16];
+        for (int row = 0; row < rowCount; row++) {
+          String key = getString(row, column);
+          Integer group = groups.get(key);
+          if (group == null) {
+            group = groups.size();
+            groups.put(key, group);
+            if (group == counts.length) {
+              counts = PApplet.expand(counts);
+            }
+          }
+          rowGroup[row] = group;
+          counts[group]++;
+        }
+        groupStart = new int[groups.size() + 1];
+        for (int g = 0; g < groups.size(); g++) {
+          groupStart[g+1] = groupStart[g] + counts[g];
+        }
+        int[] fill = PApplet.subset(groupStart, 0, groups.size());
+        groupRows = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          groupRows[fill[rowGroup[row]]++] = row;
+        }
+        sortedRows = null;
+        sortedValues = null;
+        dirty = false;
+      }
+    }
+
+    int findRowIndex(String value) {
+      Integer group = groups.get(value);
+      return (group == null) ? -1 : groupRows[groupStart[group]];
+    }
+
+    int[] findRowIndices(String value) {
+      Integer group = groups.get(value);
+      if (group == null) {
+        return new int[0];
+      }
+      return Arrays.copyOfRange(groupRows, groupStart[group], groupStart[group+1]);
+    }
+
+    /** Only runs the regexp once for each distinct value. */
+    int[] matchRowIndices(String regexp) {
+      int[] outgoing = new int[rowCount];
+      int count = 0;
+      for (Map.Entry<String, Integer> entry : groups.entrySet()) {
+        String key = entry.getKey();
+        if (key != null && PApplet.match(key, regexp) != null) {
+          int group = entry.getValue();
+          int length = groupStart[group+1] - groupStart[group];
+          System.arraycopy(groupRows, groupStart[group], outgoing, count, length);
+          count += length;
+        }
+      }
+      outgoing = PApplet.subset(outgoing, 0, count);
+      Arrays.sort(outgoing);
+      return outgoing;
+    }
+
+    int[] findRangeIndices(double low, double high, int column) {
+      if (sortedRows == null) {
+        double[] values = new double[rowCount];
+        int[] rows = new int[rowCount];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+          double value = getRangeValue(row, column);
+          if (!Double.isNaN(value)) {
+            values[count] = value;
+            rows[count] = row;
+            count++;
+          }
+        }
+        sortIndex(values, rows, 0, count - 1);
+        sortedValues = Arrays.copyOf(values, count);
+        sortedRows = Arrays.copyOf(rows, count);
+      }
+      // first entry >= low, and first entry > high
+      int start = 0;
+      int stop = sortedValues.length;
+      while (start < stop) {
+        int mid = (start + stop) >>> 1;
+        if (sortedValues[mid] < low) {
+          start = mid + 1;
+        } else {
+          stop = mid;
+        }
+      }
+      int end = start;
+      stop = sortedValues.length;
+      while (end < stop) {
+        int mid = (end + stop) >>> 1;
+        if (sortedValues[mid] <= high) {
+          end = mid + 1;
+        } else {
+          stop = mid;
+        }
+      }
+      int[] outgoing = Arrays.copyOfRange(sortedRows, start, end);
+      Arrays.sort(outgoing);  // return in row order, same as findRowIndices()
+      return outgoing;
+    }
+  }
+
+
+  /**
+   * Sort values[lo..hi] (inclusive) in ascending order, moving the entries
+   * in order[] along with them. The values should not include NaN.
+   */
+  static void sortIndex(double[] values, int[] order, int lo, int hi) {
+    while (hi - lo > 16) {
+      double pivot = values[(lo + hi) >>> 1];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (values[i] < pivot) i++;
+        while (values[j] > pivot) j--;
+        if (i <= j) {
+          double v = values[i]; values[i] = values[j]; values[j] = v;
+          int o = order[i]; order[i] = order[j]; order[j] = o;
+          i++;
+          j--;
+        }
+      }
+      // recurse into the smaller half, loop on the larger
+      if (j - lo < hi - i) {
+        sortIndex(values, order, lo, j);
+        lo = i;
+      } else {
+        sortIndex(values, order, i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; i++) {
+      double v = values[i];
+      int o = order[i];
+      int j = i - 1;
+      while (j >= lo && values[j] > v) {
+        values[j+1] = values[j];
+        order[j+1] = order[j];
+        j--;
+      }
+      values[j+1] = v;
+      order[j+1] = o;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//  class HashMapSucks extends HashMap<String,Integer> {
+//
+//    void increment(String what) {
+//      Integer value = get(what);
+//      if (value == null) {
+//        put(what, 1);
+//      } else {
+//        put(what, value + 1);
+//      }
+//    }
+//
+//    void check(String what) {
+//      if (get(what) == null) {
+//        put(what, 0);
+//      }
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public void sort(String columnName) {
+    sort(getColumnIndex(columnName), false);
+  }
+
+
+  public void sort(int column) {
+    sort(column, false);
+  }
+
+
+  public void sortReverse(String columnName) {
+    sort(getColumnIndex(columnName), true);
+  }
+
+
+  public void sortReverse(int column) {
+    sort(column, true);
+  }
+
+
+  /**
+   * Sort by several columns: rows are ordered by the first column, and rows
+   * with the same value there are ordered by the second column, and so on.
+   */
+  public void sort(String[] columnNames) {
+    sort(columnNames, null);
+  }
+
+
+  public void sort(int[] columns) {
+    sort(columns, null);
+  }
+
+
+  /**
+   * @param reverse for each column, true to sort that column in reverse
+   */
+  public void sort(String[] columnNames, boolean[] reverse) {
+    int[] keys = new int[columnNames.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = getColumnIndex(columnNames[i]);
+    }
+    sort(keys, reverse);
+  }
+
+
+  protected void sort(int column, boolean reverse) {
+    sort(new int[] { column }, new boolean[] { reverse });
+  }
+
+
+  /**
+   * Sorting is stable, so rows with equal values stay in the same order.
+   * Numeric columns (and categories, by their index) are radix sorted,
+   * Strings are compared with compareToIgnoreCase(). NaN and null values
+   * go at the end, for reverse sorts as well. Each column is then
+   * rearranged in place.
+   */
+  public void sort(int[] keys, boolean[] reverse) {
+    for (int column : keys) {
+      checkColumn(column);
+    }
+    detach();
+    dirtyIndexes();
+
+    int[] order = new int[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      order[row] = row;
+    }
+    // Sorting by the last key first means that (since each pass is stable)
+    // the earlier keys take precedence.
+    for (int i = keys.length - 1; i >= 0; i--) {
+      sortOrder(order, keys[i], reverse != null && reverse[i]);
+    }
+
+    // one scratch array for each type, shared by the columns of that type
+    Object[] scratch = new Object[CATEGORY + 1];
+    for (int col = 0; col < columns.length; col++) {
+      permuteColumn(col, order, scratch);
+    }
+  }
+
+
+  static final int NAN_FLOAT_BITS = Float.floatToIntBits(Float.NaN);
+  static final long NAN_DOUBLE_BITS = Double.doubleToLongBits(Double.NaN);
+
+
+  /** Stable sort of the row order by the values in a single column. */
+  protected void sortOrder(int[] order, int column, boolean reverse) {
+    int count = order.length;
+    if (count < 2) {
+      return;
+    }
+    switch (columnTypes[column]) {
+      case INT:
+      case CATEGORY: {
+        int[] data = (int[]) columns[column];
+        int[] key = new int[count];
+        for (int i = 0; i < count; i++) {
+          key[i] = data[order[i]] ^ Integer.MIN_VALUE;  // signed to unsigned
+        }
+        radixSort(key, order, reverse);
+        break;
+      }
+      case FLOAT: {
+        float[] data = (float[]) columns[column];
+        int[] key = new int[count];
+        for (int i = 0; i < count; i++) {
+          // Arrange the bits so that they sort the same way as the float.
+          // NaN (using floatToIntBits, so there's only one) ends up last,
+          // and for a reverse sort, 0 (which no float maps to) flips to last.
+          int bits = Float.floatToIntBits(data[order[i]]);
+          if (reverse && bits == NAN_FLOAT_BITS) {
+            key[i] = 0;
+          } else {
+            key[i] = bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+          }
+        }
+        radixSort(key, order, reverse);
+        break;
+      }
+      case LONG: {
+        long[] data = (long[]) columns[column];
+        long[] key = new long[count];
+        for (int i = 0; i < count; i++) {
+          key[i] = data[order[i]] ^ Long.MIN_VALUE;
+        }
+        radixSort(key, order, reverse);
+        break;
+      }
+      case DOUBLE: {
+        double[] data = (double[]) columns[column];
+        long[] key = new long[count];
+        for (int i = 0; i < count; i++) {
+          long bits = Double.doubleToLongBits(data[order[i]]);
+          if (reverse && bits == NAN_DOUBLE_BITS) {
+            key[i] = 0;
+          } else {
+            key[i] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+          }
+        }
+        radixSort(key, order, reverse);
+        break;
+      }
+      case STRING: {
+        String[] data = (String[]) columns[column];
+        String[] key = new String[count];
+        for (int i = 0; i < count; i++) {
+          key[i] = data[order[i]];
+        }
+        mergeSort(key, order, key.clone(), order.clone(), 0, count, reverse);
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Invalid column type: " + columnTypes[column]);
+    }
+  }
+
+
+  /**
+   * LSD radix sort of unsigned keys, one byte at a time, moving the entries
+   * of order along with them. Bytes that are the same for every key are
+   * skipped. Reversing flips the keys, which keeps equal entries in order.
+   */
+  static void radixSort(int[] key, int[] order, boolean reverse) {
+    int count = key.length;
+    if (reverse) {
+      for (int i = 0; i < count; i++) {
+        key[i] = ~key[i];
+      }
+    }
+    int[] target = order;
+    int[] key2 = new int[count];
+    int[] order2 = new int[count];
+    int[] offsets = new int[256];
+    for (int shift = 0; shift < 32; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[(key[i] >>> shift) & 0xff]++;
+      }
+      if (offsets[(key[0] >>> shift) & 0xff] == count) {
+        continue;  // everything in the same bucket
+      }
+      int sum = 0;
+      for (int b = 0; b < 256; b++) {
+        int c = offsets[b];
+        offsets[b] = sum;
+        sum += c;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = offsets[(key[i] >>> shift) & 0xff]++;
+        key2[index] = key[i];
+        order2[index] = order[i];
+      }
+      int[] temp = key; key = key2; key2 = temp;
+      temp = order; order = order2; order2 = temp;
+    }
+    if (order != target) {
+      System.arraycopy(order, 0, target, 0, count);
+    }
+  }
+
+
+  static void radixSort(long[] key, int[] order, boolean reverse) {
+    int count = key.length;
+    if (reverse) {
+      for (int i = 0; i < count; i++) {
+        key[i] = ~key[i];
+      }
+    }
+    int[] target = order;
+    long[] key2 = new long[count];
+    int[] order2 = new int[count];
+    int[] offsets = new int[256];
+    for (int shift = 0; shift < 64; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[(int) (key[i] >>> shift) & 0xff]++;
+      }
+      if (offsets[(int) (key[0] >>> shift) & 0xff] == count) {
+        continue;
+      }
+      int sum = 0;
+      for (int b = 0; b < 256; b++) {
+        int c = offsets[b];
+        offsets[b] = sum;
+        sum += c;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = offsets[(int) (key[i] >>> shift) & 0xff]++;
+        key2[index] = key[i];
+        order2[index] = order[i];
+      }
+      long[] tempKey = key; key = key2; key2 = tempKey;
+      int[] temp = order; order = order2; order2 = temp;
+    }
+    if (order != target) {
+      System.arraycopy(order, 0, target, 0, count);
+    }
+  }
+
+
+  /**
+   * Stable merge sort of key[start..stop) into key (and order alongside),
+   * using the scratch arrays, which must start as a copy of the originals.
+   */
+  static void mergeSort(String[] key, int[] order,
+                        String[] scratchKey, int[] scratchOrder,
+                        int start, int stop, boolean reverse) {
+    if (stop - start < 12) {
+      for (int i = start + 1; i < stop; i++) {
+        String k = key[i];
+        int o = order[i];
+        int j = i - 1;
+        while (j >= start && compareEntries(key[j], k, reverse) > 0) {
+          key[j+1] = key[j];
+          order[j+1] = order[j];
+          j--;
+        }
+        key[j+1] = k;
+        order[j+1] = o;
+      }
+      return;
+    }
+    // sort each half into the scratch arrays, then merge back
+    int mid = (start + stop) >>> 1;
+    mergeSort(scratchKey, scratchOrder, key, order, start, mid, reverse);
+    mergeSort(scratchKey, scratchOrder, key, order, mid, stop, reverse);
+    int a = start;
+    int b = mid;
+    for (int i = start; i < stop; i++) {
+      if (b == stop ||
+          (a < mid && compareEntries(scratchKey[a], scratchKey[b], reverse) <= 0)) {
+        key[i] = scratchKey[a];
+        order[i] = scratchOrder[a++];
+      } else {
+        key[i] = scratchKey[b];
+        order[i] = scratchOrder[b++];
+      }
+    }
+  }
+
+
+  static int compareEntries(String a, String b, boolean reverse) {
+    if (a == null || b == null) {
+      // nulls at the end, regardless of direction
+      return (a == null) ? ((b == null) ? 0 : 1) : -1;
+    }
+    return reverse ? b.compareToIgnoreCase(a) : a.compareToIgnoreCase(b);
+  }
+
+
+  /**
+   * Rearrange a column so that row i holds what was in row order[i]. The
+   * rows are gathered into scratch[type] (created the first time it's
+   * needed) and then copied back, so the column keeps the same array.
+   * Following the cycles of the permutation in place would save the
+   * scratch memory, but each step has to wait on the read before it,
+   * which made it more than ten times slower.
+   */
+  protected void permuteColumn(int col, int[] order, Object[] scratch) {
+    int type = (columnTypes[col] == CATEGORY) ? INT : columnTypes[col];
+    Object data = columns[col];
+    if (scratch[type] == null) {
+      scratch[type] = Array.newInstance(data.getClass().getComponentType(), rowCount);
+    }
+    switch (type) {
+      case INT: {
+        int[] from = (int[]) data;
+        int[] to = (int[]) scratch[type];
+        for (int row = 0; row < rowCount; row++) {
+          to[row] = from[order[row]];
+        }
+        break;
+      }
+      case LONG: {
+        long[] from = (long[]) data;
+        long[] to = (long[]) scratch[type];
+        for (int row = 0; row < rowCount; row++) {
+          to[row] = from[order[row]];
+        }
+        break;
+      }
+      case FLOAT: {
+        float[] from = (float[]) data;
+        float[] to = (float[]) scratch[type];
+        for (int row = 0; row < rowCount; row++) {
+          to[row] = from[order[row]];
+        }
+        break;
+      }
+      case DOUBLE: {
+        double[] from = (double[]) data;
+        double[] to = (double[]) scratch[type];
+        for (int row = 0; row < rowCount; row++) {
+          to[row] = from[order[row]];
+        }
+        break;
+      }
+      case STRING: {
+        String[] from = (String[]) data;
+        String[] to = (String[]) scratch[type];
+        for (int row = 0; row < rowCount; row++) {
+          to[row] = from[order[row]];
+        }
+        break;
+      }
+    }
+    System.arraycopy(scratch[type], 0, data, 0, rowCount);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public String[] getUnique(String columnName) {
+    return getUnique(getColumnIndex(columnName));
+  }
+
+
+  public String[] getUnique(int column) {
+    StringList list = new StringList(getStringColumn(column));
+    return list.getUnique();
+  }
+
+
+  public IntDict getTally(String columnName) {
+    return getTally(getColumnIndex(columnName));
+  }
+
+
+  public IntDict getTally(int column) {
+    StringList list = new StringList(getStringColumn(column));
+    return list.getTally();
+  }
+
+
+  public IntDict getOrder(String columnName) {
+    return getOrder(getColumnIndex(columnName));
+  }
+
+
+  public IntDict getOrder(int column) {
+    StringList list = new StringList(getStringColumn(column));
+    return list.getOrder();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static final int PARALLEL_GROUP_ROWS = 1 << 18;  // rows per aggregate task
+  static final String[] AGGREGATE_NAMES = {
+    "count", "sum", "mean", "min", "max", "first"
+  };
+
+
+  /**
+   * Group the rows by the values of a column, and summarize each group.
+   * Aggregates are written as "count", "sum(column)", "mean(column)",
+   * "min(column)", "max(column)", or "first(column)". The result has one
+   * row per group, in the order each group first appears: the key column,
+   * followed by a column for each aggregate, titled with the aggregate.
+   * <pre>
+   * Table summary = table.groupBy("city", "count", "mean(temp)");
+   * float average = summary.getFloat(0, "mean(temp)");
+   * </pre>
+   * Missing (NaN) values are ignored by sum, mean, min, and max.
+   */
+  public Table groupBy(String columnName, String... aggregates) {
+    return groupBy(new String[] { columnName }, aggregates);
+  }
+
+
+  public Table groupBy(String[] columnNames, String... aggregates) {
+    int[] keys = new int[columnNames.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = checkColumnIndex(columnNames[i]);
+    }
+    return groupBy(keys, aggregates);
+  }
+
+
+  public Table groupBy(int[] keys, String... aggregates) {
+    for (int column : keys) {
+      checkColumn(column);
+    }
+    Aggregate[] list = new Aggregate[aggregates.length];
+    for (int i = 0; i < list.length; i++) {
+      list[i] = parseAggregate(aggregates[i]);
+    }
+
+    IntList firstRows = new IntList();
+    int[] groups = groupRows(keys, firstRows);
+    int groupCount = firstRows.size();
+    list = aggregate(list, groups, groupCount);
+
+    Table outgoing = createResult(groupCount);
+
+    int[] first = firstRows.array();
+    for (int column : keys) {
+      outgoing.addColumnData(getColumnTitle(column), columnTypes[column],
+                             gatherColumn(column, first),
+                             columnCategories[column]);
+    }
+    for (Aggregate agg : list) {
+      outgoing.addColumnData(agg.title, agg.getType(), agg.getResult(first),
+                             (agg.column == -1) ? null : columnCategories[agg.column]);
+    }
+    return outgoing;
+  }
+
+
+  protected Aggregate parseAggregate(String spec) {
+    String name = spec.trim();
+    int column = -1;
+    int open = name.indexOf('(');
+    if (open != -1 && name.endsWith(")")) {
+      column = checkColumnIndex(name.substring(open + 1, name.length() - 1).trim());
+      name = name.substring(0, open).trim();
+    }
+    int kind = Arrays.asList(AGGREGATE_NAMES).indexOf(name.toLowerCase());
+    if (kind == -1 || (kind == Aggregate.COUNT) != (column == -1)) {
+      throw new IllegalArgumentException("'" + spec + "' is not a valid aggregate, " +
+                                         "use count, sum(column), mean(column), " +
+                                         "min(column), max(column), or first(column)");
+    }
+    int type = (column == -1) ? INT : columnTypes[column];
+    if (kind != Aggregate.FIRST && kind != Aggregate.COUNT &&
+        (type == STRING || type == CATEGORY)) {
+      throw new IllegalArgumentException("Cannot use " + name + "() with the " +
+                                         "String column " + getColumnTitle(column));
+    }
+    return new Aggregate(spec, kind, column, type,
+                         (column == -1) ? null : getColumnData(column));
+  }
+
+
+  /**
+   * Assign each row a group number based on the values in the key columns.
+   * Groups are numbered in the order that they first appear, and the first
+   * row of each group is added to firstRows.
+   */
+  protected int[] groupRows(int[] keys, IntList firstRows) {
+    int[] groups = new int[rowCount];
+    int groupCount = (rowCount == 0) ? 0 : 1;
+
+    int[] codes = new int[rowCount];
+    for (int column : keys) {
+      int codeCount = keyCodes(column, codes);
+      if (groupCount == 1) {
+        int[] temp = groups; groups = codes; codes = temp;
+        groupCount = codeCount;
+
+      } else if ((long) groupCount * codeCount <= Math.max(rowCount, 1 << 16)) {
+        // few enough combinations to look them up directly
+        int[] lookup = new int[groupCount * codeCount];
+        Arrays.fill(lookup, -1);
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+          int slot = groups[row] * codeCount + codes[row];
+          if (lookup[slot] == -1) {
+            lookup[slot] = count++;
+          }
+          groups[row] = lookup[slot];
+        }
+        groupCount = count;
+
+      } else {
+        KeyCodes lookup = new KeyCodes();
+        for (int row = 0; row < rowCount; row++) {
+          groups[row] = lookup.code(((long) groups[row] << 32) | codes[row]);
+        }
+        groupCount = lookup.size();
+      }
+    }
+
+    for (int row = 0; row < rowCount; row++) {
+      if (groups[row] == firstRows.size()) {
+        firstRows.append(row);
+      }
+    }
+    return groups;
+  }
+
+
+  /**
+   * Number the distinct values of a column in the order they first appear,
+   * writing the number for each row into codes. Returns the number of
+   * distinct values. Floating point values that compare as equal (0.0 and
+   * -0.0) get the same number, and so do all NaN values.
+   */
+  protected int keyCodes(int column, int[] codes) {
+    Object data = getColumnData(column);
+    switch (columnTypes[column]) {
+      case INT:
+      case CATEGORY: {
+        int[] values = (int[]) data;
+        int low = Integer.MAX_VALUE;
+        int high = Integer.MIN_VALUE;
+        for (int row = 0; row < rowCount; row++) {
+          low = Math.min(low, values[row]);
+          high = Math.max(high, values[row]);
+        }
+        if ((long) high - low < Math.max(rowCount, 1 << 16)) {
+          // dense values (always true for categories) use a lookup table
+          int[] lookup = new int[high - low + 1];
+          Arrays.fill(lookup, -1);
+          int count = 0;
+          for (int row = 0; row < rowCount; row++) {
+            int slot = values[row] - low;
+            if (lookup[slot] == -1) {
+              lookup[slot] = count++;
+            }
+            codes[row] = lookup[slot];
+          }
+          return count;
+        }
+        KeyCodes lookup = new KeyCodes();
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = lookup.code(values[row]);
+        }
+        return lookup.size();
+      }
+      case LONG: {
+        long[] values = (long[]) data;
+        KeyCodes lookup = new KeyCodes();
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = lookup.code(values[row]);
+        }
+        return lookup.size();
+      }
+      case FLOAT: {
+        float[] values = (float[]) data;
+        KeyCodes lookup = new KeyCodes();
+        for (int row = 0; row < rowCount; row++) {
+          float value = values[row];
+          codes[row] = lookup.code((value == 0) ? 0 : Float.floatToIntBits(value));
+        }
+        return lookup.size();
+      }
+      case DOUBLE: {
+        double[] values = (double[]) data;
+        KeyCodes lookup = new KeyCodes();
+        for (int row = 0; row < rowCount; row++) {
+          double value = values[row];
+          codes[row] = lookup.code((value == 0) ? 0 : Double.doubleToLongBits(value));
+        }
+        return lookup.size();
+      }
+      case STRING: {
+        String[] values = (String[]) data;
+        HashMap<String,Integer> lookup = new HashMap<String, Integer>();
+        for (int row = 0; row < rowCount; row++) {
+          Integer code = lookup.get(values[row]);
+          if (code == null) {
+            code = lookup.size();
+            lookup.put(values[row], code);
+          }
+          codes[row] = code;
+        }
+        return lookup.size();
+      }
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+
+
+  /**
+   * Run each aggregate over the rows. Large tables are split into blocks of
+   * rows that are summarized in parallel, and the partial results merged.
+   */
+  protected Aggregate[] aggregate(Aggregate[] list, final int[] groups,
+                                  final int groupCount) {
+    int taskCount = Math.min(rowCount / PARALLEL_GROUP_ROWS,
+                             Runtime.getRuntime().availableProcessors());
+    // each task needs its own set of per-group totals
+    if (groupCount > rowCount / 4) {
+      taskCount = 1;
+    }
+
+    final Aggregate[][] partials = new Aggregate[Math.max(1, taskCount)][list.length];
+    for (int t = 0; t < partials.length; t++) {
+      for (int i = 0; i < list.length; i++) {
+        partials[t][i] = list[i].partial(groupCount);
+      }
+    }
+
+    if (taskCount <= 1) {
+      for (Aggregate agg : partials[0]) {
+        agg.accumulate(groups, 0, rowCount);
+      }
+
+    } else {
+      ForkJoinPool pool = getTaskPool();
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      for (int t = 0; t < taskCount; t++) {
+        final Aggregate[] partial = partials[t];
+        final int start = (int) ((long) rowCount * t / taskCount);
+        final int stop = (int) ((long) rowCount * (t+1) / taskCount);
+        tasks.add(pool.submit(new Runnable() {
+          public void run() {
+            for (Aggregate agg : partial) {
+              agg.accumulate(groups, start, stop);
+            }
+          }
+        }));
+      }
+      for (ForkJoinTask<?> task : tasks) {
+        task.join();
+      }
+      for (int t = 1; t < taskCount; t++) {
+        for (int i = 0; i < list.length; i++) {
+          partials[0][i].merge(partials[t][i]);
+        }
+      }
+    }
+    return partials[0];
+  }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /**
+   * An aggregate column for groupBy(), along with its totals for each group.
+   * The kind of total depends on the kind of aggregate and the column type:
+   * longs for INT and LONG columns, doubles for FLOAT and DOUBLE columns, and
+   * counts of the (non-missing) values seen for each group.
+   */
+  class Aggregate {
+    static final int COUNT = 0;
+    static final int SUM = 1;
+    static final int MEAN = 2;
+    static final int MIN = 3;
+    static final int MAX = 4;
+    static final int FIRST = 5;
+
+    String title;
+    int kind;
+    int column;  // -1 for count
+    int type;
+    Object data;
+
+    int[] counts;
+    long[] longs;
+    double[] doubles;
+
+    Aggregate(String title, int kind, int column, int type, Object data) {
+      this.title = title;
+      this.kind = kind;
+      this.column = column;
+      this.type = type;
+      this.data = data;
+    }
+
+    Aggregate partial(int groupCount) {
+      Aggregate outgoing = new Aggregate(title, kind, column, type, data);
+      if (kind != FIRST) {
+        outgoing.counts = new int[groupCount];
+        if (kind != COUNT) {
+          if (type == INT || type == LONG) {
+            outgoing.longs = new long[groupCount];
+          } else {
+            outgoing.doubles = new double[groupCount];
+          }
+        }
+      }
+      return outgoing;
+    }
 
+    void accumulate(int[] groups, int start, int stop) {
+      if (kind == FIRST) {
+        return;  // taken from the first row of each group
 
-  public void sort(String columnName) {
-    sort(getColumnIndex(columnName), false);
-  }
+      } else if (kind == COUNT) {
+        for (int row = start; row < stop; row++) {
+          counts[groups[row]]++;
+        }
 
+      } else if (type == INT) {
+        int[] values = (int[]) data;
+        if (kind == MIN) {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            if (counts[g]++ == 0 || values[row] < longs[g]) longs[g] = values[row];
+          }
+        } else if (kind == MAX) {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            if (counts[g]++ == 0 || values[row] > longs[g]) longs[g] = values[row];
+          }
+        } else {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            longs[g] += values[row];
+            counts[g]++;
+          }
+        }
 
-  public void sort(int column) {
-    sort(column, false);
-  }
+      } else if (type == LONG) {
+        long[] values = (long[]) data;
+        if (kind == MIN) {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            if (counts[g]++ == 0 || values[row] < longs[g]) longs[g] = values[row];
+          }
+        } else if (kind == MAX) {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            if (counts[g]++ == 0 || values[row] > longs[g]) longs[g] = values[row];
+          }
+        } else {
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            longs[g] += values[row];
+            counts[g]++;
+          }
+        }
 
+      } else if (type == FLOAT) {
+        float[] values = (float[]) data;
+        for (int row = start; row < stop; row++) {
+          float value = values[row];
+          if (value == value) {  // skip NaN
+            add(groups[row], value);
+          }
+        }
 
-  public void sortReverse(String columnName) {
-    sort(getColumnIndex(columnName), true);
-  }
+      } else {  // DOUBLE
+        double[] values = (double[]) data;
+        for (int row = start; row < stop; row++) {
+          double value = values[row];
+          if (value == value) {
+            add(groups[row], value);
+          }
+        }
+      }
+    }
 
+    private void add(int g, double value) {
+      if (kind == MIN) {
+        if (counts[g] == 0 || value < doubles[g]) doubles[g] = value;
+      } else if (kind == MAX) {
+        if (counts[g] == 0 || value > doubles[g]) doubles[g] = value;
+      } else {
+        doubles[g] += value;
+      }
+      counts[g]++;
+    }
 
-  public void sortReverse(int column) {
-    sort(column, true);
+    void merge(Aggregate other) {
+      if (kind == FIRST) {
+        return;
+      }
+      for (int g = 0; g < counts.length; g++) {
+        if (other.counts[g] != 0) {
+          if (longs != null) {
+            long value = other.longs[g];
+            if (kind == SUM || kind == MEAN) {
+              longs[g] += value;
+            } else if (counts[g] == 0 ||
+                       (kind == MIN ? value < longs[g] : value > longs[g])) {
+              longs[g] = value;
+            }
+          } else if (doubles != null) {
+            double value = other.doubles[g];
+            if (kind == SUM || kind == MEAN) {
+              doubles[g] += value;
+            } else if (counts[g] == 0 ||
+                       (kind == MIN ? value < doubles[g] : value > doubles[g])) {
+              doubles[g] = value;
+            }
+          }
+          counts[g] += other.counts[g];
+        }
+      }
+    }
+
+    /** The type of the column that holds the results. */
+    int getType() {
+      switch (kind) {
+        case COUNT: return INT;
+        case SUM: return (type == INT) ? LONG : type;
+        case MEAN: return (type == INT || type == FLOAT) ? FLOAT : DOUBLE;
+        default: return type;
+      }
+    }
+
+    Object getResult(int[] firstRows) {
+      if (kind == FIRST) {
+        return gatherColumn(column, firstRows);
+      } else if (kind == COUNT) {
+        return counts;
+      }
+      int count = counts.length;
+      switch (getType()) {
+        case INT: {
+          int[] outgoing = new int[count];
+          for (int g = 0; g < count; g++) {
+            outgoing[g] = (int) longs[g];
+          }
+          return outgoing;
+        }
+        case LONG: {
+          return longs;
+        }
+        case FLOAT: {
+          float[] outgoing = new float[count];
+          for (int g = 0; g < count; g++) {
+            outgoing[g] = (counts[g] == 0 && kind != SUM) ?
+              missingFloat : (float) getResult(g);
+          }
+          return outgoing;
+        }
+        default: {
+          double[] outgoing = new double[count];
+          for (int g = 0; g < count; g++) {
+            outgoing[g] = getResult(g);
+          }
+          return outgoing;
+        }
+      }
+    }
+
+    private double getResult(int g) {
+      double value = (longs != null) ? longs[g] : doubles[g];
+      if (kind == MEAN) {
+        return (counts[g] == 0) ? missingDouble : value / counts[g];
+      } else if (kind == SUM) {
+        return value;
+      }
+      // min or max of a group that had only missing values
+      return (counts[g] == 0) ? missingDouble : value;
+    }
   }
 
 
-  protected void sort(final int column, final boolean reverse) {
-    final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
+  /**
+   * Open addressing hash table that numbers long keys in the order in which
+   * they're first seen. Used for grouping and joining rows by their values.
+   */
+  static class KeyCodes {
+    long[] keys = new long[64];
+    int[] codes = new int[64];
+    int count;
+
+    KeyCodes() {
+      Arrays.fill(codes, -1);
+    }
+
+    int size() {
+      return count;
+    }
+
+    private int slot(long key) {
+      int mask = keys.length - 1;
+      long hash = key * 0x9E3779B97F4A7C15L;
+      int slot = (int) (hash ^ (hash >>> 32)) & mask;
+      while (codes[slot] != -1 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
 
-      @Override
-      public int size() {
-        return getRowCount();
+    /** Returns the number for this key, adding it if it's new. */
+    int code(long key) {
+      int slot = slot(key);
+      if (codes[slot] == -1) {
+        if (count * 2 >= keys.length) {
+          grow();
+          slot = slot(key);
+        }
+        keys[slot] = key;
+        codes[slot] = count++;
       }
+      return codes[slot];
+    }
 
-      @Override
-      public float compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
+    /** Returns the number for this key, or -1 if it hasn't been seen. */
+    int find(long key) {
+      return codes[slot(key)];
+    }
 
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          return getLong(a, column) - getLong(b, column);
-        case FLOAT:
-          return getFloat(a, column) - getFloat(b, column);
-        case DOUBLE:
-          return (float) (getDouble(a, column) - getDouble(b, column));
-        case STRING:
-          return getString(a, column).compareToIgnoreCase(getString(b, column));
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldCodes = codes;
+      keys = new long[oldKeys.length << 1];
+      codes = new int[oldCodes.length << 1];
+      Arrays.fill(codes, -1);
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldCodes[i] != -1) {
+          int slot = slot(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          codes[slot] = oldCodes[i];
         }
       }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Only keep rows that have a match in both tables. */
+  static public final int INNER_JOIN = 0;
+  /** Keep every row of the left table, with missing values where no match. */
+  static public final int LEFT_JOIN = 1;
+
+
+  public Table join(Table other, String leftKey, String rightKey) {
+    return join(other, leftKey, rightKey, INNER_JOIN);
+  }
+
+
+  /**
+   * Combine this table with another, matching rows where the value in the
+   * leftKey column of this table equals the value in the rightKey column
+   * of the other. Each output row has the columns of this table, followed
+   * by the columns of the other table (minus its key column). Rows are in
+   * the order of this table, and a row that matches several rows of the
+   * other table appears once for each.
+   * <pre>
+   * Table merged = readings.join(stations, "station", "id", Table.LEFT_JOIN);
+   * </pre>
+   * Keys that are both INT or LONG are compared as integers, other numeric
+   * keys as doubles, and anything else by its String value (so CATEGORY
+   * columns match even when their dictionaries differ). Missing (null or
+   * NaN) keys never match.
+   * @param joinType INNER_JOIN or LEFT_JOIN
+   */
+  public Table join(Table other, String leftKey, String rightKey, int joinType) {
+    return join(other, checkColumnIndex(leftKey),
+                other.checkColumnIndex(rightKey), joinType);
+  }
+
+
+  public Table join(Table other, int leftKey, int rightKey, int joinType) {
+    checkColumn(leftKey);
+    other.checkColumn(rightKey);
+    if (joinType != INNER_JOIN && joinType != LEFT_JOIN) {
+      throw new IllegalArgumentException("Use INNER_JOIN or LEFT_JOIN for the join type");
+    }
+    int mode = joinMode(columnTypes[leftKey], other.columnTypes[rightKey]);
+
+    // hash the distinct keys of the smaller table, and look up the other
+    KeyCodes numbers = new KeyCodes();
+    HashMap<String,Integer> strings = new HashMap<String, Integer>();
+    int[] leftCodes, rightCodes;
+    if (rowCount < other.rowCount) {
+      leftCodes = joinCodes(leftKey, mode, numbers, strings, true);
+      rightCodes = other.joinCodes(rightKey, mode, numbers, strings, false);
+    } else {
+      rightCodes = other.joinCodes(rightKey, mode, numbers, strings, true);
+      leftCodes = joinCodes(leftKey, mode, numbers, strings, false);
+    }
+    int keyCount = (mode == STRING) ? strings.size() : numbers.size();
+
+    // list the rows of the other table by key, keeping them in order
+    int[] start = new int[keyCount + 1];
+    for (int code : rightCodes) {
+      if (code != -1) {
+        start[code + 1]++;
+      }
+    }
+    for (int i = 0; i < keyCount; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] matches = new int[start[keyCount]];
+    int[] cursor = Arrays.copyOf(start, keyCount);
+    for (int row = 0; row < rightCodes.length; row++) {
+      int code = rightCodes[row];
+      if (code != -1) {
+        matches[cursor[code]++] = row;
+      }
+    }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
+    int total = 0;
+    for (int code : leftCodes) {
+      int count = (code == -1) ? 0 : start[code + 1] - start[code];
+      total += (count == 0 && joinType == LEFT_JOIN) ? 1 : count;
+    }
+    int[] leftRows = new int[total];
+    int[] rightRows = new int[total];
+    int index = 0;
+    for (int row = 0; row < leftCodes.length; row++) {
+      int code = leftCodes[row];
+      if (code != -1 && start[code + 1] > start[code]) {
+        for (int i = start[code]; i < start[code + 1]; i++) {
+          leftRows[index] = row;
+          rightRows[index++] = matches[i];
+        }
+      } else if (joinType == LEFT_JOIN) {
+        leftRows[index] = row;
+        rightRows[index++] = -1;  // filled with missing values
       }
+    }
 
-    };
-    s.run();
+    Table outgoing = createResult(total);
 
-    //Object[] newColumns = new Object[getColumnCount()];
     for (int col = 0; col < getColumnCount(); col++) {
-      switch (getColumnType(col)) {
-      case INT:
-      case CATEGORY:
-        int[] oldInt = (int[]) columns[col];
-        int[] newInt = new int[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newInt[row] = oldInt[order[row]];
+      outgoing.addColumnData(getColumnTitle(col), columnTypes[col],
+                             gatherColumn(col, leftRows),
+                             columnCategories[col]);
+    }
+    for (int col = 0; col < other.getColumnCount(); col++) {
+      if (col != rightKey) {
+        String title = other.getColumnTitle(col);
+        if (title != null) {
+          // add a number to titles that are already in use
+          String base = title;
+          for (int i = 2; outgoing.getColumnIndex(title, false) != -1; i++) {
+            title = base + "_" + i;
+          }
         }
-        columns[col] = newInt;
-        break;
-      case LONG:
-        long[] oldLong = (long[]) columns[col];
-        long[] newLong = new long[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newLong[row] = oldLong[order[row]];
+        outgoing.addColumnData(title, other.columnTypes[col],
+                               other.gatherColumn(col, rightRows),
+                               other.columnCategories[col]);
+      }
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * How to compare the keys of a join: LONG for integer types,
+   * DOUBLE for other numbers, otherwise STRING.
+   */
+  static int joinMode(int leftType, int rightType) {
+    boolean leftInteger = (leftType == INT || leftType == LONG);
+    boolean rightInteger = (rightType == INT || rightType == LONG);
+    if (leftInteger && rightInteger) {
+      return LONG;
+    }
+    boolean leftNumber = leftInteger || leftType == FLOAT || leftType == DOUBLE;
+    boolean rightNumber = rightInteger || rightType == FLOAT || rightType == DOUBLE;
+    if (leftNumber && rightNumber) {
+      return DOUBLE;
+    }
+    return STRING;
+  }
+
+
+  /**
+   * Number the key of each row for a join, adding new keys to the lookup
+   * (when building) or returning -1 for keys that aren't found (when
+   * probing). The mode is from joinMode(), and strings are used as the
+   * lookup in STRING mode, otherwise numbers.
+   */
+  protected int[] joinCodes(int column, int mode, KeyCodes numbers,
+                            HashMap<String,Integer> strings, boolean build) {
+    int[] codes = new int[rowCount];
+    int type = columnTypes[column];
+    Object data = getColumnData(column);
+
+    if (mode == LONG) {
+      if (type == INT) {
+        int[] values = (int[]) data;
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = build ? numbers.code(values[row]) : numbers.find(values[row]);
         }
-        columns[col] = newLong;
-        break;
-      case FLOAT:
-        float[] oldFloat = (float[]) columns[col];
-        float[] newFloat = new float[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newFloat[row] = oldFloat[order[row]];
+      } else {
+        long[] values = (long[]) data;
+        for (int row = 0; row < rowCount; row++) {
+          codes[row] = build ? numbers.code(values[row]) : numbers.find(values[row]);
         }
-        columns[col] = newFloat;
-        break;
-      case DOUBLE:
-        double[] oldDouble = (double[]) columns[col];
-        double[] newDouble = new double[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newDouble[row] = oldDouble[order[row]];
+      }
+
+    } else if (mode == DOUBLE) {
+      for (int row = 0; row < rowCount; row++) {
+        double value;
+        switch (type) {
+          case INT: value = ((int[]) data)[row]; break;
+          case LONG: value = ((long[]) data)[row]; break;
+          case FLOAT: value = ((float[]) data)[row]; break;
+          default: value = ((double[]) data)[row]; break;
         }
-        columns[col] = newDouble;
-        break;
-      case STRING:
-        String[] oldString = (String[]) columns[col];
-        String[] newString = new String[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newString[row] = oldString[order[row]];
+        if (value != value) {
+          codes[row] = -1;  // NaN never matches
+        } else {
+          long bits = (value == 0) ? 0 : Double.doubleToLongBits(value);
+          codes[row] = build ? numbers.code(bits) : numbers.find(bits);
         }
-        columns[col] = newString;
-        break;
       }
+
+    } else if (type == CATEGORY) {
+      // look up each entry of the dictionary once, then use it for each row
+      Categories categories = columnCategories[column];
+      int[] entries = new int[categories.size()];
+      for (int i = 0; i < entries.length; i++) {
+        entries[i] = joinCode(categories.key(i), strings, build);
+      }
+      int[] values = (int[]) data;
+      for (int row = 0; row < rowCount; row++) {
+        int value = values[row];
+        codes[row] = (value < 0 || value >= entries.length) ? -1 : entries[value];
+      }
+
+    } else {
+      for (int row = 0; row < rowCount; row++) {
+        codes[row] = joinCode(getString(row, column), strings, build);
+      }
+    }
+    return codes;
+  }
+
+
+  static int joinCode(String key, HashMap<String,Integer> strings,
+                      boolean build) {
+    if (key == null) {
+      return -1;
+    }
+    Integer code = strings.get(key);
+    if (code == null) {
+      if (!build) {
+        return -1;
+      }
+      code = strings.size();
+      strings.put(key, code);
     }
+    return code;
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public String[] getUnique(String columnName) {
-    return getUnique(getColumnIndex(columnName));
+  /**
+   * Refer to a column when building an expression for filter() or derive().
+   * @see TableExpression
+   */
+  static public TableExpression col(String columnName) {
+    return new TableExpression.Column(columnName);
   }
 
 
-  public String[] getUnique(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getUnique();
+  static public TableExpression col(int column) {
+    return new TableExpression.Column(column);
   }
 
 
-  public IntDict getTally(String columnName) {
-    return getTally(getColumnIndex(columnName));
+  /**
+   * Return the rows that meet all the conditions, for instance
+   * <tt>table.findRowIndices(Table.col("temp").gt(30))</tt>. Each condition
+   * is only checked on the rows that passed the ones before it.
+   */
+  public int[] findRowIndices(TableExpression... conditions) {
+    int[] rows = new int[rowCount];
+    int count = rowCount;
+    for (int i = 0; i < conditions.length; i++) {
+      count = conditions[i].select(this, (i == 0) ? null : rows, count, rows);
+    }
+    if (conditions.length == 0) {
+      for (int row = 0; row < rowCount; row++) {
+        rows[row] = row;
+      }
+    }
+    return (count == rows.length) ? rows : PApplet.subset(rows, 0, count);
   }
 
 
-  public IntDict getTally(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getTally();
+  public Iterable<TableRow> findRows(final TableExpression... conditions) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this, findRowIndices(conditions));
+      }
+    };
   }
 
 
-  public IntDict getOrder(String columnName) {
-    return getOrder(getColumnIndex(columnName));
+  /**
+   * Create a new table with just the rows that meet all the conditions.
+   * <pre>
+   * Table warm = table.filter(Table.col("temp").gt(30), Table.col("city").eq("Oslo"));
+   * </pre>
+   */
+  public Table filter(TableExpression... conditions) {
+    return createSubset(findRowIndices(conditions));
   }
 
 
-  public IntDict getOrder(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getOrder();
+  /**
+   * Calculate a column from the others, for instance
+   * <tt>table.derive("fahrenheit", Table.col("celsius").mul(1.8).add(32))</tt>.
+   * The column is added to the end of the table, or replaced if there's
+   * already one with this title. Its type follows the calculation: INT when
+   * only integers are added, subtracted, or multiplied, FLOAT when there are
+   * fractions or division, and LONG or DOUBLE if any of the columns are.
+   */
+  public void derive(String title, TableExpression expression) {
+    int type = expression.getType(this);
+    Object data;
+    if (type == INT || type == LONG) {
+      // worked out with longs, so big LONG values stay exact
+      long[] longData = new long[rowCount];
+      expression.evaluateLong(this, null, rowCount, longData);
+      if (type == INT) {
+        int[] intData = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          intData[row] = (int) longData[row];
+        }
+        data = intData;
+      } else {
+        data = longData;
+      }
+    } else {
+      double[] values = new double[rowCount];
+      expression.evaluate(this, null, rowCount, values);
+      if (type == FLOAT) {
+        float[] floatData = new float[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          floatData[row] = (float) values[row];
+        }
+        data = floatData;
+      } else {
+        data = values;
+      }
+    }
+
+    int column = getColumnIndex(title, false);
+    if (column == -1) {
+      addColumnData(title, type, data, null);
+    } else {
+      columns[column] = data;
+      columnTypes[column] = type;
+      dirtyIndex(column);
+    }
   }
 
 
@@ -3818,6 +6583,73 @@ public class Table {
   }
 
 
+  public BigIntList getBigIntList(String columnName) {
+    int col = getColumnIndex(columnName);
+    return (col == -1) ? null : getBigIntList(col);
+  }
+
+
+  /**
+   * Get a column as a BigIntList. An INT column isn't copied: the list uses
+   * the same memory, so changes to one show up in the other, until rows are
+   * added to or removed from the table (or values appended to the list).
+   * Because the table can't see those changes, any index() on the column
+   * is removed; call index() again once done writing through the list.
+   * A column mapped from a binary file can only be read this way, so its
+   * index is kept. Columns of other types are converted with getInt()
+   * into a new list.
+   */
+  public BigIntList getBigIntList(int column) {
+    checkColumn(column);
+    if (columnTypes[column] == INT) {
+      Object data = columns[column];
+      if (data instanceof int[]) {
+        removeIndex(column);
+        return BigIntList.wrap(IntBuffer.wrap((int[]) data), rowCount);
+      }
+      ByteBuffer buffer = ((ByteBuffer) data).duplicate();
+      buffer.clear();
+      return BigIntList.wrap(buffer.asIntBuffer(), rowCount);
+    }
+    BigIntList outgoing = new BigIntList();
+    for (int row = 0; row < rowCount; row++) {
+      outgoing.append(getInt(row, column));
+    }
+    return outgoing;
+  }
+
+
+  public BigFloatList getBigFloatList(String columnName) {
+    int col = getColumnIndex(columnName);
+    return (col == -1) ? null : getBigFloatList(col);
+  }
+
+
+  /**
+   * Get a column as a BigFloatList, sharing the memory of a FLOAT column
+   * the same way as getBigIntList() does for INT columns (which also means
+   * any index() on a writable column is removed).
+   */
+  public BigFloatList getBigFloatList(int column) {
+    checkColumn(column);
+    if (columnTypes[column] == FLOAT) {
+      Object data = columns[column];
+      if (data instanceof float[]) {
+        removeIndex(column);
+        return BigFloatList.wrap(FloatBuffer.wrap((float[]) data), rowCount);
+      }
+      ByteBuffer buffer = ((ByteBuffer) data).duplicate();
+      buffer.clear();
+      return BigFloatList.wrap(buffer.asFloatBuffer(), rowCount);
+    }
+    BigFloatList outgoing = new BigFloatList();
+    for (int row = 0; row < rowCount; row++) {
+      outgoing.append(getFloat(row, column));
+    }
+    return outgoing;
+  }
+
+
   public StringList getStringList(String columnName) {
     return new StringList(getStringColumn(columnName));
   }
@@ -3987,22 +6819,11 @@ public class Table {
 
   // TODO naming/whether to include
   protected Table createSubset(int[] rowSubset) {
-    Table newbie = new Table();
-    newbie.setColumnTitles(columnTitles);  // also sets columns.length
-    newbie.columnTypes = columnTypes;
-    newbie.setRowCount(rowSubset.length);
-
-    for (int i = 0; i < rowSubset.length; i++) {
-      int row = rowSubset[i];
-      for (int col = 0; col < columns.length; col++) {
-        switch (columnTypes[col]) {
-          case STRING: newbie.setString(i, col, getString(row, col)); break;
-          case INT: newbie.setInt(i, col, getInt(row, col)); break;
-          case LONG: newbie.setLong(i, col, getLong(row, col)); break;
-          case FLOAT: newbie.setFloat(i, col, getFloat(row, col)); break;
-          case DOUBLE: newbie.setDouble(i, col, getDouble(row, col)); break;
-        }
-      }
+    Table newbie = createResult(rowSubset.length);
+    for (int col = 0; col < columns.length; col++) {
+      newbie.addColumnData(getColumnTitle(col), columnTypes[col],
+                           gatherColumn(col, rowSubset),
+                           columnCategories[col]);
     }
     return newbie;
   }
@@ -4088,7 +6909,7 @@ public class Table {
 
     // has to come afterwards, since these tables get built out during the conversion
     int col = 0;
-    for (HashMapBlows hmb : columnCategories) {
+    for (Categories hmb : columnCategories) {
       if (hmb == null) {
         output.writeInt(0);
       } else {
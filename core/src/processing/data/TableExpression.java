@@ -0,0 +1,727 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * A calculation or condition on the columns of a Table. Start with
+ * Table.col() and build up from there:
+ * <pre>
+ * Table warm = table.filter(Table.col("temp").gt(30).and(Table.col("city").eq("Oslo")));
+ * table.derive("fahrenheit", Table.col("celsius").mul(1.8).add(32));
+ * </pre>
+ * Expressions are run a column at a time, in loops over the arrays inside
+ * the Table, rather than a row at a time. Calculations and comparisons
+ * that only involve INT and LONG columns and whole numbers are done with
+ * longs, so large LONG values stay exact. Once a FLOAT or DOUBLE (or a
+ * fraction) is involved, the values are doubles, which only hold whole
+ * numbers exactly up to 2^53. Conditions produce a list of the
+ * matching rows (a selection), and each condition in and() only looks at the
+ * rows that made it through the ones before, so several can be combined
+ * without building a Table (or an array of booleans) for each step.
+ *
+ * @see Table#col(String)
+ * @see Table#filter(TableExpression...)
+ * @see Table#derive(String, TableExpression)
+ */
+public abstract class TableExpression {
+  static final int ADD = 0;
+  static final int SUB = 1;
+  static final int MUL = 2;
+  static final int DIV = 3;
+
+  static final int GT = 0;
+  static final int GE = 1;
+  static final int LT = 2;
+  static final int LE = 3;
+  static final int EQ = 4;
+  static final int NE = 5;
+
+
+  TableExpression() { }
+
+
+  public TableExpression add(TableExpression other) {
+    return new Arithmetic(ADD, this, other);
+  }
+
+
+  public TableExpression add(double value) {
+    return add(new Constant(value));
+  }
+
+
+  public TableExpression add(long value) {
+    return add(new Constant(value));
+  }
+
+
+  public TableExpression sub(TableExpression other) {
+    return new Arithmetic(SUB, this, other);
+  }
+
+
+  public TableExpression sub(double value) {
+    return sub(new Constant(value));
+  }
+
+
+  public TableExpression sub(long value) {
+    return sub(new Constant(value));
+  }
+
+
+  public TableExpression mul(TableExpression other) {
+    return new Arithmetic(MUL, this, other);
+  }
+
+
+  public TableExpression mul(double value) {
+    return mul(new Constant(value));
+  }
+
+
+  public TableExpression mul(long value) {
+    return mul(new Constant(value));
+  }
+
+
+  public TableExpression div(TableExpression other) {
+    return new Arithmetic(DIV, this, other);
+  }
+
+
+  public TableExpression div(double value) {
+    return div(new Constant(value));
+  }
+
+
+  public TableExpression div(long value) {
+    return div(new Constant(value));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public TableExpression gt(TableExpression other) {
+    return new Compare(GT, this, other);
+  }
+
+
+  public TableExpression gt(double value) {
+    return gt(new Constant(value));
+  }
+
+
+  public TableExpression gt(long value) {
+    return gt(new Constant(value));
+  }
+
+
+  public TableExpression ge(TableExpression other) {
+    return new Compare(GE, this, other);
+  }
+
+
+  public TableExpression ge(double value) {
+    return ge(new Constant(value));
+  }
+
+
+  public TableExpression ge(long value) {
+    return ge(new Constant(value));
+  }
+
+
+  public TableExpression lt(TableExpression other) {
+    return new Compare(LT, this, other);
+  }
+
+
+  public TableExpression lt(double value) {
+    return lt(new Constant(value));
+  }
+
+
+  public TableExpression lt(long value) {
+    return lt(new Constant(value));
+  }
+
+
+  public TableExpression le(TableExpression other) {
+    return new Compare(LE, this, other);
+  }
+
+
+  public TableExpression le(double value) {
+    return le(new Constant(value));
+  }
+
+
+  public TableExpression le(long value) {
+    return le(new Constant(value));
+  }
+
+
+  public TableExpression eq(TableExpression other) {
+    return new Compare(EQ, this, other);
+  }
+
+
+  public TableExpression eq(double value) {
+    return eq(new Constant(value));
+  }
+
+
+  public TableExpression eq(long value) {
+    return eq(new Constant(value));
+  }
+
+
+  /** Matches rows where this column has exactly this String. */
+  public TableExpression eq(String value) {
+    return new Match(this, value, true);
+  }
+
+
+  public TableExpression ne(TableExpression other) {
+    return new Compare(NE, this, other);
+  }
+
+
+  public TableExpression ne(double value) {
+    return ne(new Constant(value));
+  }
+
+
+  public TableExpression ne(long value) {
+    return ne(new Constant(value));
+  }
+
+
+  public TableExpression ne(String value) {
+    return new Match(this, value, false);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public TableExpression and(TableExpression other) {
+    return new And(this, other);
+  }
+
+
+  public TableExpression or(TableExpression other) {
+    return new Or(this, other);
+  }
+
+
+  public TableExpression not() {
+    return new Not(this);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * The type (INT, LONG, FLOAT, or DOUBLE) of the values produced when this
+   * is evaluated on a table.
+   */
+  int getType(Table table) {
+    throw new IllegalArgumentException(this + " is a condition, not a number");
+  }
+
+
+  /**
+   * Calculate the value for each of the rows, placing the result for
+   * rows[i] into out[i]. If rows is null, use rows 0 through count-1.
+   */
+  void evaluate(Table table, int[] rows, int count, double[] out) {
+    throw new IllegalArgumentException(this + " is a condition, not a number");
+  }
+
+
+  /**
+   * Same as evaluate(), for expressions of type INT or LONG, so that the
+   * values don't lose precision by way of a double.
+   */
+  void evaluateLong(Table table, int[] rows, int count, long[] out) {
+    throw new IllegalArgumentException(this + " is a condition, not a number");
+  }
+
+
+  /**
+   * Copy the rows that meet this condition into out, and return how many
+   * there were. The rows stay in order, and out may be the same array as
+   * rows. If rows is null, use rows 0 through count-1.
+   */
+  int select(Table table, int[] rows, int count, int[] out) {
+    throw new IllegalArgumentException(this + " is a number, not a condition");
+  }
+
+
+  static int row(int[] rows, int i) {
+    return (rows == null) ? i : rows[i];
+  }
+
+
+  static boolean isInteger(int type) {
+    return type == Table.INT || type == Table.LONG;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static class Column extends TableExpression {
+    String name;
+    int column;
+
+    Column(String name) {
+      this.name = name;
+    }
+
+    Column(int column) {
+      this.column = column;
+    }
+
+    int getColumn(Table table) {
+      if (name != null) {
+        return table.checkColumnIndex(name);
+      }
+      table.checkColumn(column);
+      return column;
+    }
+
+    int getType(Table table) {
+      int type = table.getColumnType(getColumn(table));
+      if (type == Table.STRING || type == Table.CATEGORY) {
+        throw new IllegalArgumentException("Column " + this + " does not hold numbers");
+      }
+      return type;
+    }
+
+    void evaluate(Table table, int[] rows, int count, double[] out) {
+      int type = getType(table);
+      Object data = table.getColumnData(getColumn(table));
+      if (type == Table.INT) {
+        int[] values = (int[]) data;
+        if (rows == null) {
+          for (int i = 0; i < count; i++) out[i] = values[i];
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      } else if (type == Table.LONG) {
+        long[] values = (long[]) data;
+        if (rows == null) {
+          for (int i = 0; i < count; i++) out[i] = values[i];
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      } else if (type == Table.FLOAT) {
+        float[] values = (float[]) data;
+        if (rows == null) {
+          for (int i = 0; i < count; i++) out[i] = values[i];
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      } else {
+        double[] values = (double[]) data;
+        if (rows == null) {
+          System.arraycopy(values, 0, out, 0, count);
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      }
+    }
+
+    void evaluateLong(Table table, int[] rows, int count, long[] out) {
+      int type = getType(table);
+      Object data = table.getColumnData(getColumn(table));
+      if (type == Table.INT) {
+        int[] values = (int[]) data;
+        if (rows == null) {
+          for (int i = 0; i < count; i++) out[i] = values[i];
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      } else if (type == Table.LONG) {
+        long[] values = (long[]) data;
+        if (rows == null) {
+          System.arraycopy(values, 0, out, 0, count);
+        } else {
+          for (int i = 0; i < count; i++) out[i] = values[rows[i]];
+        }
+      } else {
+        throw new IllegalArgumentException("Column " + this + " does not hold whole numbers");
+      }
+    }
+
+    public String toString() {
+      return (name != null) ? name : String.valueOf(column);
+    }
+  }
+
+
+  static class Constant extends TableExpression {
+    double value;
+    long longValue;
+    boolean whole;  // made from a long, so longValue is exact
+
+    Constant(double value) {
+      this.value = value;
+      longValue = (long) value;
+    }
+
+    Constant(long value) {
+      this.value = value;
+      longValue = value;
+      whole = true;
+    }
+
+    int getType(Table table) {
+      if (whole) {
+        return (longValue == (int) longValue) ? Table.INT : Table.LONG;
+      }
+      return (value == (int) value) ? Table.INT : Table.FLOAT;
+    }
+
+    void evaluate(Table table, int[] rows, int count, double[] out) {
+      Arrays.fill(out, 0, count, value);
+    }
+
+    void evaluateLong(Table table, int[] rows, int count, long[] out) {
+      Arrays.fill(out, 0, count, longValue);
+    }
+
+    public String toString() {
+      return whole ? String.valueOf(longValue) : String.valueOf(value);
+    }
+  }
+
+
+  static class Arithmetic extends TableExpression {
+    int op;
+    TableExpression a, b;
+
+    Arithmetic(int op, TableExpression a, TableExpression b) {
+      this.op = op;
+      this.a = a;
+      this.b = b;
+    }
+
+    /**
+     * Integer types stay integers (except when dividing), LONG and DOUBLE
+     * win out over INT and FLOAT, and anything with a LONG and a fraction
+     * is a DOUBLE.
+     */
+    int getType(Table table) {
+      int typeA = a.getType(table);
+      int typeB = b.getType(table);
+      if (op == DIV) {
+        if (typeA == Table.INT) {
+          typeA = Table.FLOAT;
+        } else if (typeA == Table.LONG) {
+          typeA = Table.DOUBLE;
+        }
+      }
+      if (typeA == Table.DOUBLE || typeB == Table.DOUBLE) {
+        return Table.DOUBLE;
+      }
+      if (typeA == Table.LONG || typeB == Table.LONG) {
+        return (typeA == Table.FLOAT || typeB == Table.FLOAT) ? Table.DOUBLE : Table.LONG;
+      }
+      return Math.max(typeA, typeB);
+    }
+
+    void evaluate(Table table, int[] rows, int count, double[] out) {
+      if (isInteger(getType(table))) {
+        long[] values = new long[count];
+        evaluateLong(table, rows, count, values);
+        for (int i = 0; i < count; i++) out[i] = values[i];
+        return;
+      }
+      if (b instanceof Constant) {
+        a.evaluate(table, rows, count, out);
+        double v = ((Constant) b).value;
+        switch (op) {
+          case ADD: for (int i = 0; i < count; i++) out[i] += v; break;
+          case SUB: for (int i = 0; i < count; i++) out[i] -= v; break;
+          case MUL: for (int i = 0; i < count; i++) out[i] *= v; break;
+          case DIV: for (int i = 0; i < count; i++) out[i] /= v; break;
+        }
+      } else {
+        double[] right = new double[count];
+        a.evaluate(table, rows, count, out);
+        b.evaluate(table, rows, count, right);
+        switch (op) {
+          case ADD: for (int i = 0; i < count; i++) out[i] += right[i]; break;
+          case SUB: for (int i = 0; i < count; i++) out[i] -= right[i]; break;
+          case MUL: for (int i = 0; i < count; i++) out[i] *= right[i]; break;
+          case DIV: for (int i = 0; i < count; i++) out[i] /= right[i]; break;
+        }
+      }
+    }
+
+    // never a DIV, since dividing makes a FLOAT or DOUBLE
+    void evaluateLong(Table table, int[] rows, int count, long[] out) {
+      a.evaluateLong(table, rows, count, out);
+      if (b instanceof Constant) {
+        long v = ((Constant) b).longValue;
+        switch (op) {
+          case ADD: for (int i = 0; i < count; i++) out[i] += v; break;
+          case SUB: for (int i = 0; i < count; i++) out[i] -= v; break;
+          case MUL: for (int i = 0; i < count; i++) out[i] *= v; break;
+        }
+      } else {
+        long[] right = new long[count];
+        b.evaluateLong(table, rows, count, right);
+        switch (op) {
+          case ADD: for (int i = 0; i < count; i++) out[i] += right[i]; break;
+          case SUB: for (int i = 0; i < count; i++) out[i] -= right[i]; break;
+          case MUL: for (int i = 0; i < count; i++) out[i] *= right[i]; break;
+        }
+      }
+    }
+
+    public String toString() {
+      return "(" + a + " " + "+-*/".charAt(op) + " " + b + ")";
+    }
+  }
+
+
+  static class Compare extends TableExpression {
+    static final String[] NAMES = { ">", ">=", "<", "<=", "==", "!=" };
+
+    int op;
+    TableExpression a, b;
+
+    Compare(int op, TableExpression a, TableExpression b) {
+      this.op = op;
+      this.a = a;
+      this.b = b;
+    }
+
+    int select(Table table, int[] rows, int count, int[] out) {
+      if (isInteger(a.getType(table)) && isInteger(b.getType(table))) {
+        return selectLong(table, rows, count, out);
+      }
+      double[] left = new double[count];
+      a.evaluate(table, rows, count, left);
+      int found = 0;
+      if (b instanceof Constant) {
+        double v = ((Constant) b).value;
+        switch (op) {
+          case GT: for (int i = 0; i < count; i++) if (left[i] > v) out[found++] = row(rows, i); break;
+          case GE: for (int i = 0; i < count; i++) if (left[i] >= v) out[found++] = row(rows, i); break;
+          case LT: for (int i = 0; i < count; i++) if (left[i] < v) out[found++] = row(rows, i); break;
+          case LE: for (int i = 0; i < count; i++) if (left[i] <= v) out[found++] = row(rows, i); break;
+          case EQ: for (int i = 0; i < count; i++) if (left[i] == v) out[found++] = row(rows, i); break;
+          case NE: for (int i = 0; i < count; i++) if (left[i] != v) out[found++] = row(rows, i); break;
+        }
+      } else {
+        double[] right = new double[count];
+        b.evaluate(table, rows, count, right);
+        switch (op) {
+          case GT: for (int i = 0; i < count; i++) if (left[i] > right[i]) out[found++] = row(rows, i); break;
+          case GE: for (int i = 0; i < count; i++) if (left[i] >= right[i]) out[found++] = row(rows, i); break;
+          case LT: for (int i = 0; i < count; i++) if (left[i] < right[i]) out[found++] = row(rows, i); break;
+          case LE: for (int i = 0; i < count; i++) if (left[i] <= right[i]) out[found++] = row(rows, i); break;
+          case EQ: for (int i = 0; i < count; i++) if (left[i] == right[i]) out[found++] = row(rows, i); break;
+          case NE: for (int i = 0; i < count; i++) if (left[i] != right[i]) out[found++] = row(rows, i); break;
+        }
+      }
+      return found;
+    }
+
+    int selectLong(Table table, int[] rows, int count, int[] out) {
+      long[] left = new long[count];
+      a.evaluateLong(table, rows, count, left);
+      int found = 0;
+      if (b instanceof Constant) {
+        long v = ((Constant) b).longValue;
+        switch (op) {
+          case GT: for (int i = 0; i < count; i++) if (left[i] > v) out[found++] = row(rows, i); break;
+          case GE: for (int i = 0; i < count; i++) if (left[i] >= v) out[found++] = row(rows, i); break;
+          case LT: for (int i = 0; i < count; i++) if (left[i] < v) out[found++] = row(rows, i); break;
+          case LE: for (int i = 0; i < count; i++) if (left[i] <= v) out[found++] = row(rows, i); break;
+          case EQ: for (int i = 0; i < count; i++) if (left[i] == v) out[found++] = row(rows, i); break;
+          case NE: for (int i = 0; i < count; i++) if (left[i] != v) out[found++] = row(rows, i); break;
+        }
+      } else {
+        long[] right = new long[count];
+        b.evaluateLong(table, rows, count, right);
+        switch (op) {
+          case GT: for (int i = 0; i < count; i++) if (left[i] > right[i]) out[found++] = row(rows, i); break;
+          case GE: for (int i = 0; i < count; i++) if (left[i] >= right[i]) out[found++] = row(rows, i); break;
+          case LT: for (int i = 0; i < count; i++) if (left[i] < right[i]) out[found++] = row(rows, i); break;
+          case LE: for (int i = 0; i < count; i++) if (left[i] <= right[i]) out[found++] = row(rows, i); break;
+          case EQ: for (int i = 0; i < count; i++) if (left[i] == right[i]) out[found++] = row(rows, i); break;
+          case NE: for (int i = 0; i < count; i++) if (left[i] != right[i]) out[found++] = row(rows, i); break;
+        }
+      }
+      return found;
+    }
+
+    public String toString() {
+      return "(" + a + " " + NAMES[op] + " " + b + ")";
+    }
+  }
+
+
+  /** Compares the String value of a column. */
+  static class Match extends TableExpression {
+    Column column;
+    String value;
+    boolean equal;
+
+    Match(TableExpression column, String value, boolean equal) {
+      if (!(column instanceof Column)) {
+        throw new IllegalArgumentException("Only columns can be compared to a String");
+      }
+      this.column = (Column) column;
+      this.value = value;
+      this.equal = equal;
+    }
+
+    int select(Table table, int[] rows, int count, int[] out) {
+      int col = column.getColumn(table);
+      int type = table.getColumnType(col);
+      int found = 0;
+      if (type == Table.CATEGORY) {
+        // compare the category index instead of each String
+        int[] values = (int[]) table.getColumnData(col);
+        int target = table.missingCategory;
+        if (value != null) {
+          int index = table.columnCategories[col].find(value);
+          if (index == -1) {
+            // not in the dictionary, so there's nothing to match
+            target = (target == Integer.MIN_VALUE) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+          } else {
+            target = index;
+          }
+        }
+        for (int i = 0; i < count; i++) {
+          int row = row(rows, i);
+          if ((values[row] == target) == equal) out[found++] = row;
+        }
+      } else if (type == Table.STRING) {
+        String[] values = (String[]) table.getColumnData(col);
+        for (int i = 0; i < count; i++) {
+          int row = row(rows, i);
+          String s = values[row];
+          boolean same = (s == null) ? (value == null) : s.equals(value);
+          if (same == equal) out[found++] = row;
+        }
+      } else {
+        for (int i = 0; i < count; i++) {
+          int row = row(rows, i);
+          String s = table.getString(row, col);
+          boolean same = (s == null) ? (value == null) : s.equals(value);
+          if (same == equal) out[found++] = row;
+        }
+      }
+      return found;
+    }
+
+    public String toString() {
+      return "(" + column + (equal ? " == " : " != ") + "\"" + value + "\")";
+    }
+  }
+
+
+  static class And extends TableExpression {
+    TableExpression a, b;
+
+    And(TableExpression a, TableExpression b) {
+      this.a = a;
+      this.b = b;
+    }
+
+    int select(Table table, int[] rows, int count, int[] out) {
+      int found = a.select(table, rows, count, out);
+      return b.select(table, out, found, out);
+    }
+
+    public String toString() {
+      return "(" + a + " and " + b + ")";
+    }
+  }
+
+
+  static class Or extends TableExpression {
+    TableExpression a, b;
+
+    Or(TableExpression a, TableExpression b) {
+      this.a = a;
+      this.b = b;
+    }
+
+    int select(Table table, int[] rows, int count, int[] out) {
+      int[] first = new int[count];
+      int firstCount = a.select(table, rows, count, first);
+      // only test the rows that didn't already match
+      int[] second = new int[count - firstCount];
+      int secondCount = 0;
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+        int row = row(rows, i);
+        if (j < firstCount && first[j] == row) {
+          j++;
+        } else {
+          second[secondCount++] = row;
+        }
+      }
+      secondCount = b.select(table, second, secondCount, second);
+
+      // merge the two back into row order
+      int found = 0;
+      int i = 0;
+      j = 0;
+      while (i < firstCount || j < secondCount) {
+        if (j == secondCount || (i < firstCount && first[i] < second[j])) {
+          out[found++] = first[i++];
+        } else {
+          out[found++] = second[j++];
+        }
+      }
+      return found;
+    }
+
+    public String toString() {
+      return "(" + a + " or " + b + ")";
+    }
+  }
+
+
+  static class Not extends TableExpression {
+    TableExpression a;
+
+    Not(TableExpression a) {
+      this.a = a;
+    }
+
+    int select(Table table, int[] rows, int count, int[] out) {
+      int[] matched = new int[count];
+      int matchCount = a.select(table, rows, count, matched);
+      int found = 0;
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+        int row = row(rows, i);
+        if (j < matchCount && matched[j] == row) {
+          j++;
+        } else {
+          out[found++] = row;
+        }
+      }
+      return found;
+    }
+
+    public String toString() {
+      return "(not " + a + ")";
+    }
+  }
+}
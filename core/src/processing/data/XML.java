@@ -24,6 +24,9 @@
 package processing.data;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.xml.parsers.*;
 
@@ -52,8 +55,8 @@ public class XML implements Serializable {
   /** The internal representation, a DOM node. */
   protected Node node;
 
-//  /** Cached locally because it's used often. */
-//  protected String name;
+  /** Cached locally because it's used often. */
+  protected String name;
 
   /** The parent element. */
   protected XML parent;
@@ -61,6 +64,14 @@ public class XML implements Serializable {
   /** Child elements, once loaded. */
   protected XML[] children;
 
+  /**
+   * Children grouped by name, so getChild(name) and getChildren(name) don't
+   * have to go through all the kids each time. Built the first time they're
+   * used, and cleared whenever the children (or their names) change.
+   */
+  private StringIndex childNames;
+  private XML[][] childGroups;
+
   /**
    * @nowebref
    */
@@ -255,6 +266,126 @@ public class XML implements Serializable {
   }
 
 
+  /**
+   * Handles each of the elements read by XML.stream().
+   */
+  public interface StreamHandler {
+    public void element(XML xml);
+  }
+
+
+  /**
+   * Read a large file a piece at a time, passing each element that matches
+   * the path to the handler. The path works like getChildren("node/tag"),
+   * starting below the root element. Only the matching elements (and
+   * everything inside them) are loaded, each in turn, rather than the whole
+   * file at once. They have no parent, since the rest of the file is not
+   * kept around.
+   *
+   * @nowebref
+   */
+  static public void stream(File file, String path,
+                            StreamHandler handler) throws IOException {
+    InputStream input = PApplet.createInput(file);
+    if (input == null) {
+      throw new FileNotFoundException(file.getAbsolutePath());
+    }
+    stream(input, path, handler);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public void stream(InputStream input, String path,
+                            StreamHandler handler) throws IOException {
+    stream(new XMLStream(input, path), handler);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public void stream(Reader reader, String path,
+                            StreamHandler handler) throws IOException {
+    stream(new XMLStream(reader, path), handler);
+  }
+
+
+  static private void stream(XMLStream stream,
+                             StreamHandler handler) throws IOException {
+    try {
+      XML xml;
+      while ((xml = stream.next()) != null) {
+        handler.element(xml);
+      }
+    } finally {
+      stream.close();
+    }
+  }
+
+
+  /**
+   * Same as stream() with a handler, but for use with a 'for' loop:
+   * <pre>
+   * for (XML tag : XML.stream(createInput("map.osm"), "node/tag")) {
+   *   println(tag.getString("k"));
+   * }
+   * </pre>
+   * The input is closed once the last element has been read. The result
+   * can only be used for a single loop.
+   *
+   * @nowebref
+   */
+  static public Iterable<XML> stream(InputStream input, String path) throws IOException {
+    return iterable(new XMLStream(input, path));
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public Iterable<XML> stream(Reader reader, String path) throws IOException {
+    return iterable(new XMLStream(reader, path));
+  }
+
+
+  static private Iterable<XML> iterable(final XMLStream stream) {
+    return new Iterable<XML>() {
+      @Override
+      public Iterator<XML> iterator() {
+        return new Iterator<XML>() {
+          XML upcoming;
+
+          public boolean hasNext() {
+            if (upcoming == null) {
+              try {
+                upcoming = stream.next();
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            }
+            return upcoming != null;
+          }
+
+          public XML next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            XML outgoing = upcoming;
+            upcoming = null;
+            return outgoing;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+
 //  protected boolean save(OutputStream output) {
 //    return write(PApplet.createWriter(output));
 //  }
@@ -311,8 +442,10 @@ public class XML implements Serializable {
    * @return the name, or null if the element only contains #PCDATA.
    */
   public String getName() {
-//    return name;
-    return node.getNodeName();
+    if (name == null) {
+      name = node.getNodeName();
+    }
+    return name;
   }
 
   /**
@@ -322,7 +455,10 @@ public class XML implements Serializable {
   public void setName(String newName) {
     Document document = node.getOwnerDocument();
     node = document.renameNode(node, null, newName);
-//    name = node.getNodeName();
+    name = node.getNodeName();
+    if (parent != null) {
+      parent.childNames = null;
+    }
   }
 
 
@@ -353,6 +489,47 @@ public class XML implements Serializable {
   }
 
 
+  /** Group the children by name, if that hasn't been done already. */
+  private void checkChildNames() {
+    if (childNames == null) {
+      checkChildren();
+      StringIndex index = new StringIndex(children.length);
+      int[] group = new int[children.length];
+      int[] counts = new int[children.length];
+      int groupCount = 0;
+      for (int i = 0; i < children.length; i++) {
+        String kidName = children[i].getName();
+        int g = index.get(kidName);
+        if (g == -1) {
+          g = groupCount++;
+          index.put(kidName, g);
+        }
+        group[i] = g;
+        counts[g]++;
+      }
+      XML[][] groups = new XML[groupCount][];
+      for (int g = 0; g < groupCount; g++) {
+        groups[g] = new XML[counts[g]];
+        counts[g] = 0;
+      }
+      for (int i = 0; i < children.length; i++) {
+        int g = group[i];
+        groups[g][counts[g]++] = children[i];
+      }
+      childGroups = groups;
+      childNames = index;
+    }
+  }
+
+
+  /** Children with this name (not a path), or null if there are none. */
+  private XML[] childGroup(String name) {
+    checkChildNames();
+    int g = childNames.get(name);
+    return (g == -1) ? null : childGroups[g];
+  }
+
+
   /**
    * Returns the number of children.
    *
@@ -449,15 +626,8 @@ public class XML implements Serializable {
     if (name.indexOf('/') != -1) {
       return getChildRecursive(PApplet.split(name, '/'), 0);
     }
-    int childCount = getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
-        return kid;
-      }
-    }
-    return null;
+    XML[] group = childGroup(name);
+    return (group == null) ? null : group[0];
   }
 
 
@@ -479,19 +649,15 @@ public class XML implements Serializable {
         return kid.getChildRecursive(items, offset+1);
       }
     }
-    int childCount = getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(items[offset])) {
-        if (offset == items.length-1) {
-          return kid;
-        } else {
-          return kid.getChildRecursive(items, offset+1);
-        }
-      }
+    XML[] group = childGroup(items[offset]);
+    if (group == null) {
+      return null;
+    }
+    if (offset == items.length-1) {
+      return group[0];
+    } else {
+      return group[0].getChildRecursive(items, offset+1);
     }
-    return null;
   }
 
 
@@ -515,17 +681,9 @@ public class XML implements Serializable {
     if (Character.isDigit(name.charAt(0))) {
       return new XML[] { getChild(Integer.parseInt(name)) };
     }
-    int childCount = getChildCount();
-    XML[] matches = new XML[childCount];
-    int matchCount = 0;
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
-        matches[matchCount++] = kid;
-      }
-    }
-    return (XML[]) PApplet.subset(matches, 0, matchCount);
+    XML[] group = childGroup(name);
+    // a copy, since the caller is free to change what's in the array
+    return (group == null) ? new XML[0] : group.clone();
   }
 
 
@@ -533,13 +691,26 @@ public class XML implements Serializable {
     if (offset == items.length-1) {
       return getChildren(items[offset]);
     }
-    XML[] matches = getChildren(items[offset]);
-    XML[] outgoing = new XML[0];
-    for (int i = 0; i < matches.length; i++) {
-      XML[] kidMatches = matches[i].getChildrenRecursive(items, offset+1);
-      outgoing = (XML[]) PApplet.concat(outgoing, kidMatches);
+    ArrayList<XML> outgoing = new ArrayList<XML>();
+    addChildrenRecursive(items, offset, outgoing);
+    return outgoing.toArray(new XML[outgoing.size()]);
+  }
+
+
+  /** Adds the matches to the list, rather than concatenating arrays. */
+  private void addChildrenRecursive(String[] items, int offset,
+                                    ArrayList<XML> outgoing) {
+    if (offset == items.length-1) {
+      XML[] matches = getChildren(items[offset]);
+      for (XML match : matches) {
+        outgoing.add(match);
+      }
+    } else {
+      XML[] matches = getChildren(items[offset]);
+      for (XML match : matches) {
+        match.addChildrenRecursive(items, offset+1, outgoing);
+      }
     }
-    return outgoing;
   }
 
 
@@ -568,6 +739,7 @@ public class XML implements Serializable {
     if (children != null) {
       children = (XML[]) PApplet.concat(children, new XML[] { newbie });
     }
+    childNames = null;
     return newbie;
   }
 
@@ -579,6 +751,7 @@ public class XML implements Serializable {
   public void removeChild(XML kid) {
     node.removeChild(kid.node);
     children = null;  // TODO not efficient
+    childNames = null;
   }
 
 
@@ -926,6 +1099,8 @@ public class XML implements Serializable {
    */
   public void setContent(String text) {
     node.setTextContent(text);
+    children = null;  // replaced by a single text node
+    childNames = null;
   }
 
 
@@ -0,0 +1,270 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty
+  of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  See the GNU Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import processing.core.PApplet;
+
+
+/**
+ * Reads an XML file with StAX, a piece at a time, and hands back only the
+ * elements that match a path (like the one passed to getChildren()) as
+ * XML objects of their own. Everything else is skipped without being
+ * loaded, so memory use depends on the size of the matching elements,
+ * not the size of the file. Used by XML.stream().
+ */
+class XMLStream implements Closeable {
+  static XMLInputFactory factory;
+  static DocumentBuilder builder;
+
+  XMLStreamReader reader;
+  Closeable input;
+  String[] path;
+
+  /** Number of elements currently open, all of which match the path. */
+  int depth;
+  boolean done;
+
+
+  XMLStream(InputStream input, String path) throws IOException {
+    try {
+      this.input = input;
+      init(getFactory().createXMLStreamReader(input), path);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+
+  XMLStream(Reader input, String path) throws IOException {
+    try {
+      this.input = input;
+      init(getFactory().createXMLStreamReader(input), path);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+
+  private void init(XMLStreamReader reader, String path) {
+    this.reader = reader;
+    if (path.length() == 0) {
+      throw new IllegalArgumentException("stream() needs the path of the elements to read");
+    }
+    if (path.charAt(0) == '/') {
+      throw new IllegalArgumentException("stream() should not begin with a slash");
+    }
+    this.path = PApplet.split(path, '/');
+  }
+
+
+  static synchronized private XMLInputFactory getFactory() {
+    if (factory == null) {
+      factory = XMLInputFactory.newInstance();
+      // element and attribute names keep their prefixes, same as the DOM
+      // version, which isn't namespace aware either
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+      try {
+        // keep CDATA sections, as the DOM version does
+        factory.setProperty("http://java.sun.com/xml/stream/properties/report-cdata-event", Boolean.TRUE);
+      } catch (IllegalArgumentException e) {
+        // ignore this; only the JDK's parser has it
+      }
+      // Don't download DTDs (also the reason for the load-external-dtd
+      // setting when parsing with the DocumentBuilder).
+      factory.setXMLResolver(new XMLResolver() {
+        public Object resolveEntity(String publicID, String systemID,
+                                    String baseURI, String namespace) {
+          return new ByteArrayInputStream(new byte[0]);
+        }
+      });
+    }
+    return factory;
+  }
+
+
+  static synchronized private Document newDocument() {
+    try {
+      if (builder == null) {
+        builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      }
+      return builder.newDocument();
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Returns the next element that matches the path, or null when the end of
+   * the file has been reached (and the input has been closed).
+   */
+  XML next() throws IOException {
+    if (done) {
+      return null;
+    }
+    try {
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          if (depth == 0) {
+            depth = 1;  // the root element, the path starts below it
+
+          } else if (elementName().equals(path[depth-1])) {
+            if (depth == path.length) {
+              return new XML(null, readElement(newDocument()));
+            }
+            depth++;
+
+          } else {
+            skipElement();
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+      close();
+      return null;
+
+    } catch (XMLStreamException e) {
+      close();
+      throw new IOException(e);
+    }
+  }
+
+
+  /** Skip past the END_ELEMENT for the START_ELEMENT that was just read. */
+  private void skipElement() throws XMLStreamException {
+    int level = 1;
+    while (level != 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        level++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        level--;
+      }
+    }
+  }
+
+
+  /**
+   * Build a DOM element from the START_ELEMENT that was just read, along
+   * with everything inside it, through to its END_ELEMENT.
+   */
+  private Element readElement(Document document) throws XMLStreamException {
+    Element top = createElement(document);
+    Node current = top;
+    while (current != null) {
+      int event = reader.next();
+      switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        current = current.appendChild(createElement(document));
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        current = (current == top) ? null : current.getParentNode();
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+      case XMLStreamConstants.ENTITY_REFERENCE:
+        current.appendChild(document.createTextNode(reader.getText()));
+        break;
+      case XMLStreamConstants.CDATA:
+        current.appendChild(document.createCDATASection(reader.getText()));
+        break;
+      case XMLStreamConstants.COMMENT:
+        current.appendChild(document.createComment(reader.getText()));
+        break;
+      case XMLStreamConstants.PROCESSING_INSTRUCTION:
+        current.appendChild(document.createProcessingInstruction(reader.getPITarget(),
+                                                                 reader.getPIData()));
+        break;
+      }
+    }
+    return top;
+  }
+
+
+  private Element createElement(Document document) {
+    Element element = document.createElement(elementName());
+    int count = reader.getAttributeCount();
+    for (int i = 0; i < count; i++) {
+      element.setAttribute(prefixed(reader.getAttributePrefix(i),
+                                    reader.getAttributeLocalName(i)),
+                           reader.getAttributeValue(i));
+    }
+    return element;
+  }
+
+
+  private String elementName() {
+    return prefixed(reader.getPrefix(), reader.getLocalName());
+  }
+
+
+  /**
+   * Put the prefix back on a name, so that it's the same as the name from
+   * the DOM version. (The JDK's parser leaves the prefix on element names
+   * but splits it off attribute names, like x:v or xmlns:x.)
+   */
+  static private String prefixed(String prefix, String name) {
+    if (prefix == null || prefix.length() == 0) {
+      return name;
+    }
+    if (name.length() == 0) {
+      return prefix;
+    }
+    return prefix + ":" + name;
+  }
+
+
+  public void close() throws IOException {
+    if (!done) {
+      done = true;
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // ignored, the input is closed below either way
+      }
+      input.close();
+    }
+  }
+}
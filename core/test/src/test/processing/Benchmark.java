@@ -0,0 +1,68 @@
+package test.processing;
+
+
+/**
+ * Bare-bones timing for the *Benchmark classes in this tree, which are run
+ * with "ant benchmark" (or on their own, with an optional size argument).
+ * Each one is run a few times first so that the JIT has compiled it, then
+ * timed several more, and the fastest and median times are printed.
+ * There's no forking or dead code analysis like JMH does, so only compare
+ * numbers that came from the same run.
+ */
+public abstract class Benchmark {
+  static public int warmups = 5;
+  static public int runs = 10;
+
+  /** Results go here, so the JIT can't decide the work isn't needed. */
+  static public volatile Object sink;
+
+  protected final String name;
+
+
+  public Benchmark(String name) {
+    this.name = name;
+  }
+
+
+  /** Called before every run (warmups too), and not counted in the time. */
+  protected void setup() throws Exception { }
+
+
+  /** The work to be timed. Return the result, if there is one. */
+  protected abstract Object run() throws Exception;
+
+
+  /** Returns the time for each run in milliseconds, after the warmups. */
+  public double[] measure() throws Exception {
+    for (int i = 0; i < warmups; i++) {
+      setup();
+      sink = run();
+    }
+    double[] times = new double[runs];
+    for (int i = 0; i < runs; i++) {
+      setup();
+      long t = System.nanoTime();
+      sink = run();
+      times[i] = (System.nanoTime() - t) / 1e6;
+    }
+    return times;
+  }
+
+
+  /** Measure each of these in turn, and print a line for each. */
+  static public void run(String title, Benchmark... list) throws Exception {
+    System.out.println(title);
+    for (Benchmark b : list) {
+      double[] times = b.measure();
+      java.util.Arrays.sort(times);
+      System.out.println(String.format("  %-36s best %9.2f ms   median %9.2f ms",
+                                       b.name, times[0], times[times.length / 2]));
+    }
+  }
+
+
+  /** The first command line argument if there is one, or else fallback. */
+  static public int size(String[] args, int fallback) {
+    return (args.length > 0) ? Integer.parseInt(args[0]) : fallback;
+  }
+}
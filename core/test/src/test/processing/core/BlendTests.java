@@ -0,0 +1,106 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+
+/**
+ * Checks blend() and copy() against the output of the original blitter.
+ * The checksums in blend.expected were made with the code from before
+ * blit_resize() was split up into batched rows, so any change to the
+ * pixels (for any mode, scaled or not, clipped, or blending an image into
+ * itself) shows up here.
+ */
+public class BlendTests implements PConstants {
+  static final int[] MODES = {
+    REPLACE, BLEND, ADD, SUBTRACT, LIGHTEST, DARKEST, DIFFERENCE, EXCLUSION,
+    MULTIPLY, SCREEN, OVERLAY, HARD_LIGHT, SOFT_LIGHT, DODGE, BURN
+  };
+  static final String[] MODE_NAMES = {
+    "REPLACE", "BLEND", "ADD", "SUBTRACT", "LIGHTEST", "DARKEST", "DIFFERENCE",
+    "EXCLUSION", "MULTIPLY", "SCREEN", "OVERLAY", "HARD_LIGHT", "SOFT_LIGHT",
+    "DODGE", "BURN"
+  };
+
+  // name, then source x, y, w, h, and destination x, y, w, h
+  static final String[] CASE_NAMES = {
+    "copy", "offset", "clipped", "up", "down", "stretch", "self", "apart", "large"
+  };
+  static final int[][] CASES = {
+    { 0, 0, 64, 48,  0, 0, 64, 48 },
+    { 5, 7, 40, 30,  11, 3, 40, 30 },
+    { 10, 4, 50, 40,  -13, -9, 50, 40 },
+    { 3, 2, 20, 15,  0, 0, 61, 47 },
+    { 0, 0, 64, 48,  7, 5, 29, 17 },
+    { 8, 1, 33, 40,  2, 6, 60, 9 },
+    { 0, 0, 40, 30,  9, 6, 40, 30 },
+    { 0, 0, 20, 20,  40, 24, 23, 19 },
+    { 0, 0, 320, 240,  0, 0, 400, 300 }
+  };
+
+
+  static PImage noise(int w, int h, int format, long seed) {
+    Random random = new Random(seed);
+    PImage image = new PImage(w, h, format);
+    for (int i = 0; i < image.pixels.length; i++) {
+      image.pixels[i] = random.nextInt();
+    }
+    return image;
+  }
+
+
+  static String checksum(int[] pixels) {
+    CRC32 crc = new CRC32();
+    for (int c : pixels) {
+      crc.update(c >>> 24);
+      crc.update(c >>> 16);
+      crc.update(c >>> 8);
+      crc.update(c);
+    }
+    return Long.toHexString(crc.getValue());
+  }
+
+
+  static String results() {
+    StringBuilder sb = new StringBuilder();
+    for (int m = 0; m < MODES.length; m++) {
+      for (int k = 0; k < CASES.length; k++) {
+        int[] c = CASES[k];
+        boolean large = CASE_NAMES[k].equals("large");
+        PImage dest = large ?
+          noise(400, 300, RGB, k) : noise(64, 48, (m % 2 == 0) ? ARGB : RGB, k);
+        boolean self = CASE_NAMES[k].equals("self") ||
+          CASE_NAMES[k].equals("apart");
+        PImage src = self ?
+          dest : noise(large ? 320 : 64, large ? 240 : 48, ARGB, 100 + k);
+        if (MODES[m] == REPLACE) {
+          dest.copy(src, c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+        } else {
+          dest.blend(src, c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7],
+                     MODES[m]);
+        }
+        sb.append(MODE_NAMES[m] + " " + CASE_NAMES[k] + " " +
+                  checksum(dest.pixels) + "\n");
+      }
+    }
+    return sb.toString();
+  }
+
+
+  @Test
+  public void matchesOriginal() {
+    assertEquals(TestUtil.read(TestUtil.res("blend.expected")), results());
+  }
+
+
+  static public void main(String[] args) {
+    System.out.print(results());
+  }
+}
@@ -0,0 +1,71 @@
+package test.processing.core;
+
+import java.util.Random;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+import test.processing.Benchmark;
+
+
+/**
+ * PImage.filter() at 720p, 1080p and 4K. Large images are split up across
+ * all of the processors, so to see the single-threaded times for the same
+ * machine, run this again with -XX:ActiveProcessorCount=1.
+ */
+public class FilterBenchmark implements PConstants {
+
+  static public void main(String[] args) throws Exception {
+    Benchmark.warmups = 3;
+    Benchmark.runs = 5;
+    int[][] sizes = { { 1280, 720 }, { 1920, 1080 }, { 3840, 2160 } };
+    for (int[] size : sizes) {
+      run(size[0], size[1]);
+    }
+  }
+
+
+  static void run(int width, int height) throws Exception {
+    Random random = new Random(0);
+    final int[] source = new int[width * height];
+    for (int i = 0; i < source.length; i++) {
+      source[i] = random.nextInt();
+    }
+    final PImage image = new PImage(width, height, ARGB);
+
+    class Filter extends Benchmark {
+      final int kind;
+      final float param;
+
+      Filter(String name, int kind, float param) {
+        super(name);
+        this.kind = kind;
+        this.param = param;
+      }
+
+      protected void setup() {
+        System.arraycopy(source, 0, image.pixels, 0, source.length);
+      }
+
+      protected Object run() {
+        if (Float.isNaN(param)) {
+          image.filter(kind);
+        } else {
+          image.filter(kind, param);
+        }
+        return image;
+      }
+    }
+
+    Benchmark.run("filter() at " + width + "x" + height + ", " +
+                  Runtime.getRuntime().availableProcessors() + " processors",
+                  new Filter("GRAY", GRAY, Float.NaN),
+                  new Filter("INVERT", INVERT, Float.NaN),
+                  new Filter("OPAQUE", OPAQUE, Float.NaN),
+                  new Filter("THRESHOLD", THRESHOLD, 0.5f),
+                  new Filter("POSTERIZE 4", POSTERIZE, 4),
+                  new Filter("ERODE", ERODE, Float.NaN),
+                  new Filter("DILATE", DILATE, Float.NaN),
+                  new Filter("BLUR 1", BLUR, 1),
+                  new Filter("BLUR 8", BLUR, 8));
+  }
+}
@@ -0,0 +1,71 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+
+/**
+ * Checks filter() against the output of the original, single-threaded
+ * filters. The checksums in filter.expected were made before the filters
+ * were split into passes that run in parallel, and before blur() stopped
+ * using kernel tables. The images are big enough to be split into bands
+ * when there's more than one processor. (The blur radius stays small
+ * enough for the kernel to fit inside the image, the original filter got
+ * larger ones wrong.)
+ */
+public class FilterTests implements PConstants {
+  static final int[] FORMATS = { RGB, ARGB, ALPHA };
+  static final String[] FORMAT_NAMES = { "RGB", "ARGB", "ALPHA" };
+
+  // kind, param (or -1 for none)
+  static final String[] FILTER_NAMES = {
+    "GRAY", "INVERT", "OPAQUE", "POSTERIZE 2", "POSTERIZE 5", "THRESHOLD",
+    "THRESHOLD 0.3", "ERODE", "DILATE", "BLUR", "BLUR 3", "BLUR 10", "BLUR 20"
+  };
+  static final int[] FILTERS = {
+    GRAY, INVERT, OPAQUE, POSTERIZE, POSTERIZE, THRESHOLD,
+    THRESHOLD, ERODE, DILATE, BLUR, BLUR, BLUR, BLUR
+  };
+  static final float[] PARAMS = {
+    -1, -1, -1, 2, 5, -1,
+    0.3f, -1, -1, -1, 3, 10, 20
+  };
+
+
+  static String results() {
+    StringBuilder sb = new StringBuilder();
+    for (int f = 0; f < FILTERS.length; f++) {
+      for (int k = 0; k < FORMATS.length; k++) {
+        PImage image = BlendTests.noise(320, 240, FORMATS[k], 10*f + k);
+        if (FORMATS[k] == ALPHA) {
+          for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] &= 0xff;
+          }
+        }
+        if (PARAMS[f] == -1) {
+          image.filter(FILTERS[f]);
+        } else {
+          image.filter(FILTERS[f], PARAMS[f]);
+        }
+        sb.append(FILTER_NAMES[f] + " " + FORMAT_NAMES[k] + " " +
+                  BlendTests.checksum(image.pixels) + "\n");
+      }
+    }
+    return sb.toString();
+  }
+
+
+  @Test
+  public void matchesOriginal() {
+    assertEquals(TestUtil.read(TestUtil.res("filter.expected")), results());
+  }
+
+
+  static public void main(String[] args) {
+    System.out.print(results());
+  }
+}
@@ -0,0 +1,37 @@
+package test.processing.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+
+public class TestUtil {
+  private static final String RESOURCES = "test/resources/";
+
+
+  static File res(String resourceName) {
+    return new File(RESOURCES, resourceName);
+  }
+
+
+  static String read(File f) {
+    try {
+      Reader reader = new InputStreamReader(new FileInputStream(f), "UTF-8");
+      try {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+          sb.append(buffer, 0, count);
+        }
+        return sb.toString().replace("\r", "");
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
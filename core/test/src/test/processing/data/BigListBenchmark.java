@@ -0,0 +1,135 @@
+package test.processing.data;
+
+import java.util.Random;
+
+import processing.data.BigFloatList;
+import processing.data.FloatList;
+import processing.data.Table;
+import test.processing.Benchmark;
+
+
+/**
+ * Filling, reading, and sorting a BigFloatList next to a FloatList of the
+ * same size, and getting a Table column as one without copying it.
+ */
+public class BigListBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    final int n = Benchmark.size(args, 1 << 24);
+    Benchmark.warmups = 2;
+    Benchmark.runs = 5;
+
+    Random random = new Random(0);
+    final float[] values = new float[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = random.nextFloat();
+    }
+    final FloatList small = new FloatList(values);
+    final BigFloatList big = new BigFloatList();
+    big.append(values);
+
+    final Table table = new Table();
+    table.addColumn("x", Table.FLOAT);
+    table.setRowCount(n);
+    for (int row = 0; row < n; row++) {
+      table.setFloat(row, 0, values[row]);
+    }
+
+    Benchmark.run("Big lists, " + n + " values",
+      new Benchmark("FloatList append()") {
+        protected Object run() {
+          FloatList list = new FloatList();
+          for (int i = 0; i < n; i++) {
+            list.append(values[i]);
+          }
+          return list;
+        }
+      },
+      new Benchmark("BigFloatList append()") {
+        protected Object run() {
+          BigFloatList list = new BigFloatList();
+          for (int i = 0; i < n; i++) {
+            list.append(values[i]);
+          }
+          return list;
+        }
+      },
+      new Benchmark("BigFloatList append(float[]) blocks") {
+        protected Object run() {
+          BigFloatList list = new BigFloatList();
+          for (int i = 0; i < n; i += 4096) {
+            list.append(values, i, Math.min(4096, n - i));
+          }
+          return list;
+        }
+      },
+      new Benchmark("FloatList get() loop") {
+        protected Object run() {
+          double sum = 0;
+          for (int i = 0; i < n; i++) {
+            sum += small.get(i);
+          }
+          return sum;
+        }
+      },
+      new Benchmark("BigFloatList get() loop") {
+        protected Object run() {
+          double sum = 0;
+          for (long i = 0; i < n; i++) {
+            sum += big.get(i);
+          }
+          return sum;
+        }
+      },
+      new Benchmark("FloatList sum()") {
+        protected Object run() {
+          return small.sum();
+        }
+      },
+      new Benchmark("BigFloatList sum()") {
+        protected Object run() {
+          return big.sum();
+        }
+      },
+      new Benchmark("BigFloatList max()") {
+        protected Object run() {
+          return big.max();
+        }
+      },
+      new Benchmark("FloatList sort()") {
+        FloatList list;
+
+        protected void setup() {
+          list = new FloatList(values);
+        }
+
+        protected Object run() {
+          list.sort();
+          return list;
+        }
+      },
+      new Benchmark("BigFloatList sort()") {
+        BigFloatList list;
+
+        protected void setup() {
+          list = new BigFloatList();
+          list.append(values);
+        }
+
+        protected Object run() {
+          list.sort();
+          return list;
+        }
+      },
+      new Benchmark("Table getFloatList() (copy)") {
+        protected Object run() {
+          return table.getFloatList(0);
+        }
+      },
+      new Benchmark("Table getBigFloatList() (shared)") {
+        protected Object run() {
+          return table.getBigFloatList(0);
+        }
+      });
+  }
+}
@@ -0,0 +1,111 @@
+package test.processing.data;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import processing.data.FloatDict;
+import processing.data.IntDict;
+import processing.data.StringDict;
+import test.processing.Benchmark;
+
+
+/**
+ * Counting words and then removing half of them, with IntDict, FloatDict
+ * and StringDict, next to a HashMap&lt;String, Integer&gt; doing the same
+ * (which is what the dictionaries used to keep as their index).
+ */
+public class DictBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    final int n = Benchmark.size(args, 1000000);
+    Random random = new Random(0);
+    final String[] words = new String[n];
+    for (int i = 0; i < n; i++) {
+      words[i] = "w" + random.nextInt(n / 4);
+    }
+    // the distinct words, in the order they first show up
+    final String[] keys;
+    {
+      IntDict seen = new IntDict();
+      for (String word : words) {
+        seen.increment(word);
+      }
+      keys = seen.keyArray();
+    }
+
+    Benchmark.run("Dictionaries, " + n + " words, " + keys.length + " distinct",
+      new Benchmark("HashMap<String, Integer> count") {
+        protected Object run() {
+          HashMap<String, Integer> map = new HashMap<String, Integer>();
+          for (String word : words) {
+            Integer count = map.get(word);
+            map.put(word, (count == null) ? 1 : count + 1);
+          }
+          return map;
+        }
+      },
+      new Benchmark("IntDict.increment()") {
+        protected Object run() {
+          IntDict dict = new IntDict();
+          for (String word : words) {
+            dict.increment(word);
+          }
+          return dict;
+        }
+      },
+      new Benchmark("FloatDict.add()") {
+        protected Object run() {
+          FloatDict dict = new FloatDict();
+          for (String word : words) {
+            dict.add(word, 1);
+          }
+          return dict;
+        }
+      },
+      new Benchmark("StringDict.set() and get()") {
+        protected Object run() {
+          StringDict dict = new StringDict();
+          for (String word : words) {
+            if (dict.get(word) == null) {
+              dict.set(word, word);
+            }
+          }
+          return dict;
+        }
+      },
+      new Benchmark("IntDict remove() half the keys") {
+        IntDict dict;
+
+        protected void setup() {
+          dict = new IntDict();
+          for (String key : keys) {
+            dict.set(key, 1);
+          }
+        }
+
+        protected Object run() {
+          for (int i = 0; i < keys.length; i += 2) {
+            dict.remove(keys[i]);
+          }
+          return dict.size();
+        }
+      },
+      new Benchmark("StringDict remove() half the keys") {
+        StringDict dict;
+
+        protected void setup() {
+          dict = new StringDict();
+          for (String key : keys) {
+            dict.set(key, key);
+          }
+        }
+
+        protected Object run() {
+          for (int i = 0; i < keys.length; i += 2) {
+            dict.remove(keys[i]);
+          }
+          return dict.size();
+        }
+      });
+  }
+}
@@ -0,0 +1,142 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.data.IntFloatDict;
+import processing.data.IntIntDict;
+import processing.data.LongObjectDict;
+
+
+/**
+ * Random adds and removes checked against a LinkedHashMap, which keeps its
+ * entries in the same order as the dictionaries do.
+ */
+public class DictTests {
+  static final int STEPS = 20000;
+
+
+  @Test
+  public void intInt() {
+    Random random = new Random(1);
+    IntIntDict dict = new IntIntDict();
+    Map<Integer, Integer> model = new LinkedHashMap<Integer, Integer>();
+    for (int step = 0; step < STEPS; step++) {
+      int key = random.nextInt(200);
+      switch (random.nextInt(6)) {
+      case 0:
+      case 1:
+        dict.set(key, step);
+        model.put(key, step);
+        break;
+      case 2:
+        assertEquals(indexOf(model, key), dict.remove(key));
+        model.remove(key);
+        break;
+      case 3:
+        if (model.size() != 0) {
+          int index = random.nextInt(model.size());
+          int expected = new ArrayList<Integer>(model.keySet()).get(index);
+          assertEquals(expected, dict.removeIndex(index));
+          model.remove(expected);
+        }
+        break;
+      case 4:
+        assertEquals(indexOf(model, key), dict.index(key));
+        break;
+      default:
+        assertEquals(model.containsKey(key) ? model.get(key) : 0, dict.get(key));
+      }
+      assertEquals(model.size(), dict.size());
+    }
+    int[] keys = new int[model.size()];
+    int[] values = new int[model.size()];
+    int i = 0;
+    for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+      keys[i] = e.getKey();
+      values[i++] = e.getValue();
+    }
+    assertArrayEquals(keys, dict.keyArray());
+    assertArrayEquals(values, dict.valueArray());
+  }
+
+
+  @Test
+  public void intFloat() {
+    Random random = new Random(2);
+    IntFloatDict dict = new IntFloatDict();
+    Map<Integer, Float> model = new LinkedHashMap<Integer, Float>();
+    for (int step = 0; step < STEPS; step++) {
+      int key = random.nextInt(200);
+      if (random.nextInt(3) == 0) {
+        assertEquals(indexOf(model, key), dict.remove(key));
+        model.remove(key);
+      } else {
+        dict.set(key, step);
+        model.put(key, (float) step);
+      }
+      assertEquals(model.size(), dict.size());
+    }
+    int i = 0;
+    for (Map.Entry<Integer, Float> e : model.entrySet()) {
+      assertEquals(e.getKey().intValue(), dict.key(i));
+      assertEquals(e.getValue(), dict.value(i), 0);
+      i++;
+    }
+    // removing everything through the iterator leaves it empty
+    dict.remove(-1);
+    java.util.Iterator<Integer> it = dict.keyIterator();
+    while (it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+    assertEquals(0, dict.size());
+  }
+
+
+  @Test
+  public void longObject() {
+    Random random = new Random(3);
+    LongObjectDict<String> dict = new LongObjectDict<String>();
+    Map<Long, String> model = new LinkedHashMap<Long, String>();
+    for (int step = 0; step < STEPS; step++) {
+      long key = (1L << 40) + random.nextInt(200);
+      if (random.nextInt(3) == 0) {
+        assertEquals(indexOf(model, key), dict.remove(key));
+        model.remove(key);
+      } else {
+        dict.set(key, "v" + step);
+        model.put(key, "v" + step);
+      }
+      assertEquals(model.size(), dict.size());
+      assertEquals(model.get(key), dict.get(key));
+    }
+    dict.sortKeys();
+    List<Long> sorted = new ArrayList<Long>(model.keySet());
+    java.util.Collections.sort(sorted);
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(sorted.get(i).longValue(), dict.key(i));
+      assertEquals(model.get(sorted.get(i)), dict.value(i));
+    }
+  }
+
+
+  static <K> int indexOf(Map<K, ?> model, K key) {
+    int index = 0;
+    for (K k : model.keySet()) {
+      if (k.equals(key)) {
+        return index;
+      }
+      index++;
+    }
+    return -1;
+  }
+}
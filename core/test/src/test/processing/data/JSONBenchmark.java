@@ -0,0 +1,99 @@
+package test.processing.data;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+import processing.data.JSONWriter;
+import test.processing.Benchmark;
+
+
+/**
+ * Writing a large array of floats, and an array of small objects, through
+ * toString(), format(-1), write() to a file, and JSONWriter on its own.
+ */
+public class JSONBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    int n = Benchmark.size(args, 1000000);
+    Benchmark.warmups = 3;
+    Benchmark.runs = 5;
+
+    Random random = new Random(0);
+    final float[] values = new float[n];
+    final JSONArray floats = new JSONArray();
+    for (int i = 0; i < n; i++) {
+      values[i] = random.nextFloat() * 1000;
+      floats.append(values[i]);
+    }
+    final JSONArray records = new JSONArray();
+    for (int i = 0; i < n / 10; i++) {
+      JSONObject record = new JSONObject();
+      record.setInt("id", i);
+      record.setString("name", "record " + i);
+      record.setFloat("x", random.nextFloat());
+      record.setBoolean("visible", random.nextBoolean());
+      JSONArray tags = new JSONArray();
+      tags.append("a").append("b");
+      record.setJSONArray("tags", tags);
+      records.append(record);
+    }
+    final File file = File.createTempFile("bench", ".json");
+    file.deleteOnExit();
+
+    Benchmark.run("JSON writing, " + n + " floats",
+      new Benchmark("toString()") {
+        protected Object run() {
+          return floats.toString();
+        }
+      },
+      new Benchmark("format(-1)") {
+        protected Object run() {
+          return floats.format(-1);
+        }
+      },
+      new Benchmark("write() to a file") {
+        protected Object run() {
+          PrintWriter writer = PApplet.createWriter(file);
+          floats.write(writer, -1);
+          writer.close();
+          return file;
+        }
+      },
+      new Benchmark("JSONWriter to a file") {
+        protected Object run() throws Exception {
+          JSONWriter writer = new JSONWriter(PApplet.createWriter(file), -1);
+          writer.beginArray();
+          for (float value : values) {
+            writer.value(value);
+          }
+          writer.endArray();
+          writer.close();
+          return file;
+        }
+      });
+
+    Benchmark.run("JSON writing, " + records.size() + " objects",
+      new Benchmark("toString()") {
+        protected Object run() {
+          return records.toString();
+        }
+      },
+      new Benchmark("format(-1)") {
+        protected Object run() {
+          return records.format(-1);
+        }
+      },
+      new Benchmark("write() to a file") {
+        protected Object run() {
+          PrintWriter writer = PApplet.createWriter(file);
+          records.write(writer, -1);
+          writer.close();
+          return file;
+        }
+      });
+  }
+}
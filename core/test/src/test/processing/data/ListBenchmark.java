@@ -0,0 +1,156 @@
+package test.processing.data;
+
+import java.util.Random;
+
+import processing.data.FloatList;
+import processing.data.IntList;
+import test.processing.Benchmark;
+
+
+/**
+ * The whole-list operations on FloatList and IntList, next to the same work
+ * done one element at a time through the per-index methods.
+ */
+public class ListBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    final int n = Benchmark.size(args, 1 << 22);
+    Random random = new Random(0);
+    final float[] floats = new float[n];
+    final int[] ints = new int[n];
+    for (int i = 0; i < n; i++) {
+      floats[i] = random.nextFloat() * 1000;
+      ints[i] = random.nextInt();
+    }
+    final FloatList a = new FloatList(floats);
+    final FloatList b = new FloatList(floats);
+    final FloatList scratch = new FloatList(n);
+    final IntList intSorting = new IntList(n);
+
+    Benchmark.run("FloatList, " + n + " values",
+      new Benchmark("mult(index, amount) loop") {
+        protected Object run() {
+          for (int i = 0; i < n; i++) {
+            a.mult(i, 1.0001f);
+          }
+          return a;
+        }
+      },
+      new Benchmark("mult(amount)") {
+        protected Object run() {
+          a.mult(1.0001f);
+          return a;
+        }
+      },
+      new Benchmark("add(index, get(index)) loop") {
+        protected Object run() {
+          for (int i = 0; i < n; i++) {
+            a.add(i, b.get(i));
+          }
+          return a;
+        }
+      },
+      new Benchmark("add(FloatList)") {
+        protected Object run() {
+          a.add(b);
+          return a;
+        }
+      },
+      new Benchmark("sum()") {
+        protected Object run() {
+          return b.sum();
+        }
+      },
+      new Benchmark("prefixSum()") {
+        protected void setup() {
+          scratch.clear();
+          scratch.append(floats);
+        }
+        protected Object run() {
+          scratch.prefixSum();
+          return scratch;
+        }
+      },
+      new Benchmark("histogram(256)") {
+        protected Object run() {
+          return b.histogram(256);
+        }
+      },
+      new Benchmark("sort()") {
+        protected void setup() {
+          scratch.clear();
+          scratch.append(floats);
+        }
+        protected Object run() {
+          scratch.sort();
+          return scratch;
+        }
+      },
+      new Benchmark("parallelSort()") {
+        protected void setup() {
+          scratch.clear();
+          scratch.append(floats);
+        }
+        protected Object run() {
+          scratch.parallelSort();
+          return scratch;
+        }
+      },
+      new Benchmark("sortReverse()") {
+        protected void setup() {
+          scratch.clear();
+          scratch.append(floats);
+        }
+        protected Object run() {
+          scratch.sortReverse();
+          return scratch;
+        }
+      },
+      new Benchmark("parallelSortReverse()") {
+        protected void setup() {
+          scratch.clear();
+          scratch.append(floats);
+        }
+        protected Object run() {
+          scratch.parallelSortReverse();
+          return scratch;
+        }
+      },
+      new Benchmark("argsort()") {
+        protected Object run() {
+          return b.argsort();
+        }
+      });
+
+    Benchmark.run("IntList, " + n + " values",
+      new Benchmark("sort()") {
+        protected void setup() {
+          intSorting.clear();
+          intSorting.append(ints);
+        }
+        protected Object run() {
+          intSorting.sort();
+          return intSorting;
+        }
+      },
+      new Benchmark("parallelSort()") {
+        protected void setup() {
+          intSorting.clear();
+          intSorting.append(ints);
+        }
+        protected Object run() {
+          intSorting.parallelSort();
+          return intSorting;
+        }
+      },
+      new Benchmark("argsort()") {
+        protected void setup() {
+          intSorting.clear();
+          intSorting.append(ints);
+        }
+        protected Object run() {
+          return intSorting.argsort();
+        }
+      });
+  }
+}
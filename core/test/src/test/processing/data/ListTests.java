@@ -0,0 +1,62 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import processing.data.FloatList;
+import processing.data.IntList;
+
+
+public class ListTests {
+
+  static FloatList withNaN(int n) {
+    Random random = new Random(n);
+    FloatList list = new FloatList();
+    for (int i = 0; i < n; i++) {
+      list.append((i % 7 == 3) ? Float.NaN : random.nextFloat() - 0.5f);
+    }
+    return list;
+  }
+
+
+  static void checkReversed(FloatList list) {
+    int nan = 0;
+    for (int i = 0; i < list.size(); i++) {
+      float value = list.get(i);
+      if (Float.isNaN(value)) {
+        nan++;
+      } else {
+        assertEquals("number after a NaN at " + i, 0, nan);
+        if (i > 0) {
+          assertTrue("out of order at " + i, list.get(i - 1) >= value);
+        }
+      }
+    }
+    assertTrue(nan > 0);
+  }
+
+
+  /** NaN goes last when sorting either way, the same as argsort(). */
+  @Test
+  public void sortReverseNaNLast() {
+    // small enough for one thread, and big enough to be split up
+    for (int n : new int[] { 20, 1 << 17 }) {
+      FloatList list = withNaN(n);
+      list.sortReverse();
+      checkReversed(list);
+
+      list = withNaN(n);
+      list.parallelSortReverse();
+      checkReversed(list);
+
+      list = withNaN(n);
+      IntList order = list.argsort();
+      assertTrue(Float.isNaN(list.get(order.get(n - 1))));
+      assertTrue(!Float.isNaN(list.get(order.get(0))));
+    }
+  }
+}
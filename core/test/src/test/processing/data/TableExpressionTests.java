@@ -0,0 +1,69 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import processing.data.Table;
+
+
+public class TableExpressionTests {
+  // more than 2^53, where doubles stop holding every whole number
+  static final long BIG = (1L << 60) + 1;
+
+
+  static Table longTable() {
+    Table table = new Table();
+    table.addColumn("id", Table.LONG);
+    table.addColumn("n", Table.INT);
+    table.addColumn("x", Table.FLOAT);
+    table.setRowCount(4);
+    for (int row = 0; row < 4; row++) {
+      table.setLong(row, "id", BIG + row);
+      table.setInt(row, "n", row);
+      table.setFloat(row, "x", row * 0.5f);
+    }
+    return table;
+  }
+
+
+  @Test
+  public void longEquality() {
+    Table table = longTable();
+    assertArrayEquals(new int[] { 1 },
+                      table.findRowIndices(Table.col("id").eq(BIG + 1)));
+    assertArrayEquals(new int[] { 0, 2, 3 },
+                      table.findRowIndices(Table.col("id").ne(BIG + 1)));
+    assertArrayEquals(new int[] { 2, 3 },
+                      table.findRowIndices(Table.col("id").gt(BIG + 1)));
+    // column against column
+    assertArrayEquals(new int[] { 0, 1, 2, 3 },
+                      table.findRowIndices(Table.col("id").sub(Table.col("n")).eq(BIG)));
+  }
+
+
+  @Test
+  public void longDerive() {
+    Table table = longTable();
+    table.derive("next", Table.col("id").add(Table.col("n")).add(1));
+    assertEquals(Table.LONG, table.getColumnType("next"));
+    for (int row = 0; row < 4; row++) {
+      assertEquals(BIG + 2*row + 1, table.getLong(row, "next"));
+    }
+    table.derive("twice", Table.col("n").mul(2));
+    assertEquals(Table.INT, table.getColumnType("twice"));
+    assertEquals(6, table.getInt(3, "twice"));
+  }
+
+
+  @Test
+  public void mixedTypes() {
+    Table table = longTable();
+    table.derive("y", Table.col("x").mul(2).add(1));
+    assertEquals(Table.FLOAT, table.getColumnType("y"));
+    assertEquals(4, table.getFloat(3, "y"), 0);
+    assertArrayEquals(new int[] { 2, 3 },
+                      table.findRowIndices(Table.col("x").ge(1)));
+  }
+}
@@ -0,0 +1,95 @@
+package test.processing.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.data.Table;
+import test.processing.Benchmark;
+
+
+/**
+ * Loading a large CSV and TSV file with the column tokenizer, with the
+ * parallel and 'newlines' options, and the way it used to be done: one
+ * line at a time with readLine() and split(), then setString() for each
+ * field.
+ */
+public class TableLoadBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    int rows = Benchmark.size(args, 1000000);
+    Benchmark.warmups = 2;
+    Benchmark.runs = 5;
+
+    final File csv = File.createTempFile("bench", ".csv");
+    final File tsv = File.createTempFile("bench", ".tsv");
+    csv.deleteOnExit();
+    tsv.deleteOnExit();
+    write(csv, ',', rows);
+    write(tsv, '\t', rows);
+
+    Benchmark.run("Table loading, " + rows + " rows",
+      new Benchmark("readLine() and split() (old way)") {
+        protected Object run() throws Exception {
+          Table table = new Table();
+          BufferedReader reader = PApplet.createReader(csv);
+          String[] titles = PApplet.split(reader.readLine(), ',');
+          table.setColumnTitles(titles);
+          int row = 0;
+          String line;
+          while ((line = reader.readLine()) != null) {
+            String[] pieces = PApplet.split(line, ',');
+            if (row == table.getRowCount()) {
+              table.setRowCount(Math.max(10, row << 1));
+            }
+            for (int col = 0; col < pieces.length; col++) {
+              table.setString(row, col, pieces[col]);
+            }
+            row++;
+          }
+          reader.close();
+          table.setRowCount(row);
+          return table;
+        }
+      },
+      new Benchmark("csv") {
+        protected Object run() throws Exception {
+          return new Table(csv, "header");
+        }
+      },
+      new Benchmark("tsv") {
+        protected Object run() throws Exception {
+          return new Table(tsv, "header");
+        }
+      },
+      new Benchmark("csv, newlines") {
+        protected Object run() throws Exception {
+          return new Table(csv, "header,newlines");
+        }
+      },
+      new Benchmark("csv, parallel") {
+        protected Object run() throws Exception {
+          return new Table(csv, "header,parallel");
+        }
+      });
+  }
+
+
+  static void write(File file, char separator, int rows) {
+    Random random = new Random(0);
+    PrintWriter writer = PApplet.createWriter(file);
+    writer.println("id" + separator + "name" + separator + "x" + separator + "y");
+    for (int row = 0; row < rows; row++) {
+      writer.print(row);
+      writer.print(separator);
+      writer.print("item" + random.nextInt(1000));
+      writer.print(separator);
+      writer.print(random.nextFloat());
+      writer.print(separator);
+      writer.println(random.nextDouble() * 1e6);
+    }
+    writer.close();
+  }
+}
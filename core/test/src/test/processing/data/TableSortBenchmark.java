@@ -0,0 +1,132 @@
+package test.processing.data;
+
+import java.util.Random;
+
+import processing.data.Sort;
+import processing.data.Table;
+import test.processing.Benchmark;
+
+
+/**
+ * Table.sort() on a large table, by one column of each type and by two
+ * columns at once. For comparison, the way it used to be done is also
+ * timed: the Sort class comparing rows through getInt() to find the new
+ * order, then each column copied into a new array in that order.
+ */
+public class TableSortBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    final int rows = Benchmark.size(args, 10000000);
+    Benchmark.warmups = 1;
+    Benchmark.runs = 3;
+
+    Random random = new Random(0);
+    final int[] ids = new int[rows];
+    final float[] xs = new float[rows];
+    final int[] groups = new int[rows];
+    for (int row = 0; row < rows; row++) {
+      ids[row] = random.nextInt();
+      xs[row] = random.nextFloat();
+      groups[row] = random.nextInt(100);
+    }
+    final Table table = new Table();
+    table.addColumn("id", Table.INT);
+    table.addColumn("x", Table.FLOAT);
+    table.addColumn("d", Table.DOUBLE);
+    table.addColumn("group", Table.INT);
+    table.addColumn("name", Table.STRING);
+    table.setRowCount(rows);
+
+    class TableSort extends Benchmark {
+      TableSort(String name) {
+        super(name);
+      }
+
+      protected void setup() {
+        for (int row = 0; row < rows; row++) {
+          table.setInt(row, 0, ids[row]);
+          table.setFloat(row, 1, xs[row]);
+          table.setDouble(row, 2, xs[row] * 1e6);
+          table.setInt(row, 3, groups[row]);
+          table.setString(row, 4, (row % 10 == 0) ? "n" + groups[row] : null);
+        }
+      }
+
+      protected Object run() {
+        return table;
+      }
+    }
+
+    Benchmark.run("Table sorting, " + rows + " rows",
+      new TableSort("Sort with getInt() (old way)") {
+        protected Object run() {
+          final int[] order = new int[rows];
+          for (int i = 0; i < rows; i++) {
+            order[i] = i;
+          }
+          new Sort() {
+            public int size() {
+              return rows;
+            }
+
+            public float compare(int a, int b) {
+              int va = table.getInt(order[a], 0);
+              int vb = table.getInt(order[b], 0);
+              return (va < vb) ? -1 : ((va == vb) ? 0 : 1);
+            }
+
+            public void swap(int a, int b) {
+              int temp = order[a];
+              order[a] = order[b];
+              order[b] = temp;
+            }
+          }.run();
+          // then copy each column into a new array in that order
+          int[] id = new int[rows];
+          float[] x = new float[rows];
+          double[] d = new double[rows];
+          int[] group = new int[rows];
+          String[] name = new String[rows];
+          for (int row = 0; row < rows; row++) {
+            int from = order[row];
+            id[row] = table.getInt(from, 0);
+            x[row] = table.getFloat(from, 1);
+            d[row] = table.getDouble(from, 2);
+            group[row] = table.getInt(from, 3);
+            name[row] = table.getString(from, 4);
+          }
+          return new Object[] { id, x, d, group, name };
+        }
+      },
+      new TableSort("sort(\"id\") INT") {
+        protected Object run() {
+          table.sort("id");
+          return table;
+        }
+      },
+      new TableSort("sort(\"x\") FLOAT") {
+        protected Object run() {
+          table.sort("x");
+          return table;
+        }
+      },
+      new TableSort("sortReverse(\"d\") DOUBLE") {
+        protected Object run() {
+          table.sortReverse("d");
+          return table;
+        }
+      },
+      new TableSort("sort(\"name\") STRING, 90% null") {
+        protected Object run() {
+          table.sort("name");
+          return table;
+        }
+      },
+      new TableSort("sort({ \"group\", \"x\" })") {
+        protected Object run() {
+          table.sort(new String[] { "group", "x" });
+          return table;
+        }
+      });
+  }
+}
@@ -0,0 +1,122 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import processing.data.BigFloatList;
+import processing.data.BigIntList;
+import processing.data.Table;
+
+
+public class TableTests {
+
+  static Table numberTable() {
+    Table table = new Table();
+    table.addColumn("n", Table.INT);
+    table.addColumn("x", Table.FLOAT);
+    table.setRowCount(4);
+    for (int row = 0; row < 4; row++) {
+      table.setInt(row, "n", row);
+      table.setFloat(row, "x", row);
+    }
+    return table;
+  }
+
+
+  /** Writes through a shared list have to show up in find() afterwards. */
+  @Test
+  public void bigListDropsIndex() {
+    Table table = numberTable();
+    table.index("n");
+    table.index("x");
+    assertEquals(2, table.findRowIndex("2", "n"));
+
+    BigIntList ints = table.getBigIntList("n");
+    ints.set(2, 20);
+    assertEquals(-1, table.findRowIndex("2", "n"));
+    assertEquals(2, table.findRowIndex("20", "n"));
+
+    BigFloatList floats = table.getBigFloatList("x");
+    floats.set(1, 10);
+    assertEquals(-1, table.findRowIndex("1.0", "x"));
+    assertEquals(1, table.findRowIndex("10.0", "x"));
+  }
+
+
+  /** NaN and null go last whichever way a column is sorted. */
+  @Test
+  public void sortMissingLast() {
+    Table table = new Table();
+    table.addColumn("f", Table.FLOAT);
+    table.addColumn("d", Table.DOUBLE);
+    table.addColumn("s", Table.STRING);
+    table.addColumn("id", Table.INT);
+    float[] f = { 2, Float.NaN, -1, 5, Float.NaN, 0 };
+    String[] s = { "b", null, "a", "c", null, "a" };
+    table.setRowCount(f.length);
+    for (int row = 0; row < f.length; row++) {
+      table.setFloat(row, "f", f[row]);
+      table.setDouble(row, "d", f[row]);
+      table.setString(row, "s", s[row]);
+      table.setInt(row, "id", row);
+    }
+    // stable, so the two NaN rows (and the two null rows) keep their order
+    table.sort(new String[] { "f" }, new boolean[] { false });
+    assertArrayEquals(new int[] { 2, 5, 0, 3, 1, 4 }, table.getIntColumn("id"));
+    table.sortReverse("f");
+    assertArrayEquals(new int[] { 3, 0, 5, 2, 1, 4 }, table.getIntColumn("id"));
+    table.sort("d");
+    assertArrayEquals(new int[] { 2, 5, 0, 3, 1, 4 }, table.getIntColumn("id"));
+    table.sortReverse("d");
+    assertArrayEquals(new int[] { 3, 0, 5, 2, 1, 4 }, table.getIntColumn("id"));
+    table.sortReverse("s");
+    assertArrayEquals(new int[] { 3, 0, 5, 2, 1, 4 }, table.getIntColumn("id"));
+  }
+
+
+  static void append(File file, String text) throws IOException {
+    FileWriter writer = new FileWriter(file, true);
+    writer.write(text);
+    writer.close();
+  }
+
+
+  /**
+   * Columns added (or converted) between calls are only rowCount long,
+   * while the others have room left over from the last follow(). The id
+   * column comes second so that the first column keeps that spare room.
+   */
+  @Test
+  public void followAfterAddColumn() throws IOException {
+    File file = File.createTempFile("follow", ".csv");
+    file.deleteOnExit();
+    append(file, "name,id\na,1\nb,2\n");
+
+    Table table = new Table();
+    assertEquals(2, table.follow(file, "header"));
+    table.setColumnType("id", Table.INT);
+    table.addColumn("note");
+    table.derive("next", Table.col("id").add(1));
+
+    append(file, "c,3\nd,4\n");
+    assertEquals(2, table.follow());
+    assertEquals(4, table.getRowCount());
+    assertEquals(4, table.getInt(3, "id"));
+    assertEquals("d", table.getString(3, "name"));
+    assertEquals(null, table.getString(2, "note"));
+    assertEquals(3, table.getInt(1, "next"));
+    assertEquals(0, table.getInt(3, "next"));
+
+    table.setString(3, "note", "last");
+    append(file, "e,5\n");
+    assertEquals(1, table.follow());
+    assertEquals("last", table.getString(3, "note"));
+    assertEquals(5, table.getInt(4, "id"));
+  }
+}
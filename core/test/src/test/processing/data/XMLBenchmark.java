@@ -0,0 +1,94 @@
+package test.processing.data;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import processing.data.XML;
+import test.processing.Benchmark;
+
+
+/**
+ * Looking up children by name in an SVG-like tree, with getChildren() and
+ * getChild() next to walking the same document's DOM nodes and comparing
+ * their names, which is how XML used to find them.
+ */
+public class XMLBenchmark {
+
+  static public void main(String[] args) throws Exception {
+    final int groups = Benchmark.size(args, 200);
+    StringBuilder sb = new StringBuilder("<svg>\n");
+    for (int g = 0; g < groups; g++) {
+      sb.append("  <g id=\"g" + g + "\">\n");
+      for (int p = 0; p < 100; p++) {
+        sb.append("    <path d=\"M" + p + " " + g + "\"/>\n");
+      }
+      sb.append("  </g>\n");
+    }
+    sb.append("  <rect width=\"10\" height=\"10\"/>\n</svg>\n");
+    final String text = sb.toString();
+
+    final XML xml = XML.parse(text);
+    final Document document = DocumentBuilderFactory.newInstance().
+      newDocumentBuilder().parse(new InputSource(new StringReader(text)));
+    final Node root = document.getDocumentElement();
+
+    Benchmark.run("XML lookups, " + groups + " groups of 100 paths",
+      new Benchmark("DOM walk for g/path, x100") {
+        protected Object run() {
+          List<Node> found = null;
+          for (int i = 0; i < 100; i++) {
+            found = new ArrayList<Node>();
+            for (Node g = root.getFirstChild(); g != null; g = g.getNextSibling()) {
+              if ("g".equals(g.getNodeName())) {
+                for (Node p = g.getFirstChild(); p != null; p = p.getNextSibling()) {
+                  if ("path".equals(p.getNodeName())) {
+                    found.add(p);
+                  }
+                }
+              }
+            }
+          }
+          return found;
+        }
+      },
+      new Benchmark("getChildren(\"g/path\"), x100") {
+        protected Object run() {
+          XML[] found = null;
+          for (int i = 0; i < 100; i++) {
+            found = xml.getChildren("g/path");
+          }
+          return found;
+        }
+      },
+      new Benchmark("DOM walk for rect, x10000") {
+        protected Object run() {
+          Node found = null;
+          for (int i = 0; i < 10000; i++) {
+            for (Node n = root.getFirstChild(); n != null; n = n.getNextSibling()) {
+              if ("rect".equals(n.getNodeName())) {
+                found = n;
+                break;
+              }
+            }
+          }
+          return found;
+        }
+      },
+      new Benchmark("getChild(\"rect\"), x10000") {
+        protected Object run() {
+          XML found = null;
+          for (int i = 0; i < 10000; i++) {
+            found = xml.getChild("rect");
+          }
+          return found;
+        }
+      });
+  }
+}
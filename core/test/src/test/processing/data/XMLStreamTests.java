@@ -0,0 +1,89 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import processing.data.XML;
+
+
+/**
+ * Elements read with XML.stream() should be the same as the ones that
+ * getChildren() finds after loading the whole document.
+ */
+public class XMLStreamTests {
+
+  static String describe(XML xml) {
+    StringBuilder sb = new StringBuilder();
+    describe(xml, sb);
+    return sb.toString();
+  }
+
+
+  static void describe(XML xml, StringBuilder sb) {
+    if (xml.getName().startsWith("#")) {  // #text, #cdata-section
+      sb.append(xml.getName()).append('[').append(xml.getContent()).append(']');
+      return;
+    }
+    sb.append('<').append(xml.getName());
+    String[] attributes = xml.listAttributes();
+    Arrays.sort(attributes);
+    for (String name : attributes) {
+      sb.append(' ').append(name).append("=\"");
+      sb.append(xml.getString(name)).append('"');
+    }
+    sb.append('>');
+    if (xml.getChildCount() == 0) {
+      sb.append(xml.getContent());
+    }
+    for (XML child : xml.getChildren()) {
+      describe(child, sb);
+    }
+    sb.append("</").append(xml.getName()).append('>');
+  }
+
+
+  static void compare(String doc, String path) throws Exception {
+    List<String> expected = new ArrayList<String>();
+    for (XML xml : XML.parse(doc).getChildren(path)) {
+      expected.add(describe(xml));
+    }
+    List<String> streamed = new ArrayList<String>();
+    for (XML xml : XML.stream(new StringReader(doc), path)) {
+      streamed.add(describe(xml));
+    }
+    assertEquals(expected, streamed);
+  }
+
+
+  @Test
+  public void nested() throws Exception {
+    String doc =
+      "<osm v=\"1\"><bounds/>\n" +
+      " <node id=\"1\" lat=\"2.5\"><tag k=\"a\" v=\"b &amp; c\"/>" +
+      "<tag k=\"n\">text <![CDATA[<raw>]]> more</tag></node>\n" +
+      " <way><tag k=\"skip\"/></way>" +
+      "<node id=\"2\"><tag k=\"z\" v=\"&lt;\"/><node><tag k=\"deep\"/></node></node>" +
+      "</osm>";
+    compare(doc, "node");
+    compare(doc, "node/tag");
+  }
+
+
+  @Test
+  public void prefixes() throws Exception {
+    String doc =
+      "<root xmlns:x=\"urn:x\" xmlns:y=\"urn:y\">" +
+      "<x:tag x:v=\"e\" y:v=\"f\" xml:lang=\"en\" plain=\"p\">" +
+      "<y:in xmlns=\"urn:d\" xmlns:z=\"urn:z\" z:q=\"1\"/>" +
+      "</x:tag><tag v=\"g\"/></root>";
+    compare(doc, "x:tag");
+    compare(doc, "tag");
+    compare(doc, "x:tag/y:in");
+  }
+}